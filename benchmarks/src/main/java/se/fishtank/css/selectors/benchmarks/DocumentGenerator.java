@@ -0,0 +1,152 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Deterministic generator of synthetic documents.
+ * <p/>
+ * Elements are generated depth first, every element getting {@code fanOut} children until
+ * {@code maxDepth} or {@code nodeCount} is reached. A balanced tree is generated by choosing a
+ * {@code maxDepth} that the node count fills, a deep tree by a small {@code fanOut} and a large
+ * {@code maxDepth} and a wide tree by a large {@code fanOut} and a small {@code maxDepth}.
+ * <p/>
+ * Tag names are {@code e0}, {@code e1}... and class names {@code c0}, {@code c1}... Both are
+ * drawn with a skew where {@code 1.0} gives a uniform distribution and larger values make the
+ * lower numbered names more common. Every element gets a unique {@code id} and
+ * {@code attributeCount} {@code data-} attributes with random values of {@code attributeLength}
+ * characters. The same settings and seed always generate the same document.
+ *
+ * @author Christer Sandberg
+ */
+public class DocumentGenerator {
+
+    private int nodeCount = 1000;
+
+    private int maxDepth = 8;
+
+    private int fanOut = 4;
+
+    private int tagCount = 8;
+
+    private double tagSkew = 1.0;
+
+    private int classCount = 16;
+
+    private double classSkew = 1.0;
+
+    private int classesPerElement = 2;
+
+    private int attributeCount = 1;
+
+    private int attributeLength = 16;
+
+    private long seed = 42;
+
+    /** Random generator for the current document. */
+    private Random random;
+
+    /** The number of elements generated so far. */
+    private int generated;
+
+    public DocumentGenerator nodeCount(int nodeCount) {
+        this.nodeCount = nodeCount;
+        return this;
+    }
+
+    public DocumentGenerator maxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public DocumentGenerator fanOut(int fanOut) {
+        this.fanOut = fanOut;
+        return this;
+    }
+
+    public DocumentGenerator tags(int count, double skew) {
+        this.tagCount = count;
+        this.tagSkew = skew;
+        return this;
+    }
+
+    public DocumentGenerator classes(int count, double skew, int perElement) {
+        this.classCount = count;
+        this.classSkew = skew;
+        this.classesPerElement = perElement;
+        return this;
+    }
+
+    public DocumentGenerator attributes(int count, int length) {
+        this.attributeCount = count;
+        this.attributeLength = length;
+        return this;
+    }
+
+    public DocumentGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Generates a document with the current settings.
+     *
+     * @return The document node.
+     */
+    public SyntheticNode generate() {
+        random = new Random(seed);
+        generated = 0;
+
+        SyntheticNode document = new SyntheticNode();
+        if (nodeCount > 0) {
+            generate(document.appendChild(createElement()), 1);
+        }
+
+        return document;
+    }
+
+    private void generate(SyntheticNode parent, int depth) {
+        if (depth >= maxDepth) {
+            return;
+        }
+
+        for (int i = 0; i < fanOut && generated < nodeCount; ++i) {
+            generate(parent.appendChild(createElement()), depth + 1);
+        }
+    }
+
+    private SyntheticNode createElement() {
+        SyntheticNode element = new SyntheticNode("e" + pick(tagCount, tagSkew));
+        element.setAttribute("id", "n" + generated++);
+        if (classesPerElement > 0 && classCount > 0) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < classesPerElement; ++i) {
+                if (i > 0) {
+                    sb.append(' ');
+                }
+
+                sb.append('c').append(pick(classCount, classSkew));
+            }
+
+            element.setAttribute("class", sb.toString());
+        }
+
+        for (int i = 0; i < attributeCount; ++i) {
+            char[] value = new char[attributeLength];
+            for (int j = 0; j < value.length; ++j) {
+                value[j] = (char) ('a' + random.nextInt(26));
+            }
+
+            element.setAttribute("data-a" + i, new String(value));
+        }
+
+        return element;
+    }
+
+    private int pick(int count, double skew) {
+        return Math.min(count - 1, (int) (count * Math.pow(random.nextDouble(), skew)));
+    }
+
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.benchmarks;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import se.fishtank.css.selectors.dom.Traversal;
+import se.fishtank.css.selectors.dom.Visitor;
+import se.fishtank.css.selectors.dom.W3CNode;
+
+/**
+ * Documents used by the benchmarks.
+ *
+ * @author Christer Sandberg
+ */
+public class Documents {
+
+    private Documents() {
+    }
+
+    /**
+     * Loads the test document shared with the unit tests.
+     *
+     * @return The test document.
+     */
+    public static W3CNode getTestDocument() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        try (InputStream in = Documents.class.getResourceAsStream("/test.html")) {
+            return new W3CNode(factory.newDocumentBuilder().parse(in));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the elements of the given document in document order.
+     *
+     * @param root The document root.
+     * @return The elements.
+     */
+    public static List<W3CNode> getElements(W3CNode root) {
+        final ArrayList<W3CNode> elements = new ArrayList<>();
+        Traversal.traverseElements(root, new Visitor<W3CNode>() {
+            @Override
+            public void visit(W3CNode node) {
+                elements.add(node);
+            }
+        });
+
+        return elements;
+    }
+
+}
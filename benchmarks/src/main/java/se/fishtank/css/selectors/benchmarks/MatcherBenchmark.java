@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import se.fishtank.css.selectors.dom.W3CNode;
+import se.fishtank.css.selectors.matching.SelectorMatcher;
+import se.fishtank.css.selectors.parser.SelectorParser;
+import se.fishtank.css.selectors.selector.Selector;
+
+/**
+ * Benchmarks {@link SelectorMatcher#matchesSelectors(List, se.fishtank.css.selectors.dom.DOMNode)} per
+ * selector category by matching every element in the test document.
+ *
+ * @author Christer Sandberg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MatcherBenchmark {
+
+    /**
+     * Selector categories.
+     */
+    public static enum Category {
+        TYPE("div"),
+        UNIVERSAL("*"),
+        ID("#scene1"),
+        CLASS(".dialog"),
+        ATTRIBUTE("[class~=thirdClass]"),
+        DESCENDANT("body div div"),
+        CHILD("div > div > div"),
+        NEXT_SIBLING("h3 + div"),
+        LATER_SIBLING("h2 ~ div"),
+        NTH("div:nth-child(2n+1)"),
+        NTH_OF_TYPE("div:nth-last-of-type(odd)"),
+        NEGATION("div:not(.dialog)"),
+        STRUCTURAL(":first-child:last-child"),
+        LIST("h1, h2, h3, .direction, #speech1");
+
+        /** The selectors of the category. */
+        public final String selectors;
+
+        Category(String selectors) {
+            this.selectors = selectors;
+        }
+    }
+
+    @Param
+    public Category category;
+
+    private List<Selector> selectors;
+
+    private List<W3CNode> elements;
+
+    private SelectorMatcher<W3CNode> matcher;
+
+    @Setup
+    public void setup() {
+        selectors = SelectorParser.parse(category.selectors);
+        elements = Documents.getElements(Documents.getTestDocument());
+        matcher = new SelectorMatcher<>();
+    }
+
+    @Benchmark
+    public int matchesSelectors() {
+        int count = 0;
+        for (W3CNode element : elements) {
+            if (matcher.matchesSelectors(selectors, element)) {
+                ++count;
+            }
+        }
+
+        return count;
+    }
+
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import se.fishtank.css.selectors.parser.NthParser;
+import se.fishtank.css.selectors.parser.SelectorParser;
+import se.fishtank.css.selectors.selector.Selector;
+import se.fishtank.css.selectors.tokenizer.Tokenizer;
+import se.fishtank.css.selectors.util.Pair;
+
+/**
+ * Benchmarks the {@link SelectorParser} and the {@link NthParser}
+ *
+ * @author Christer Sandberg
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParserBenchmark {
+
+    /**
+     * The selectors strings, kept apart from the An+B arguments so each benchmark only runs its own values.
+     */
+    @State(Scope.Benchmark)
+    public static class SelectorsState {
+
+        @Param({
+                "div",
+                "div#main > ul.nav li:nth-child(2n+1) a[href^='http://']",
+                "h1, h2, h3, h4, h5, h6, p:not(.intro) ~ p::first-line, *:lang(sv)"
+        })
+        public String selectors;
+
+    }
+
+    /**
+     * The An+B arguments.
+     */
+    @State(Scope.Benchmark)
+    public static class NthState {
+
+        @Param({"odd)", "-2n+3)", "  + 5 )"})
+        public String nth;
+
+    }
+
+    @Benchmark
+    public List<Selector> parseSelectors(SelectorsState state) {
+        return SelectorParser.parse(state.selectors);
+    }
+
+    @Benchmark
+    public Pair<Integer, Integer> parseNth(NthState state) {
+        return NthParser.parse(new Tokenizer(state.nth));
+    }
+
+}
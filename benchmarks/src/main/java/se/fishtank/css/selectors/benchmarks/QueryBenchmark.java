@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.w3c.dom.Node;
+import se.fishtank.css.selectors.Selectors;
+import se.fishtank.css.selectors.dom.W3CNode;
+import se.fishtank.css.selectors.selector.Selector;
+
+/**
+ * Benchmarks {@link Selectors#querySelector(List)} and {@link Selectors#querySelectorAll(List)} on the
+ * test document.
+ *
+ * @author Christer Sandberg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QueryBenchmark {
+
+    @Param({
+            "div",
+            "#speech1",
+            "div.dialog > div.direction",
+            "body div:nth-child(odd) ~ div",
+            "p, h1, h2, h3, .thirdClass"
+    })
+    public String query;
+
+    private List<Selector> selectors;
+
+    private Selectors<Node, W3CNode> document;
+
+    @Setup
+    public void setup() {
+        selectors = Selectors.parse(query);
+        document = new Selectors<>(Documents.getTestDocument());
+    }
+
+    @Benchmark
+    public Node querySelector() {
+        return document.querySelector(selectors);
+    }
+
+    @Benchmark
+    public List<Node> querySelectorAll() {
+        return document.querySelectorAll(selectors);
+    }
+
+}
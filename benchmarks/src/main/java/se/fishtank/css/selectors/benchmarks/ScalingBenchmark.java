@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import se.fishtank.css.selectors.Selectors;
+import se.fishtank.css.selectors.selector.Selector;
+
+/**
+ * Macro benchmark of {@link Selectors#querySelectorAll(List)} on generated documents of different
+ * sizes and shapes.
+ * <p/>
+ * Use {@link ScalingReport} to sweep a single dimension and get the scaling exponents.
+ *
+ * @author Christer Sandberg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ScalingBenchmark {
+
+    /**
+     * Document shapes.
+     */
+    public static enum Shape {
+        BALANCED, DEEP, WIDE;
+
+        DocumentGenerator generator(int nodeCount) {
+            DocumentGenerator generator = new DocumentGenerator().nodeCount(nodeCount);
+            switch (this) {
+            case DEEP:
+                return generator.fanOut(2).maxDepth(64);
+            case WIDE:
+                return generator.fanOut(nodeCount).maxDepth(2);
+            default:
+                int depth = 1;
+                for (int n = 1; n < nodeCount; n *= 4) {
+                    ++depth;
+                }
+
+                return generator.fanOut(4).maxDepth(depth);
+            }
+        }
+    }
+
+    @Param({"1000", "10000"})
+    public int nodeCount;
+
+    @Param
+    public Shape shape;
+
+    @Param
+    public Scenario scenario;
+
+    private List<Selector> selectors;
+
+    private Selectors<SyntheticNode, SyntheticNode> document;
+
+    @Setup
+    public void setup() {
+        selectors = Selectors.parse(scenario.selectors);
+        document = new Selectors<>(shape.generator(nodeCount).generate());
+    }
+
+    @Benchmark
+    public List<SyntheticNode> querySelectorAll() {
+        return document.querySelectorAll(selectors);
+    }
+
+}
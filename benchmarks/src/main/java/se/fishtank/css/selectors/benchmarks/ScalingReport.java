@@ -0,0 +1,205 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import se.fishtank.css.selectors.Selectors;
+import se.fishtank.css.selectors.selector.Selector;
+
+/**
+ * Sweeps document size, depth, sibling count and selector set size and reports the scaling of
+ * {@link Selectors#querySelectorAll(List)} for each scenario.
+ * <p/>
+ * For every step in a sweep the exponent {@code log(t2 / t1) / log(x2 / x1)} is reported, where
+ * {@code x} is the swept dimension and {@code t} the median query time. An exponent of about one
+ * means linear scaling. Steps with an exponent above {@link #SUPER_LINEAR} are flagged and listed
+ * in a summary at the end.
+ * <p/>
+ * The sweeps to run may be given as arguments, {@code size}, {@code depth}, {@code siblings} and
+ * {@code selectors}, and all of them are run by default.
+ *
+ * @author Christer Sandberg
+ */
+public class ScalingReport {
+
+    /** The exponent above which a step is reported as super-linear. */
+    public static final double SUPER_LINEAR = 1.5;
+
+    /** The minimum time to spend on each measurement. */
+    private static final long MIN_MEASUREMENT_NANOS = 200000000L;
+
+    /** The number of timed samples per measurement. */
+    private static final int SAMPLES = 9;
+
+    /** Super-linear steps found so far. */
+    private final List<String> flagged = new ArrayList<>();
+
+    public static void main(String[] args) {
+        List<String> sweeps = Arrays.asList(args.length == 0
+                ? new String[] {"size", "depth", "siblings", "selectors"} : args);
+
+        ScalingReport report = new ScalingReport();
+        if (sweeps.contains("size")) {
+            report.sizeSweep();
+        }
+
+        if (sweeps.contains("depth")) {
+            report.depthSweep();
+        }
+
+        if (sweeps.contains("siblings")) {
+            report.siblingSweep();
+        }
+
+        if (sweeps.contains("selectors")) {
+            report.selectorSetSweep();
+        }
+
+        System.out.println();
+        System.out.println("Super-linear steps (exponent > " + SUPER_LINEAR + "):");
+        if (report.flagged.isEmpty()) {
+            System.out.println("  none");
+        }
+
+        for (String line : report.flagged) {
+            System.out.println("  " + line);
+        }
+    }
+
+    /**
+     * Sweeps the node count of balanced documents.
+     */
+    private void sizeSweep() {
+        int[] sizes = {2000, 4000, 8000, 16000, 32000, 64000};
+        SyntheticNode[] documents = new SyntheticNode[sizes.length];
+        for (int i = 0; i < sizes.length; ++i) {
+            documents[i] = ScalingBenchmark.Shape.BALANCED.generator(sizes[i]).generate();
+        }
+
+        for (Scenario scenario : Scenario.values()) {
+            sweep("size", scenario.name(), "nodes", sizes, documents, repeat(scenario.selectors, sizes.length));
+        }
+    }
+
+    /**
+     * Sweeps the depth of single chain documents, where the node count equals the depth.
+     */
+    private void depthSweep() {
+        int[] depths = {250, 500, 1000, 2000};
+        SyntheticNode[] documents = new SyntheticNode[depths.length];
+        for (int i = 0; i < depths.length; ++i) {
+            documents[i] = new DocumentGenerator().nodeCount(depths[i]).fanOut(1).maxDepth(depths[i]).generate();
+        }
+
+        for (Scenario scenario : Scenario.values()) {
+            sweep("depth", scenario.name(), "depth", depths, documents, repeat(scenario.selectors, depths.length));
+        }
+    }
+
+    /**
+     * Sweeps the number of children of a single parent.
+     */
+    private void siblingSweep() {
+        int[] siblings = {1000, 2000, 4000, 8000};
+        SyntheticNode[] documents = new SyntheticNode[siblings.length];
+        for (int i = 0; i < siblings.length; ++i) {
+            documents[i] = ScalingBenchmark.Shape.WIDE.generator(siblings[i] + 1).generate();
+        }
+
+        for (Scenario scenario : Scenario.values()) {
+            sweep("siblings", scenario.name(), "siblings", siblings, documents,
+                    repeat(scenario.selectors, siblings.length));
+        }
+    }
+
+    /**
+     * Sweeps the size of the selector group queried on a balanced document.
+     */
+    private void selectorSetSweep() {
+        int[] sizes = {1, 2, 4, 8, 16, 32, 64};
+        SyntheticNode document = ScalingBenchmark.Shape.BALANCED.generator(16000).generate();
+        SyntheticNode[] documents = new SyntheticNode[sizes.length];
+        String[] selectors = new String[sizes.length];
+        for (int i = 0; i < sizes.length; ++i) {
+            documents[i] = document;
+            selectors[i] = Scenario.selectorSet(sizes[i]);
+        }
+
+        sweep("selectors", "SELECTOR_SET", "selectors", sizes, documents, selectors);
+    }
+
+    private void sweep(String sweep, String scenario, String dimension, int[] xs, SyntheticNode[] documents,
+                       String[] selectors) {
+        System.out.println();
+        System.out.printf(Locale.ROOT, "%s sweep, %s%n", sweep, scenario);
+        System.out.printf(Locale.ROOT, "%10s %14s %10s %10s%n", dimension, "time (us)", "matches", "exponent");
+
+        double previous = 0;
+        for (int i = 0; i < xs.length; ++i) {
+            List<Selector> parsed = Selectors.parse(selectors[i]);
+            Selectors<SyntheticNode, SyntheticNode> query = new Selectors<>(documents[i]);
+            int matches = query.querySelectorAll(parsed).size();
+            double time = measure(query, parsed);
+
+            String exponent = "";
+            if (i > 0) {
+                double e = Math.log(time / previous) / Math.log((double) xs[i] / xs[i - 1]);
+                exponent = String.format(Locale.ROOT, "%.2f", e);
+                if (e > SUPER_LINEAR) {
+                    exponent += " *";
+                    flagged.add(String.format(Locale.ROOT, "%s sweep, %s: %s %d -> %d, exponent %.2f",
+                            sweep, scenario, dimension, xs[i - 1], xs[i], e));
+                }
+            }
+
+            System.out.printf(Locale.ROOT, "%10d %14.1f %10d %10s%n", xs[i], time / 1000, matches, exponent);
+            previous = time;
+        }
+    }
+
+    /**
+     * Returns the median time of a query in nanoseconds.
+     */
+    private static double measure(Selectors<SyntheticNode, SyntheticNode> query, List<Selector> selectors) {
+        // Warm up and find the number of runs per sample.
+        int runs = 1;
+        while (true) {
+            long start = System.nanoTime();
+            for (int i = 0; i < runs; ++i) {
+                query.querySelectorAll(selectors);
+            }
+
+            long elapsed = System.nanoTime() - start;
+            if (elapsed * SAMPLES >= MIN_MEASUREMENT_NANOS) {
+                break;
+            }
+
+            runs *= 2;
+        }
+
+        double[] samples = new double[SAMPLES];
+        for (int i = 0; i < SAMPLES; ++i) {
+            long start = System.nanoTime();
+            for (int j = 0; j < runs; ++j) {
+                query.querySelectorAll(selectors);
+            }
+
+            samples[i] = (double) (System.nanoTime() - start) / runs;
+        }
+
+        Arrays.sort(samples);
+        return samples[SAMPLES / 2];
+    }
+
+    private static String[] repeat(String str, int count) {
+        String[] strings = new String[count];
+        Arrays.fill(strings, str);
+        return strings;
+    }
+
+}
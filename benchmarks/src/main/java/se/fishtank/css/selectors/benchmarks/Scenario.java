@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.benchmarks;
+
+/**
+ * Query scenarios for the generated documents.
+ *
+ * @author Christer Sandberg
+ */
+public enum Scenario {
+
+    /** A type selector. */
+    TYPE("e1"),
+
+    /** A class selector. */
+    CLASS(".c1"),
+
+    /** An attribute selector on the random attribute values. */
+    ATTRIBUTE("[data-a0*=ab]"),
+
+    /** A descendant combinator whose left side never matches, walking every ancestor chain. */
+    DESCENDANT("nope *"),
+
+    /** A child combinator. */
+    CHILD("e0 > e1 > *"),
+
+    /** An {@code :nth-child} selector counting the siblings of every element. */
+    NTH_CHILD(":nth-child(2n+1)"),
+
+    /** An {@code :nth-last-of-type} selector counting the later siblings of every element. */
+    NTH_LAST_OF_TYPE("e0:nth-last-of-type(3)"),
+
+    /** A later sibling combinator whose left side never matches, walking every preceding sibling. */
+    LATER_SIBLING("nope ~ *");
+
+    /** The selectors of the scenario. */
+    public final String selectors;
+
+    Scenario(String selectors) {
+        this.selectors = selectors;
+    }
+
+    /**
+     * Returns a selector group of the given size matching the same kind of elements as a
+     * {@link #CLASS} query, used to measure how matching scales with the size of a selector set.
+     *
+     * @param size The number of selectors.
+     * @return The selectors.
+     */
+    public static String selectorSet(int size) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; ++i) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+
+            sb.append("e").append(i % 8).append(".c").append(i);
+        }
+
+        return sb.toString();
+    }
+
+}
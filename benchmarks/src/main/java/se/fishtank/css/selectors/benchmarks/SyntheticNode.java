@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+
+/**
+ * A minimal in-memory {@link DOMNode} used for generated documents.
+ * <p/>
+ * The node is its own underlying instance, so the benchmarks measure the matching and not the
+ * overhead of wrapping another DOM implementation.
+ *
+ * @author Christer Sandberg
+ */
+public class SyntheticNode implements DOMNode<SyntheticNode, SyntheticNode> {
+
+    /** The node type. */
+    private final Type type;
+
+    /** The tag name or {@code null} */
+    private final String data;
+
+    /** The attributes or {@code null} */
+    private final Map<String, String> attributes;
+
+    private SyntheticNode parent;
+
+    private SyntheticNode firstChild;
+
+    private SyntheticNode lastChild;
+
+    private SyntheticNode previousSibling;
+
+    private SyntheticNode nextSibling;
+
+    /**
+     * Create a new document node.
+     */
+    public SyntheticNode() {
+        this.type = Type.DOCUMENT;
+        this.data = null;
+        this.attributes = null;
+    }
+
+    /**
+     * Create a new element node.
+     *
+     * @param tagName The tag name.
+     */
+    public SyntheticNode(String tagName) {
+        this.type = Type.ELEMENT;
+        this.data = tagName;
+        this.attributes = new LinkedHashMap<>();
+    }
+
+    /**
+     * Appends a child to this node.
+     *
+     * @param child The child to append.
+     * @return The child.
+     */
+    public SyntheticNode appendChild(SyntheticNode child) {
+        child.parent = this;
+        if (lastChild == null) {
+            firstChild = child;
+        } else {
+            lastChild.nextSibling = child;
+            child.previousSibling = lastChild;
+        }
+
+        lastChild = child;
+        return child;
+    }
+
+    /**
+     * Sets an attribute of this element.
+     *
+     * @param name The attribute name.
+     * @param value The attribute value.
+     */
+    public void setAttribute(String name, String value) {
+        attributes.put(name, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SyntheticNode getUnderlying() {
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getData() {
+        return data;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SyntheticNode getFirstChild() {
+        return firstChild;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SyntheticNode getPreviousSibling() {
+        return previousSibling;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SyntheticNode getNextSibling() {
+        return nextSibling;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SyntheticNode getParentNode() {
+        return parent;
+    }
+
+}
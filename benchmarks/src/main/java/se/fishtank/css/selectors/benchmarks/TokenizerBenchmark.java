@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import se.fishtank.css.selectors.tokenizer.Token;
+import se.fishtank.css.selectors.tokenizer.TokenType;
+import se.fishtank.css.selectors.tokenizer.Tokenizer;
+
+/**
+ * Benchmarks the {@link Tokenizer}, both the {@link Tokenizer#nextToken()} and the pull API.
+ *
+ * @author Christer Sandberg
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TokenizerBenchmark {
+
+    @Param({
+            "div",
+            "div#main > ul.nav li:nth-child(2n+1) a[href^='http://']",
+            "a\\:b, [data-x=\"es\\\"caped\"], .\\31 23, url(foo.png)"
+    })
+    public String input;
+
+    @Benchmark
+    public void nextToken(Blackhole blackhole) {
+        Tokenizer tokenizer = new Tokenizer(input);
+        Token token;
+        while ((token = tokenizer.nextToken()).type != TokenType.EOF) {
+            blackhole.consume(token);
+        }
+    }
+
+    @Benchmark
+    public void advance(Blackhole blackhole) {
+        Tokenizer tokenizer = new Tokenizer(input);
+        TokenType type;
+        while ((type = tokenizer.advance()) != TokenType.EOF) {
+            blackhole.consume(type);
+            blackhole.consume(tokenizer.getTokenEnd());
+        }
+    }
+
+}
@@ -0,0 +1,279 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+import se.fishtank.css.selectors.matching.SimpleSelectorMatcher;
+import se.fishtank.css.selectors.parser.ParserException;
+import se.fishtank.css.selectors.selector.Selector;
+
+/**
+ * A cache of query results keyed by document, document version and selectors.
+ * <p/>
+ * Selector lists are keyed by their serialization, so equal selectors share results however they were
+ * written. Selectors strings are parsed and serialized once, and kept in a separate map of the same maximum
+ * size so a repeated query isn't even parsed, without taking up room for results. The least recently used
+ * results are evicted when the cache is full. Results for older versions of a document are
+ * never returned and are evicted like any other results. The cache holds on to the documents of the
+ * results it contains.
+ * <p/>
+ * The results are immutable lists. A cache is safe for use by multiple threads, a query that isn't cached
+ * is run without holding the lock so the same query may run concurrently.
+ *
+ * @author Christer Sandberg
+ */
+public class QueryCache<T, U extends DOMNode<U, T>> {
+
+    /** The maximum number of cached results. */
+    private final int maxSize;
+
+    /** Simple selector matcher for custom matching or {@code null} */
+    private final SimpleSelectorMatcher<U> simpleSelectorMatcher;
+
+    /** The cached results in access order. */
+    private final LinkedHashMap<Key, List<T>> results;
+
+    /** The parsed selectors strings in access order. */
+    private final LinkedHashMap<String, Parsed> parsed;
+
+    /** The number of queries answered from the cache. */
+    private long hits = 0;
+
+    /** The number of queries that were run. */
+    private long misses = 0;
+
+    /**
+     * Create a new query cache.
+     *
+     * @param maxSize The maximum number of cached results.
+     */
+    public QueryCache(int maxSize) {
+        this(maxSize, null);
+    }
+
+    /**
+     * Create a new query cache.
+     *
+     * @param maxSize The maximum number of cached results.
+     * @param simpleSelectorMatcher A simple selector matcher for custom matching or {@code null}
+     */
+    public QueryCache(final int maxSize, SimpleSelectorMatcher<U> simpleSelectorMatcher) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Max size must be positive: " + maxSize);
+        }
+
+        this.maxSize = maxSize;
+        this.simpleSelectorMatcher = simpleSelectorMatcher;
+        this.results = new LinkedHashMap<Key, List<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<T>> eldest) {
+                return size() > maxSize;
+            }
+        };
+        this.parsed = new LinkedHashMap<String, Parsed>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Parsed> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns a list of all the matching nodes, from the cache if the query has been run against the
+     * current version of the document.
+     *
+     * @param document The document.
+     * @param selectors A list of selectors.
+     * @return An immutable list of all the matching nodes.
+     */
+    public List<T> querySelectorAll(VersionedDocument<T, U> document, List<Selector> selectors) {
+        Key key = new Key(document, document.getVersion(), serialize(selectors));
+        List<T> result = get(key);
+        if (result == null) {
+            result = run(document, selectors);
+            put(key, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a list of all the matching nodes, from the cache if the query has been run against the
+     * current version of the document.
+     *
+     * @param document The document.
+     * @param selectors A selectors string.
+     * @return An immutable list of all the matching nodes.
+     * @throws ParserException On errors parsing the given selectors string.
+     */
+    public List<T> querySelectorAll(VersionedDocument<T, U> document, String selectors) throws ParserException {
+        Parsed parsed = getParsed(selectors);
+        if (parsed == null) {
+            List<Selector> selectorList = Selectors.parse(selectors);
+            parsed = new Parsed(selectorList, serialize(selectorList));
+            putParsed(selectors, parsed);
+        }
+
+        Key key = new Key(document, document.getVersion(), parsed.serialized);
+        List<T> result = get(key);
+        if (result == null) {
+            result = run(document, parsed.selectors);
+            put(key, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of cached results.
+     *
+     * @return The number of cached results.
+     */
+    public synchronized int size() {
+        return results.size();
+    }
+
+    /**
+     * Returns the maximum number of cached results.
+     *
+     * @return The maximum number of cached results.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of queries answered from the cache.
+     *
+     * @return The number of hits.
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of queries that weren't cached and were run.
+     *
+     * @return The number of misses.
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Removes all the cached results.
+     */
+    public synchronized void clear() {
+        results.clear();
+        parsed.clear();
+    }
+
+    private synchronized List<T> get(Key key) {
+        List<T> result = results.get(key);
+        if (result != null) {
+            ++hits;
+        }
+
+        return result;
+    }
+
+    private synchronized void put(Key key, List<T> result) {
+        results.put(key, result);
+    }
+
+    private synchronized Parsed getParsed(String selectors) {
+        return parsed.get(selectors);
+    }
+
+    private synchronized void putParsed(String selectors, Parsed parsed) {
+        this.parsed.put(selectors, parsed);
+    }
+
+    private List<T> run(VersionedDocument<T, U> document, List<Selector> selectors) {
+        synchronized (this) {
+            ++misses;
+        }
+
+        Selectors<T, U> query = new Selectors<>(document.getRootNode(), simpleSelectorMatcher);
+        return Collections.unmodifiableList(new ArrayList<>(query.querySelectorAll(selectors)));
+    }
+
+    private static String serialize(List<Selector> selectors) {
+        StringBuilder sb = new StringBuilder();
+        for (Selector selector : selectors) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+
+            sb.append(selector);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * A parsed selectors string and the serialization of its selectors.
+     */
+    private static class Parsed {
+
+        final List<Selector> selectors;
+
+        final String serialized;
+
+        Parsed(List<Selector> selectors, String serialized) {
+            this.selectors = selectors;
+            this.serialized = serialized;
+        }
+
+    }
+
+    /**
+     * The key of cached results, the document is compared by identity.
+     */
+    private static class Key {
+
+        final VersionedDocument<?, ?> document;
+
+        final long version;
+
+        final String selectors;
+
+        final int hash;
+
+        Key(VersionedDocument<?, ?> document, long version, String selectors) {
+            this.document = document;
+            this.version = version;
+            this.selectors = selectors;
+            this.hash = 31 * (31 * System.identityHashCode(document) + (int) (version ^ (version >>> 32))) +
+                    selectors.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+
+            if (!(other instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) other;
+            return document == key.document && version == key.version && selectors.equals(key.selectors);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,348 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+import se.fishtank.css.selectors.dom.Traversal;
+import se.fishtank.css.selectors.dom.Visitor;
+import se.fishtank.css.selectors.matching.MatchListener;
+import se.fishtank.css.selectors.matching.SelectorMatcher;
+import se.fishtank.css.selectors.matching.SimpleSelectorMatcher;
+import se.fishtank.css.selectors.selector.Combinator;
+import se.fishtank.css.selectors.selector.CompoundSelector;
+import se.fishtank.css.selectors.selector.Selector;
+import se.fishtank.css.selectors.selector.SelectorCost;
+import se.fishtank.css.selectors.selector.SimpleSelector;
+
+/**
+ * Explains how a query is evaluated.
+ * <p/>
+ * A query plan describes, for each selector in a selector group, the evaluation direction, where the
+ * candidate elements come from, the order in which the simple selectors of each compound selector are
+ * evaluated and the estimated costs from {@link SelectorCost}. An analyzed plan also contains the actual
+ * number of candidates, matches and the time spent per compound selector from running the query.
+ * <p/>
+ * Use {@link Selectors#explain(String)} and {@link Selectors#analyze(String)} to create query plans.
+ *
+ * @author Christer Sandberg
+ */
+public class QueryPlan {
+
+    /** The plans for the selectors in the group. */
+    public final List<SelectorPlan> selectors;
+
+    /** Whether the query was run to get the actual counts. */
+    public final boolean analyzed;
+
+    /** The number of elements visited or {@code -1} if not analyzed. */
+    public final long elements;
+
+    /** The number of matching elements or {@code -1} if not analyzed. */
+    public final long matches;
+
+    /** The total query time in nanoseconds or {@code -1} if not analyzed. */
+    public final long time;
+
+    /**
+     * Create a new query plan.
+     *
+     * @param selectors The plans for the selectors in the group.
+     * @param analyzed Whether the query was run to get the actual counts.
+     * @param elements The number of elements visited or {@code -1}
+     * @param matches The number of matching elements or {@code -1}
+     * @param time The total query time in nanoseconds or {@code -1}
+     */
+    public QueryPlan(List<SelectorPlan> selectors, boolean analyzed, long elements, long matches, long time) {
+        this.selectors = selectors;
+        this.analyzed = analyzed;
+        this.elements = elements;
+        this.matches = matches;
+        this.time = time;
+    }
+
+    /**
+     * Returns the plan for the given selectors without running the query.
+     *
+     * @param selectors The selectors.
+     * @return The query plan.
+     */
+    public static QueryPlan explain(List<Selector> selectors) {
+        return new QueryPlan(createPlans(selectors, null), false, -1, -1, -1);
+    }
+
+    /**
+     * Runs a query for the given selectors and returns the plan with the actual counts.
+     *
+     * @param selectors The selectors.
+     * @param root The root node.
+     * @param simpleSelectorMatcher A simple selector matcher for custom matching or {@code null}
+     * @return The query plan.
+     */
+    public static <T extends DOMNode<T, ?>> QueryPlan analyze(final List<Selector> selectors, T root,
+                                                              SimpleSelectorMatcher<T> simpleSelectorMatcher) {
+        final AnalyzingListener<T> listener = new AnalyzingListener<>();
+        final SelectorMatcher<T> matcher = new SelectorMatcher<>(simpleSelectorMatcher, listener);
+        final long[] counts = new long[2];
+
+        long start = System.nanoTime();
+        Traversal.traverseElements(root, new Visitor<T>() {
+            @Override
+            public void visit(T node) {
+                ++counts[0];
+                if (matcher.matchesSelectors(selectors, node)) {
+                    ++counts[1];
+                }
+            }
+        });
+
+        long time = System.nanoTime() - start;
+        return new QueryPlan(createPlans(selectors, listener.stats), true, counts[0], counts[1], time);
+    }
+
+    private static List<SelectorPlan> createPlans(List<Selector> selectors,
+                                                  IdentityHashMap<CompoundSelector, long[]> stats) {
+        ArrayList<SelectorPlan> plans = new ArrayList<>(selectors.size());
+        for (Selector selector : selectors) {
+            ArrayList<CompoundPlan> compounds = new ArrayList<>();
+            Combinator combinator = null;
+            for (CompoundSelector c = selector.compoundSelector; c != null; ) {
+                long[] s = stats == null ? null : stats.get(c);
+                if (s == null) {
+                    s = stats == null ? new long[] {-1, -1, -1} : new long[3];
+                }
+
+                compounds.add(new CompoundPlan(c, combinator, SelectorCost.of(c), s[0], s[1], s[2]));
+                if (c.previous == null) {
+                    break;
+                }
+
+                combinator = c.previous.first;
+                c = c.previous.second;
+            }
+
+            String candidates = selector.pseudoElement == null
+                    ? "every element in document order"
+                    : "none, selectors with pseudo elements never match";
+            plans.add(new SelectorPlan(selector, "right-to-left", candidates, SelectorCost.of(selector),
+                    Collections.unmodifiableList(compounds)));
+        }
+
+        return Collections.unmodifiableList(plans);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < selectors.size(); ++i) {
+            SelectorPlan plan = selectors.get(i);
+            sb.append("selector ").append(i + 1).append(": ").append(plan.selector).append('\n');
+            sb.append("  direction: ").append(plan.direction).append('\n');
+            sb.append("  candidates: ").append(plan.candidates).append('\n');
+            sb.append("  estimated cost: ").append(format(plan.estimatedCost)).append(" per element\n");
+            for (int j = 0; j < plan.compounds.size(); ++j) {
+                CompoundPlan compound = plan.compounds.get(j);
+                if (compound.combinator != null) {
+                    sb.append("  ").append(compound.combinator.name().toLowerCase().replace('_', ' '))
+                            .append(" combinator\n");
+                }
+
+                StringBuilder simpleSelectors = new StringBuilder();
+                for (SimpleSelector simpleSelector : compound.selector.simpleSelectors) {
+                    if (simpleSelectors.length() > 0) {
+                        simpleSelectors.append(", ");
+                    }
+
+                    simpleSelectors.append(simpleSelector);
+                }
+
+                if (simpleSelectors.length() == 0) {
+                    simpleSelectors.append('*');
+                }
+
+                sb.append("  compound ").append(j + 1).append('\n');
+                sb.append("    simple selectors: ").append(simpleSelectors).append('\n');
+                sb.append("    estimated cost: ").append(format(compound.estimatedCost)).append('\n');
+                if (analyzed) {
+                    sb.append("    candidates: ").append(compound.candidates)
+                            .append(", matches: ").append(compound.matches)
+                            .append(", time: ").append(format(compound.time / 1000.0)).append(" us\n");
+                }
+            }
+        }
+
+        if (analyzed) {
+            sb.append("elements: ").append(elements).append(", matches: ").append(matches)
+                    .append(", time: ").append(format(time / 1000.0)).append(" us\n");
+        }
+
+        return sb.toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    /**
+     * The plan for a single selector.
+     */
+    public static class SelectorPlan {
+
+        /** The selector. */
+        public final Selector selector;
+
+        /** The evaluation direction. */
+        public final String direction;
+
+        /** A description of where the candidate elements come from. */
+        public final String candidates;
+
+        /** The estimated cost per candidate element. */
+        public final double estimatedCost;
+
+        /** The plans for the compound selectors in evaluation order, i.e. from right to left. */
+        public final List<CompoundPlan> compounds;
+
+        /**
+         * Create a new selector plan.
+         *
+         * @param selector The selector.
+         * @param direction The evaluation direction.
+         * @param candidates A description of where the candidate elements come from.
+         * @param estimatedCost The estimated cost per candidate element.
+         * @param compounds The plans for the compound selectors in evaluation order.
+         */
+        public SelectorPlan(Selector selector, String direction, String candidates, double estimatedCost,
+                            List<CompoundPlan> compounds) {
+            this.selector = selector;
+            this.direction = direction;
+            this.candidates = candidates;
+            this.estimatedCost = estimatedCost;
+            this.compounds = compounds;
+        }
+
+    }
+
+    /**
+     * The plan for a compound selector.
+     * <p/>
+     * The simple selectors are evaluated in the order of {@link CompoundSelector#simpleSelectors} and the
+     * evaluation stops at the first one that doesn't match. The actual counts include the matching of the
+     * compound selectors preceding this one, so the time is inclusive.
+     */
+    public static class CompoundPlan {
+
+        /** The compound selector. */
+        public final CompoundSelector selector;
+
+        /** The combinator to the compound selector following this one or {@code null} for the rightmost. */
+        public final Combinator combinator;
+
+        /** The estimated cost of matching this and the preceding compound selectors against a node. */
+        public final double estimatedCost;
+
+        /** The number of nodes this compound selector was matched against or {@code -1} if not analyzed. */
+        public final long candidates;
+
+        /** The number of nodes matched by this and the preceding compound selectors or {@code -1} */
+        public final long matches;
+
+        /** The time spent matching this and the preceding compound selectors in nanoseconds or {@code -1} */
+        public final long time;
+
+        /**
+         * Create a new compound selector plan.
+         *
+         * @param selector The compound selector.
+         * @param combinator The combinator to the compound selector following this one or {@code null}
+         * @param estimatedCost The estimated cost.
+         * @param candidates The number of nodes the compound selector was matched against or {@code -1}
+         * @param matches The number of nodes matched or {@code -1}
+         * @param time The time spent in nanoseconds or {@code -1}
+         */
+        public CompoundPlan(CompoundSelector selector, Combinator combinator, double estimatedCost,
+                            long candidates, long matches, long time) {
+            this.selector = selector;
+            this.combinator = combinator;
+            this.estimatedCost = estimatedCost;
+            this.candidates = candidates;
+            this.matches = matches;
+            this.time = time;
+        }
+
+    }
+
+    /**
+     * Match listener collecting the candidates, matches and time per compound selector.
+     */
+    private static class AnalyzingListener<T extends DOMNode<T, ?>> implements MatchListener<T> {
+
+        /** Candidates, matches and time per compound selector. */
+        final IdentityHashMap<CompoundSelector, long[]> stats = new IdentityHashMap<>();
+
+        /** Start times of the compound selectors being matched. */
+        long[] starts = new long[16];
+
+        /** The number of compound selectors being matched. */
+        int depth = 0;
+
+        @Override
+        public void elementVisited(T node) {
+        }
+
+        @Override
+        public void compoundSelectorEntered(CompoundSelector selector, T node) {
+            if (depth == starts.length) {
+                long[] tmp = new long[depth * 2];
+                System.arraycopy(starts, 0, tmp, 0, depth);
+                starts = tmp;
+            }
+
+            starts[depth++] = System.nanoTime();
+        }
+
+        @Override
+        public void compoundSelectorExited(CompoundSelector selector, T node, boolean matched) {
+            long time = System.nanoTime() - starts[--depth];
+            long[] s = stats.get(selector);
+            if (s == null) {
+                s = new long[3];
+                stats.put(selector, s);
+            }
+
+            ++s[0];
+            if (matched) {
+                ++s[1];
+            }
+
+            s[2] += time;
+        }
+
+        @Override
+        public void simpleSelectorEvaluated(SimpleSelector selector, T node, boolean matched) {
+        }
+
+        @Override
+        public void combinatorStep(Combinator combinator, T node) {
+        }
+
+        @Override
+        public void restarted(T node, boolean fromClosestDescendant) {
+        }
+
+        @Override
+        public void customMatcherInvoked(SimpleSelector selector, T node, boolean matched) {
+        }
+
+    }
+
+}
@@ -0,0 +1,443 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+import se.fishtank.css.selectors.dom.Traversal;
+import se.fishtank.css.selectors.dom.Visitor;
+import se.fishtank.css.selectors.matching.SelectorMatcher;
+import se.fishtank.css.selectors.matching.SimpleSelectorMatcher;
+import se.fishtank.css.selectors.parser.ParserException;
+import se.fishtank.css.selectors.parser.ParserLimits;
+import se.fishtank.css.selectors.parser.SelectorParser;
+import se.fishtank.css.selectors.selector.Selector;
+import se.fishtank.css.selectors.selector.SelectorInterner;
+import se.fishtank.css.selectors.tokenizer.TokenType;
+import se.fishtank.css.selectors.tokenizer.Tokenizer;
+
+/**
+ * A store for large numbers of selector rules that are parsed lazily.
+ * <p/>
+ * Rules are kept as the strings they were added as. When a rule is added, each of its selectors is
+ * scanned with the {@link Tokenizer}, without parsing it, to find a key in its rightmost compound
+ * selector: the id if there is one, otherwise the first class or else the local name. The selectors are
+ * indexed by their keys and a selector is only parsed, and interned with a {@link SelectorInterner}, the
+ * first time an element with its key is matched against the store. Selectors without a key are parsed
+ * the first time any element is matched. Selectors that can't be parsed never match.
+ * <p/>
+ * A store isn't safe for use by multiple threads.
+ *
+ * @author Christer Sandberg
+ */
+public class SelectorStore {
+
+    /** The rules added. */
+    private String[] rules = new String[16];
+
+    /** The number of rules added. */
+    private int size = 0;
+
+    /** The number of selectors parsed. */
+    private int parsed = 0;
+
+    /** Selectors by id. */
+    private final HashMap<String, Bucket> ids = new HashMap<>();
+
+    /** Selectors by class. */
+    private final HashMap<String, Bucket> classes = new HashMap<>();
+
+    /** Selectors by lower case local name. */
+    private final HashMap<String, Bucket> localNames = new HashMap<>();
+
+    /** Selectors without a key. */
+    private final Bucket others = new Bucket();
+
+    /** The limits of the selectors parsed. */
+    private final ParserLimits limits;
+
+    /** Interner for the selectors parsed. */
+    private final SelectorInterner interner = new SelectorInterner();
+
+    /**
+     * Create a new selector store.
+     */
+    public SelectorStore() {
+        this(ParserLimits.UNLIMITED);
+    }
+
+    /**
+     * Create a new selector store, parsing the selectors with the given limits.
+     *
+     * @param limits The limits of the selectors parsed, selectors exceeding them never match.
+     */
+    public SelectorStore(ParserLimits limits) {
+        this.limits = limits;
+    }
+
+    /**
+     * Adds a rule.
+     *
+     * @param rule A selectors string.
+     * @return The index of the rule.
+     */
+    public int add(String rule) {
+        if (size == rules.length) {
+            rules = Arrays.copyOf(rules, size * 2);
+        }
+
+        int index = size++;
+        rules[index] = rule;
+
+        Tokenizer tokenizer = new Tokenizer(rule);
+        int start = 0;
+        int depth = 0;
+        boolean combinator = false;
+        boolean pseudo = false;
+        String id = null;
+        String className = null;
+        String localName = null;
+        while (true) {
+            TokenType type = tokenizer.advance();
+            if (depth > 0) {
+                // Inside the arguments of a functional pseudo class or an attribute selector.
+                switch (type) {
+                case FUNCTION:
+                case LEFT_PAREN:
+                case LEFT_SQUARE_BRACKET:
+                    ++depth;
+                    continue;
+                case RIGHT_PAREN:
+                case RIGHT_SQUARE_BRACKET:
+                    --depth;
+                    continue;
+                case EOF:
+                    break;
+                default:
+                    continue;
+                }
+            }
+
+            if (type == TokenType.EOF || type == TokenType.COMMA) {
+                int end = type == TokenType.EOF ? rule.length() : tokenizer.getTokenStart();
+                if (id != null) {
+                    bucket(ids, id).add(index, start, end);
+                } else if (className != null) {
+                    bucket(classes, className).add(index, start, end);
+                } else if (localName != null) {
+                    bucket(localNames, localName).add(index, start, end);
+                } else {
+                    others.add(index, start, end);
+                }
+
+                if (type == TokenType.EOF) {
+                    break;
+                }
+
+                start = tokenizer.getTokenEnd();
+                combinator = false;
+                id = null;
+                className = null;
+                localName = null;
+                continue;
+            }
+
+            if (type == TokenType.WHITESPACE) {
+                combinator = true;
+                continue;
+            }
+
+            if (type == TokenType.DELIM) {
+                int c = tokenizer.getTokenDelimiter();
+                if (c == '>' || c == '+' || c == '~') {
+                    combinator = true;
+                    continue;
+                }
+            }
+
+            // A token of a compound selector, the previous compound selector isn't the rightmost one.
+            if (combinator) {
+                combinator = false;
+                id = null;
+                className = null;
+                localName = null;
+            }
+
+            boolean wasPseudo = pseudo;
+            pseudo = false;
+            switch (type) {
+            case HASH:
+                id = tokenizer.getTokenValue();
+                break;
+            case DELIM:
+                if (tokenizer.getTokenDelimiter() == '.' && tokenizer.advance() == TokenType.IDENT) {
+                    if (className == null) {
+                        className = tokenizer.getTokenValue();
+                    }
+                } else {
+                    tokenizer.pushBack();
+                }
+
+                break;
+            case IDENT:
+                if (!wasPseudo) {
+                    localName = tokenizer.getTokenValue().toLowerCase(Locale.ROOT);
+                }
+
+                break;
+            case COLON:
+                pseudo = true;
+                break;
+            case FUNCTION:
+            case LEFT_PAREN:
+            case LEFT_SQUARE_BRACKET:
+                ++depth;
+                break;
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns the number of rules added.
+     *
+     * @return The number of rules.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the rule with the given index.
+     *
+     * @param index The index of the rule.
+     * @return The rule.
+     */
+    public String getRule(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+
+        return rules[index];
+    }
+
+    /**
+     * Returns the number of selectors that have been parsed so far.
+     *
+     * @return The number of selectors parsed.
+     */
+    public int getParsedCount() {
+        return parsed;
+    }
+
+    /**
+     * Returns whether any of the rules matches the given element.
+     *
+     * @param matcher The selector matcher to use.
+     * @param node The element.
+     * @return {@code true} or {@code false}
+     */
+    public <T extends DOMNode<T, ?>> boolean matchesAny(SelectorMatcher<T> matcher, T node) {
+        return match(matcher, node, null);
+    }
+
+    /**
+     * Returns the indexes of the rules matching the given element in ascending order.
+     *
+     * @param matcher The selector matcher to use.
+     * @param node The element.
+     * @return The indexes of the matching rules.
+     */
+    public <T extends DOMNode<T, ?>> List<Integer> matchingRules(SelectorMatcher<T> matcher, T node) {
+        TreeSet<Integer> result = new TreeSet<>();
+        match(matcher, node, result);
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Returns all the elements under the given root node matching any of the rules.
+     *
+     * @param rootNode The root node.
+     * @param simpleSelectorMatcher A simple selector matcher for custom matching or {@code null}
+     * @return A list of all the matching nodes.
+     */
+    public <T, U extends DOMNode<U, T>> List<T> querySelectorAll(U rootNode,
+                                                                  SimpleSelectorMatcher<U> simpleSelectorMatcher) {
+        final SelectorMatcher<U> matcher = new SelectorMatcher<>(simpleSelectorMatcher);
+        final LinkedList<T> result = new LinkedList<>();
+        Traversal.traverseElements(rootNode, new Visitor<U>() {
+            @Override
+            public void visit(U node) {
+                if (matchesAny(matcher, node)) {
+                    result.add(node.getUnderlying());
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Matches the rules with the keys of the given element against it, adding the indexes of the matching
+     * rules to the given set or stopping at the first match if the set is {@code null}
+     */
+    private <T extends DOMNode<T, ?>> boolean match(SelectorMatcher<T> matcher, T node, TreeSet<Integer> result) {
+        if (node.getType() != DOMNode.Type.ELEMENT) {
+            return false;
+        }
+
+        boolean matched = false;
+        Map<String, String> attributes = node.getAttributes();
+        if (attributes != null) {
+            String id = attributes.get("id");
+            if (id != null && !ids.isEmpty()) {
+                matched = matchBucket(ids.get(id), matcher, node, result);
+                if (matched && result == null) {
+                    return true;
+                }
+            }
+
+            String classNames = attributes.get("class");
+            if (classNames != null && !classes.isEmpty()) {
+                for (String className : SelectorMatcher.SPACE_REGEX.split(classNames)) {
+                    matched |= matchBucket(classes.get(className), matcher, node, result);
+                    if (matched && result == null) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        if (!localNames.isEmpty()) {
+            matched |= matchBucket(localNames.get(node.getData().toLowerCase(Locale.ROOT)), matcher, node, result);
+            if (matched && result == null) {
+                return true;
+            }
+        }
+
+        return matchBucket(others, matcher, node, result) || matched;
+    }
+
+    private <T extends DOMNode<T, ?>> boolean matchBucket(Bucket bucket, SelectorMatcher<T> matcher, T node,
+                                                          TreeSet<Integer> result) {
+        if (bucket == null) {
+            return false;
+        }
+
+        if (bucket.pending > 0) {
+            parse(bucket);
+        }
+
+        boolean matched = false;
+        for (int i = 0; i < bucket.count; ++i) {
+            if (result != null && result.contains(bucket.rules[i])) {
+                continue;
+            }
+
+            if (matcher.matchesSelector(bucket.selectors[i], node)) {
+                if (result == null) {
+                    return true;
+                }
+
+                result.add(bucket.rules[i]);
+                matched = true;
+            }
+        }
+
+        return matched;
+    }
+
+    /**
+     * Parses the pending selectors of the given bucket.
+     */
+    private void parse(Bucket bucket) {
+        for (int i = 0; i < bucket.pending; ++i) {
+            int rule = bucket.ranges[i * 3];
+            List<Selector> selectors;
+            try {
+                selectors = SelectorParser.parse(new Tokenizer(rules[rule], bucket.ranges[i * 3 + 1],
+                        bucket.ranges[i * 3 + 2]), limits);
+            } catch (ParserException | IllegalArgumentException e) {
+                continue;
+            }
+
+            ++parsed;
+            for (Selector selector : selectors) {
+                bucket.addParsed(rule, interner.intern(selector));
+            }
+        }
+
+        bucket.pending = 0;
+        bucket.ranges = null;
+    }
+
+    private static Bucket bucket(HashMap<String, Bucket> map, String key) {
+        Bucket bucket = map.get(key);
+        if (bucket == null) {
+            bucket = new Bucket();
+            map.put(key, bucket);
+        }
+
+        return bucket;
+    }
+
+    /**
+     * The selectors with the same key.
+     */
+    private static class Bucket {
+
+        /** The rule index, start and end offset of each selector not yet parsed. */
+        int[] ranges = null;
+
+        /** The number of selectors not yet parsed. */
+        int pending = 0;
+
+        /** The rule indexes of the selectors parsed. */
+        int[] rules = null;
+
+        /** The selectors parsed. */
+        Selector[] selectors = null;
+
+        /** The number of selectors parsed. */
+        int count = 0;
+
+        void add(int rule, int start, int end) {
+            if (ranges == null) {
+                ranges = new int[3];
+            } else if (pending * 3 == ranges.length) {
+                ranges = Arrays.copyOf(ranges, ranges.length * 2);
+            }
+
+            ranges[pending * 3] = rule;
+            ranges[pending * 3 + 1] = start;
+            ranges[pending * 3 + 2] = end;
+            ++pending;
+        }
+
+        void addParsed(int rule, Selector selector) {
+            if (rules == null) {
+                rules = new int[1];
+                selectors = new Selector[1];
+            } else if (count == rules.length) {
+                rules = Arrays.copyOf(rules, count * 2);
+                selectors = Arrays.copyOf(selectors, count * 2);
+            }
+
+            rules[count] = rule;
+            selectors[count] = selector;
+            ++count;
+        }
+
+    }
+
+}
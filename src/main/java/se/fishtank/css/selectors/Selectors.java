@@ -3,12 +3,17 @@
  */
 package se.fishtank.css.selectors;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
 import se.fishtank.css.selectors.dom.DOMNode;
 import se.fishtank.css.selectors.dom.Traversal;
 import se.fishtank.css.selectors.dom.Visitor;
+import se.fishtank.css.selectors.jfr.Events;
+import se.fishtank.css.selectors.matching.MatchListener;
+import se.fishtank.css.selectors.matching.QueryBudget;
+import se.fishtank.css.selectors.matching.QueryBudgetExceededException;
 import se.fishtank.css.selectors.matching.SelectorMatcher;
 import se.fishtank.css.selectors.matching.SimpleSelectorMatcher;
 import se.fishtank.css.selectors.parser.ParserException;
@@ -26,8 +31,11 @@ public class Selectors<T, U extends DOMNode<U, T>> {
     /** The root node. */
     private final U rootNode;
 
-    /** The selectors matcher. */
-    private final SelectorMatcher<U> selectorMatcher;
+    /** Simple selector matcher for custom matching or {@code null} */
+    private final SimpleSelectorMatcher<U> simpleSelectorMatcher;
+
+    /** Match listener or {@code null} */
+    private final MatchListener<U> matchListener;
 
     /**
      * Create a new instance.
@@ -45,8 +53,20 @@ public class Selectors<T, U extends DOMNode<U, T>> {
      * @param simpleSelectorMatcher A simple selector matcher for custom matching.
      */
     public Selectors(U rootNode, SimpleSelectorMatcher<U> simpleSelectorMatcher) {
+        this(rootNode, simpleSelectorMatcher, null);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param rootNode The root node.
+     * @param simpleSelectorMatcher A simple selector matcher for custom matching or {@code null}
+     * @param matchListener A match listener or {@code null}
+     */
+    public Selectors(U rootNode, SimpleSelectorMatcher<U> simpleSelectorMatcher, MatchListener<U> matchListener) {
         this.rootNode = rootNode;
-        this.selectorMatcher = new SelectorMatcher<>(simpleSelectorMatcher);
+        this.simpleSelectorMatcher = simpleSelectorMatcher;
+        this.matchListener = matchListener;
     }
 
     /**
@@ -64,29 +84,58 @@ public class Selectors<T, U extends DOMNode<U, T>> {
      * @param selectors A list of selectors.
      * @return The first matching node or {@code null}
      */
-    public T querySelector(final List<Selector> selectors) {
+    public T querySelector(List<Selector> selectors) {
+        return querySelector(selectors, new SelectorMatcher<>(simpleSelectorMatcher, matchListener), matchListener);
+    }
+
+    /**
+     * Returns the first matching node or {@code null} if match was found, limiting the work done by
+     * the query to the given budget.
+     *
+     * @param selectors A list of selectors.
+     * @param budget The query budget.
+     * @return The first matching node or {@code null}
+     * @throws QueryBudgetExceededException If the budget is exceeded or the query is cancelled.
+     */
+    public T querySelector(List<Selector> selectors, QueryBudget budget) throws QueryBudgetExceededException {
+        MatchListener<U> listener = budget.newListener(matchListener);
+        return querySelector(selectors, new SelectorMatcher<>(simpleSelectorMatcher, listener), listener);
+    }
+
+    private T querySelector(final List<Selector> selectors, final SelectorMatcher<U> matcher,
+                            final MatchListener<U> listener) {
+        Object event = Events.beginQuery();
+        final long[] elements = new long[1];
         final Reference<T> ref = new Reference<>();
         final RuntimeException done = new RuntimeException();
         try {
             Traversal.traverseElements(rootNode, new Visitor<U>() {
                 @Override
                 public void visit(U node) {
-                    if (selectorMatcher.matchesSelectors(selectors, node)) {
+                    ++elements[0];
+                    if (listener != null) {
+                        listener.elementVisited(node);
+                    }
+
+                    if (matcher.matchesSelectors(selectors, node)) {
                         ref.referent = node.getUnderlying();
                         throw done;
                     }
                 }
             });
+        } catch (QueryBudgetExceededException e) {
+            Events.endQuery(event, "querySelector", selectors, elements[0], 0);
+            throw e;
         } catch (RuntimeException e) {
             if (e != done) {
                 throw e;
             }
         }
 
+        Events.endQuery(event, "querySelector", selectors, elements[0], ref.referent == null ? 0 : 1);
         return ref.referent;
     }
 
-
     /**
      * Returns the first matching node or {@code null} if match was found.
      *
@@ -98,23 +147,74 @@ public class Selectors<T, U extends DOMNode<U, T>> {
         return querySelector(parse(selectors));
     }
 
+    /**
+     * Returns the first matching node or {@code null} if match was found, limiting the work done by
+     * the query to the given budget.
+     *
+     * @param selectors A selectors string.
+     * @param budget The query budget.
+     * @return The first matching node or {@code null}
+     * @throws ParserException On errors parsing the given selectors string.
+     * @throws QueryBudgetExceededException If the budget is exceeded or the query is cancelled.
+     */
+    public T querySelector(String selectors, QueryBudget budget)
+            throws ParserException, QueryBudgetExceededException {
+        return querySelector(parse(selectors), budget);
+    }
+
     /**
      * Returns a list of all the matching nodes.
      *
      * @param selectors A list of selectors.
      * @return A list of all the matching nodes.
      */
-    public List<T> querySelectorAll(final List<Selector> selectors) {
+    public List<T> querySelectorAll(List<Selector> selectors) {
+        return querySelectorAll(selectors, new SelectorMatcher<>(simpleSelectorMatcher, matchListener),
+                matchListener);
+    }
+
+    /**
+     * Returns a list of all the matching nodes, limiting the work done by the query to the given budget.
+     * <p/>
+     * If the budget is exceeded or the query is cancelled the nodes matched so far are available from
+     * {@link QueryBudgetExceededException#getPartialResult()}
+     *
+     * @param selectors A list of selectors.
+     * @param budget The query budget.
+     * @return A list of all the matching nodes.
+     * @throws QueryBudgetExceededException If the budget is exceeded or the query is cancelled.
+     */
+    public List<T> querySelectorAll(List<Selector> selectors, QueryBudget budget)
+            throws QueryBudgetExceededException {
+        MatchListener<U> listener = budget.newListener(matchListener);
+        return querySelectorAll(selectors, new SelectorMatcher<>(simpleSelectorMatcher, listener), listener);
+    }
+
+    private List<T> querySelectorAll(final List<Selector> selectors, final SelectorMatcher<U> matcher,
+                                     final MatchListener<U> listener) {
+        Object event = Events.beginQuery();
+        final long[] elements = new long[1];
         final LinkedList<T> result = new LinkedList<>();
-        Traversal.traverseElements(rootNode, new Visitor<U>() {
-            @Override
-            public void visit(U node) {
-                if (selectorMatcher.matchesSelectors(selectors, node)) {
-                    result.add(node.getUnderlying());
+        try {
+            Traversal.traverseElements(rootNode, new Visitor<U>() {
+                @Override
+                public void visit(U node) {
+                    ++elements[0];
+                    if (listener != null) {
+                        listener.elementVisited(node);
+                    }
+
+                    if (matcher.matchesSelectors(selectors, node)) {
+                        result.add(node.getUnderlying());
+                    }
                 }
-            }
-        });
+            });
+        } catch (QueryBudgetExceededException e) {
+            Events.endQuery(event, "querySelectorAll", selectors, elements[0], result.size());
+            throw new QueryBudgetExceededException(e.reason, Collections.unmodifiableList(result), e);
+        }
 
+        Events.endQuery(event, "querySelectorAll", selectors, elements[0], result.size());
         return result;
     }
 
@@ -129,6 +229,64 @@ public class Selectors<T, U extends DOMNode<U, T>> {
         return querySelectorAll(parse(selectors));
     }
 
+    /**
+     * Returns a list of all the matching nodes, limiting the work done by the query to the given budget.
+     *
+     * @param selectors A selectors string.
+     * @param budget The query budget.
+     * @return A list of all the matching nodes.
+     * @throws ParserException On errors parsing the given selectors string.
+     * @throws QueryBudgetExceededException If the budget is exceeded or the query is cancelled.
+     */
+    public List<T> querySelectorAll(String selectors, QueryBudget budget)
+            throws ParserException, QueryBudgetExceededException {
+        return querySelectorAll(parse(selectors), budget);
+    }
+
+    /**
+     * Returns the plan for a query without running it.
+     *
+     * @param selectors A list of selectors.
+     * @return The query plan.
+     */
+    public QueryPlan explain(List<Selector> selectors) {
+        return QueryPlan.explain(selectors);
+    }
+
+    /**
+     * Returns the plan for a query without running it.
+     *
+     * @param selectors A selectors string.
+     * @return The query plan.
+     * @throws ParserException On errors parsing the given selectors string.
+     */
+    public QueryPlan explain(String selectors) throws ParserException {
+        return explain(parse(selectors));
+    }
+
+    /**
+     * Runs a query and returns its plan with the actual number of candidates, matches and time per
+     * compound selector.
+     *
+     * @param selectors A list of selectors.
+     * @return The analyzed query plan.
+     */
+    public QueryPlan analyze(List<Selector> selectors) {
+        return QueryPlan.analyze(selectors, rootNode, simpleSelectorMatcher);
+    }
+
+    /**
+     * Runs a query and returns its plan with the actual number of candidates, matches and time per
+     * compound selector.
+     *
+     * @param selectors A selectors string.
+     * @return The analyzed query plan.
+     * @throws ParserException On errors parsing the given selectors string.
+     */
+    public QueryPlan analyze(String selectors) throws ParserException {
+        return analyze(parse(selectors));
+    }
+
     /**
      * Parses the given selectors string and returns a selector list.
      *
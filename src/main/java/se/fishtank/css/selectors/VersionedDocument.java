@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+
+/**
+ * A document with a version that is bumped whenever the document is changed.
+ * <p/>
+ * The library never changes a document, so whoever changes it has to call {@link #changed()} afterwards.
+ * Results cached for a version, see {@link QueryCache}, aren't used once the version has been bumped.
+ *
+ * @author Christer Sandberg
+ */
+public class VersionedDocument<T, U extends DOMNode<U, T>> {
+
+    /** The root node. */
+    private final U rootNode;
+
+    /** The current version. */
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * Create a new versioned document.
+     *
+     * @param rootNode The root node.
+     */
+    public VersionedDocument(U rootNode) {
+        this.rootNode = rootNode;
+    }
+
+    /**
+     * Returns the root node.
+     *
+     * @return The root node.
+     */
+    public U getRootNode() {
+        return rootNode;
+    }
+
+    /**
+     * Returns the current version.
+     *
+     * @return The version.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Bumps the version after the document has been changed.
+     *
+     * @return The new version.
+     */
+    public long changed() {
+        return version.incrementAndGet();
+    }
+
+}
@@ -7,6 +7,11 @@ import java.util.Map;
 
 /**
  * DOM node abstraction.
+ * <p/>
+ * Nodes may be wrappers created on demand, e.g. by {@link #getParentNode()}, as long as two wrappers of the
+ * same underlying node are equal and have the same hash code. Nodes are compared with {@code equals} when
+ * walking a document, and the results cached while matching, e.g. for {@code :has()},
+ * {@code :nth-child(An+B of S)} and pure custom selectors, are kept in hash maps keyed by node.
  *
  * @param <T> The actual node type.
  *
@@ -0,0 +1,315 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+import se.fishtank.css.selectors.matching.SelectorMatcher;
+import se.fishtank.css.selectors.parser.ParserException;
+import se.fishtank.css.selectors.parser.SelectorParser;
+import se.fishtank.css.selectors.selector.Selector;
+
+/**
+ * An immutable set of elements of an {@link IndexedDocument}, a bit set over the numbers of the elements.
+ * <p/>
+ * Sets of the same indexed document are combined with {@link #union(ElementSet)},
+ * {@link #intersection(ElementSet)} and {@link #difference(ElementSet)}, costing a word operation per
+ * 64 elements of the document instead of hashing nodes. The elements are iterated in document order.
+ * <p/>
+ * {@link #find(List)} queries the descendants of all the elements of a set at once, like querying within
+ * each of them in turn but without visiting the same subtree twice or returning the same element twice.
+ *
+ * @author Christer Sandberg
+ */
+public class ElementSet<T, U extends DOMNode<U, T>> implements Iterable<T> {
+
+    /** The indexed document. */
+    private final IndexedDocument<T, U> document;
+
+    /** The numbers of the elements, never modified. */
+    private final BitSet bits;
+
+    /**
+     * Create a new element set.
+     *
+     * @param document The indexed document.
+     * @param bits The numbers of the elements, must not be modified afterwards.
+     */
+    ElementSet(IndexedDocument<T, U> document, BitSet bits) {
+        this.document = document;
+        this.bits = bits;
+    }
+
+    /**
+     * Returns the indexed document.
+     *
+     * @return The indexed document.
+     */
+    public IndexedDocument<T, U> getDocument() {
+        return document;
+    }
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return The number of elements.
+     */
+    public int cardinality() {
+        return bits.cardinality();
+    }
+
+    /**
+     * Returns whether the set is empty.
+     *
+     * @return {@code true} or {@code false}
+     */
+    public boolean isEmpty() {
+        return bits.isEmpty();
+    }
+
+    /**
+     * Returns whether the set contains the element with the given number.
+     *
+     * @param number The number of the element.
+     * @return {@code true} or {@code false}
+     */
+    public boolean contains(int number) {
+        return number >= 0 && bits.get(number);
+    }
+
+    /**
+     * Returns whether the set contains the given element.
+     *
+     * @param node The element.
+     * @return {@code true} or {@code false}
+     */
+    public boolean contains(U node) {
+        return contains(document.indexOf(node));
+    }
+
+    /**
+     * Returns the elements in this set or the given one.
+     *
+     * @param other An element set of the same document.
+     * @return A new element set.
+     */
+    public ElementSet<T, U> union(ElementSet<T, U> other) {
+        BitSet result = copy(other);
+        result.or(other.bits);
+        return new ElementSet<>(document, result);
+    }
+
+    /**
+     * Returns the elements in both this set and the given one.
+     *
+     * @param other An element set of the same document.
+     * @return A new element set.
+     */
+    public ElementSet<T, U> intersection(ElementSet<T, U> other) {
+        BitSet result = copy(other);
+        result.and(other.bits);
+        return new ElementSet<>(document, result);
+    }
+
+    /**
+     * Returns the elements in this set but not in the given one.
+     *
+     * @param other An element set of the same document.
+     * @return A new element set.
+     */
+    public ElementSet<T, U> difference(ElementSet<T, U> other) {
+        BitSet result = copy(other);
+        result.andNot(other.bits);
+        return new ElementSet<>(document, result);
+    }
+
+    /**
+     * Returns the descendants of the elements in this set matching any of the given selectors.
+     * <p/>
+     * The selectors are matched in the context of the whole document, like when querying within an element,
+     * so compound selectors to the left may match ancestors of the elements in this set. The subtrees of
+     * the elements are merged into disjoint intervals of element numbers, skipping the elements nested in
+     * another element of the set, and the candidates within them, looked up by the id, a class or the local
+     * name of the rightmost compound selector if it has one, are matched in a single pass per selector.
+     *
+     * @param selectors A list of selectors.
+     * @return The matching elements.
+     */
+    public ElementSet<T, U> find(List<Selector> selectors) {
+        // The disjoint intervals covered by the subtrees, excluding the elements of this set themselves.
+        int[] starts = new int[bits.cardinality()];
+        int[] ends = new int[starts.length];
+        int intervals = 0;
+        int covered = 0;
+        for (int number = bits.nextSetBit(0); number >= 0; number = bits.nextSetBit(number + 1)) {
+            if (number < covered) {
+                continue;
+            }
+
+            covered = document.getEnd(number);
+            if (covered > number + 1) {
+                starts[intervals] = number + 1;
+                ends[intervals] = covered;
+                ++intervals;
+            }
+        }
+
+        SelectorMatcher<U> matcher = document.newMatcher();
+        BitSet result = new BitSet(document.size());
+        for (Selector selector : selectors) {
+            if (selector.pseudoElement != null) {
+                continue;
+            }
+
+            int[] candidates = document.lookup(selector.compoundSelector.simpleSelectors);
+            for (int i = 0; i < intervals; ++i) {
+                if (candidates == null) {
+                    for (int number = starts[i]; number < ends[i]; ++number) {
+                        match(matcher, selector, number, result);
+                    }
+                } else {
+                    int index = Arrays.binarySearch(candidates, starts[i]);
+                    for (index = index < 0 ? -index - 1 : index;
+                         index < candidates.length && candidates[index] < ends[i]; ++index) {
+                        match(matcher, selector, candidates[index], result);
+                    }
+                }
+            }
+        }
+
+        return new ElementSet<>(document, result);
+    }
+
+    /**
+     * Returns the descendants of the elements in this set matching any of the given selectors.
+     *
+     * @param selectors A selectors string.
+     * @return The matching elements.
+     * @throws ParserException On errors parsing the given selectors string.
+     * @see #find(List)
+     */
+    public ElementSet<T, U> find(String selectors) throws ParserException {
+        return find(SelectorParser.parse(selectors));
+    }
+
+    /**
+     * Returns the numbers of the elements.
+     *
+     * @return The numbers of the elements in document order.
+     */
+    public int[] toArray() {
+        int[] numbers = new int[bits.cardinality()];
+        int i = 0;
+        for (int number = bits.nextSetBit(0); number >= 0; number = bits.nextSetBit(number + 1)) {
+            numbers[i++] = number;
+        }
+
+        return numbers;
+    }
+
+    /**
+     * Returns the elements.
+     *
+     * @return A list of the elements in document order.
+     */
+    public List<T> toList() {
+        ArrayList<T> result = new ArrayList<>(bits.cardinality());
+        for (T node : this) {
+            result.add(node);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns an iterator over the elements in document order.
+     *
+     * @return An iterator.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+
+            private int next = bits.nextSetBit(0);
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public T next() {
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+
+                T node = document.getNode(next).getUnderlying();
+                next = bits.nextSetBit(next + 1);
+                return node;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+
+        if (other == null || getClass() != other.getClass()) {
+            return false;
+        }
+
+        ElementSet<?, ?> set = (ElementSet<?, ?>) other;
+        return document == set.document && bits.equals(set.bits);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(document) + bits.hashCode();
+    }
+
+    /**
+     * Returns the elements as a list of their numbers.
+     *
+     * @return A string representation of the set.
+     */
+    @Override
+    public String toString() {
+        return bits.toString();
+    }
+
+    private void match(SelectorMatcher<U> matcher, Selector selector, int number, BitSet result) {
+        if (!result.get(number) && matcher.matchesSelector(selector, document.getNode(number))) {
+            result.set(number);
+        }
+    }
+
+    private BitSet copy(ElementSet<T, U> other) {
+        if (other.document != document) {
+            throw new IllegalArgumentException("The element sets belong to different indexed documents");
+        }
+
+        return (BitSet) bits.clone();
+    }
+
+}
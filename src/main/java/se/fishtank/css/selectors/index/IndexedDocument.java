@@ -0,0 +1,691 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+import se.fishtank.css.selectors.matching.SelectorMatcher;
+import se.fishtank.css.selectors.matching.SimpleSelectorMatcher;
+import se.fishtank.css.selectors.parser.ParserException;
+import se.fishtank.css.selectors.parser.SelectorParser;
+import se.fishtank.css.selectors.selector.AttributeSelector;
+import se.fishtank.css.selectors.selector.Combinator;
+import se.fishtank.css.selectors.selector.CompoundSelector;
+import se.fishtank.css.selectors.selector.LocalNameSelector;
+import se.fishtank.css.selectors.selector.Selector;
+import se.fishtank.css.selectors.selector.SimpleSelector;
+import se.fishtank.css.selectors.util.Pair;
+
+/**
+ * The elements of a document labeled with their preorder intervals and indexed by id, class and local name.
+ * <p/>
+ * Each element is numbered in document order, and the number following its last descendant is kept as
+ * the end of its interval, so whether an element is an ancestor of another is two integer comparisons.
+ * The parent, the previous element sibling and the depth of each element are kept as well.
+ * <p/>
+ * Queries are evaluated from the leftmost compound selector to the rightmost one. The candidates of
+ * each compound selector are taken from the indexes, matched against its simple selectors and then
+ * joined with the elements matching the selector so far, with a stack based structural join for the
+ * descendant combinator and linear joins on the parent and sibling labels for the other combinators,
+ * instead of walking the ancestors or siblings of every candidate.
+ * <p/>
+ * The labels are a snapshot of the document when the index was created, so it has to be recreated when
+ * the document changes. The results are the same as for {@link se.fishtank.css.selectors.Selectors} if
+ * the index is created from the document node, otherwise ancestors and siblings outside the root element
+ * aren't taken into account.
+ *
+ * @author Christer Sandberg
+ */
+public class IndexedDocument<T, U extends DOMNode<U, T>> {
+
+    private static final int[] EMPTY = new int[0];
+
+    /** The elements in document order. */
+    private final ArrayList<U> nodes = new ArrayList<>();
+
+    /** The numbers of the elements. */
+    private final HashMap<U, Integer> numbers = new HashMap<>();
+
+    /** The number following the last descendant of each element. */
+    private int[] ends = new int[64];
+
+    /** The parent of each element or {@code -1} */
+    private int[] parents = new int[64];
+
+    /** The previous element sibling of each element or {@code -1} */
+    private int[] previousSiblings = new int[64];
+
+    /** The depth of each element, the root element has depth {@code 0} */
+    private int[] depths = new int[64];
+
+    /** Elements by id. */
+    private final HashMap<String, int[]> ids = new HashMap<>();
+
+    /** Elements by class. */
+    private final HashMap<String, int[]> classes = new HashMap<>();
+
+    /** Elements by lower case local name. */
+    private final HashMap<String, int[]> localNames = new HashMap<>();
+
+    /** Simple selector matcher for custom matching or {@code null} */
+    private final SimpleSelectorMatcher<U> simpleSelectorMatcher;
+
+    /**
+     * Create a new indexed document.
+     *
+     * @param rootNode The root node.
+     */
+    public IndexedDocument(U rootNode) {
+        this(rootNode, null);
+    }
+
+    /**
+     * Create a new indexed document.
+     *
+     * @param rootNode The root node.
+     * @param simpleSelectorMatcher A simple selector matcher for custom matching or {@code null}
+     */
+    public IndexedDocument(U rootNode, SimpleSelectorMatcher<U> simpleSelectorMatcher) {
+        this.simpleSelectorMatcher = simpleSelectorMatcher;
+
+        HashMap<String, IntList> ids = new HashMap<>();
+        HashMap<String, IntList> classes = new HashMap<>();
+        HashMap<String, IntList> localNames = new HashMap<>();
+        label(rootNode, ids, classes, localNames);
+        toArrays(ids, this.ids);
+        toArrays(classes, this.classes);
+        toArrays(localNames, this.localNames);
+    }
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return The number of elements.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns the element with the given number.
+     *
+     * @param number The number of the element.
+     * @return The element.
+     */
+    public U getNode(int number) {
+        return nodes.get(number);
+    }
+
+    /**
+     * Returns the number of the given element.
+     *
+     * @param node The element.
+     * @return The number of the element or {@code -1} if it isn't part of the index.
+     */
+    public int indexOf(U node) {
+        Integer number = numbers.get(node);
+        return number == null ? -1 : number;
+    }
+
+    /**
+     * Returns the number following the last descendant of the given element.
+     *
+     * @param number The number of the element.
+     * @return The end of the interval of the element.
+     */
+    public int getEnd(int number) {
+        check(number);
+        return ends[number];
+    }
+
+    /**
+     * Returns the parent of the given element.
+     *
+     * @param number The number of the element.
+     * @return The number of the parent or {@code -1} for the root element.
+     */
+    public int getParent(int number) {
+        check(number);
+        return parents[number];
+    }
+
+    /**
+     * Returns the previous element sibling of the given element.
+     *
+     * @param number The number of the element.
+     * @return The number of the previous element sibling or {@code -1}
+     */
+    public int getPreviousSibling(int number) {
+        check(number);
+        return previousSiblings[number];
+    }
+
+    /**
+     * Returns the depth of the given element.
+     *
+     * @param number The number of the element.
+     * @return The depth, {@code 0} for the root element.
+     */
+    public int getDepth(int number) {
+        check(number);
+        return depths[number];
+    }
+
+    /**
+     * Returns whether an element is an ancestor of another one.
+     *
+     * @param ancestor The number of the ancestor.
+     * @param descendant The number of the descendant.
+     * @return {@code true} or {@code false}
+     */
+    public boolean isAncestor(int ancestor, int descendant) {
+        check(ancestor);
+        return ancestor < descendant && descendant < ends[ancestor];
+    }
+
+    /**
+     * Returns the elements with the given id.
+     *
+     * @param id The id.
+     * @return The numbers of the elements in document order.
+     */
+    public int[] getElementsById(String id) {
+        return lookup(ids, id);
+    }
+
+    /**
+     * Returns the elements with the given class.
+     *
+     * @param className The class.
+     * @return The numbers of the elements in document order.
+     */
+    public int[] getElementsByClassName(String className) {
+        return lookup(classes, className);
+    }
+
+    /**
+     * Returns the elements with the given local name, ignoring case.
+     *
+     * @param localName The local name.
+     * @return The numbers of the elements in document order.
+     */
+    public int[] getElementsByLocalName(String localName) {
+        return lookup(localNames, localName.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Returns the elements matching any of the given selectors.
+     *
+     * @param selectors A list of selectors.
+     * @return The numbers of the matching elements in document order.
+     */
+    public int[] select(List<Selector> selectors) {
+        if (selectors.size() == 1) {
+            return select(selectors.get(0), new SelectorMatcher<>(simpleSelectorMatcher));
+        }
+
+        return querySet(selectors).toArray();
+    }
+
+    /**
+     * Returns the elements matching any of the given selectors as an element set.
+     *
+     * @param selectors A list of selectors.
+     * @return The matching elements.
+     */
+    public ElementSet<T, U> querySet(List<Selector> selectors) {
+        SelectorMatcher<U> matcher = new SelectorMatcher<>(simpleSelectorMatcher);
+        BitSet result = new BitSet(nodes.size());
+        for (Selector selector : selectors) {
+            for (int number : select(selector, matcher)) {
+                result.set(number);
+            }
+        }
+
+        return new ElementSet<>(this, result);
+    }
+
+    /**
+     * Returns the elements matching any of the given selectors as an element set.
+     *
+     * @param selectors A selectors string.
+     * @return The matching elements.
+     * @throws ParserException On errors parsing the given selectors string.
+     */
+    public ElementSet<T, U> querySet(String selectors) throws ParserException {
+        return querySet(SelectorParser.parse(selectors));
+    }
+
+    /**
+     * Returns an element set of all the elements.
+     *
+     * @return All the elements.
+     */
+    public ElementSet<T, U> all() {
+        BitSet result = new BitSet(nodes.size());
+        result.set(0, nodes.size());
+        return new ElementSet<>(this, result);
+    }
+
+    /**
+     * Returns a list of all the matching nodes.
+     *
+     * @param selectors A list of selectors.
+     * @return A list of all the matching nodes in document order.
+     */
+    public List<T> querySelectorAll(List<Selector> selectors) {
+        int[] numbers = select(selectors);
+        ArrayList<T> result = new ArrayList<>(numbers.length);
+        for (int number : numbers) {
+            result.add(nodes.get(number).getUnderlying());
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a list of all the matching nodes.
+     *
+     * @param selectors A selectors string.
+     * @return A list of all the matching nodes in document order.
+     * @throws ParserException On errors parsing the given selectors string.
+     */
+    public List<T> querySelectorAll(String selectors) throws ParserException {
+        return querySelectorAll(SelectorParser.parse(selectors));
+    }
+
+    /**
+     * Evaluates a single selector from its leftmost compound selector to its rightmost one.
+     */
+    private int[] select(Selector selector, SelectorMatcher<U> matcher) {
+        if (selector.pseudoElement != null) {
+            return EMPTY;
+        }
+
+        ArrayList<Pair<Combinator, CompoundSelector>> compounds = new ArrayList<>();
+        for (CompoundSelector compound = selector.compoundSelector; compound != null; ) {
+            Pair<Combinator, CompoundSelector> previous = compound.previous;
+            compounds.add(new Pair<>(previous == null ? null : previous.first, compound));
+            compound = previous == null ? null : previous.second;
+        }
+
+        int[] result = null;
+        for (int i = compounds.size() - 1; i >= 0; --i) {
+            Pair<Combinator, CompoundSelector> compound = compounds.get(i);
+            int[] candidates = candidates(compound.second.simpleSelectors, matcher);
+            if (result != null) {
+                // The combinator to the left of a compound selector is kept with it.
+                switch (compound.first) {
+                case DESCENDANT:
+                    candidates = descendantJoin(result, candidates);
+                    break;
+                case CHILD:
+                    candidates = childJoin(result, candidates);
+                    break;
+                case NEXT_SIBLING:
+                    candidates = nextSiblingJoin(result, candidates);
+                    break;
+                case LATER_SIBLING:
+                    candidates = laterSiblingJoin(result, candidates);
+                    break;
+                }
+            }
+
+            if (candidates.length == 0) {
+                return EMPTY;
+            }
+
+            result = candidates;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the elements matching the given compound selector, looked up by its id, class or local name.
+     */
+    private int[] candidates(List<SimpleSelector> simpleSelectors, SelectorMatcher<U> matcher) {
+        int[] candidates = lookup(simpleSelectors);
+        int count = 0;
+        if (candidates == null) {
+            candidates = new int[nodes.size()];
+            for (int number = 0; number < candidates.length; ++number) {
+                if (matcher.matchesSimpleSelectors(simpleSelectors, nodes.get(number))) {
+                    candidates[count++] = number;
+                }
+            }
+        } else {
+            int[] matching = new int[candidates.length];
+            for (int number : candidates) {
+                if (matcher.matchesSimpleSelectors(simpleSelectors, nodes.get(number))) {
+                    matching[count++] = number;
+                }
+            }
+
+            candidates = matching;
+        }
+
+        return count == candidates.length ? candidates : Arrays.copyOf(candidates, count);
+    }
+
+    /**
+     * Returns the smallest list of elements with the id, a class or the local name of the given compound
+     * selector, not to be modified.
+     *
+     * @param simpleSelectors The simple selectors of the compound selector.
+     * @return The numbers of the elements in document order or {@code null} if the compound selector has
+     *         neither an id, a class nor a local name.
+     */
+    int[] lookup(List<SimpleSelector> simpleSelectors) {
+        int[] candidates = null;
+        for (SimpleSelector simpleSelector : simpleSelectors) {
+            int[] found = null;
+            if (simpleSelector instanceof AttributeSelector) {
+                AttributeSelector attributeSelector = (AttributeSelector) simpleSelector;
+                if (attributeSelector.match == AttributeSelector.Match.EQUALS &&
+                        attributeSelector.name.equals("id")) {
+                    found = find(ids, attributeSelector.value);
+                } else if (attributeSelector.match == AttributeSelector.Match.INCLUDES &&
+                        attributeSelector.name.equals("class")) {
+                    found = find(classes, attributeSelector.value);
+                }
+            } else if (simpleSelector instanceof LocalNameSelector) {
+                String name = ((LocalNameSelector) simpleSelector).name;
+                if (!name.equals("*")) {
+                    found = find(localNames, name.toLowerCase(Locale.ROOT));
+                }
+            }
+
+            if (found != null && (candidates == null || found.length < candidates.length)) {
+                candidates = found;
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Returns a new selector matcher using the simple selector matcher of this index.
+     *
+     * @return A new selector matcher.
+     */
+    SelectorMatcher<U> newMatcher() {
+        return new SelectorMatcher<>(simpleSelectorMatcher);
+    }
+
+    /**
+     * Returns the descendants that have an ancestor among the given ancestors.
+     * <p/>
+     * Both lists are in document order. The stack holds the ancestors whose intervals contain the current
+     * position, innermost on top, so a descendant qualifies if the stack isn't empty once the ancestors
+     * ending before it have been popped.
+     */
+    private int[] descendantJoin(int[] ancestors, int[] descendants) {
+        int[] stack = new int[ancestors.length];
+        int top = 0;
+        int[] result = new int[descendants.length];
+        int count = 0;
+        int a = 0;
+        for (int descendant : descendants) {
+            while (a < ancestors.length && ancestors[a] < descendant) {
+                while (top > 0 && ends[stack[top - 1]] <= ancestors[a]) {
+                    --top;
+                }
+
+                stack[top++] = ancestors[a++];
+            }
+
+            while (top > 0 && ends[stack[top - 1]] <= descendant) {
+                --top;
+            }
+
+            if (top > 0) {
+                result[count++] = descendant;
+            }
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns the children whose parent is among the given parents.
+     */
+    private int[] childJoin(int[] parents, int[] children) {
+        BitSet set = toBitSet(parents);
+        int[] result = new int[children.length];
+        int count = 0;
+        for (int child : children) {
+            int parent = this.parents[child];
+            if (parent >= 0 && set.get(parent)) {
+                result[count++] = child;
+            }
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns the elements whose previous element sibling is among the given siblings.
+     */
+    private int[] nextSiblingJoin(int[] siblings, int[] elements) {
+        BitSet set = toBitSet(siblings);
+        int[] result = new int[elements.length];
+        int count = 0;
+        for (int element : elements) {
+            int previous = previousSiblings[element];
+            if (previous >= 0 && set.get(previous)) {
+                result[count++] = element;
+            }
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Returns the elements preceded by a sibling among the given siblings.
+     * <p/>
+     * Only the first of the given siblings under each parent matters, so they are kept by parent, with
+     * the root element and its siblings under {@code -1}
+     */
+    private int[] laterSiblingJoin(int[] siblings, int[] elements) {
+        HashMap<Integer, Integer> first = new HashMap<>();
+        for (int sibling : siblings) {
+            Integer parent = parents[sibling];
+            if (!first.containsKey(parent)) {
+                first.put(parent, sibling);
+            }
+        }
+
+        int[] result = new int[elements.length];
+        int count = 0;
+        for (int element : elements) {
+            Integer sibling = first.get(parents[element]);
+            if (sibling != null && sibling < element) {
+                result[count++] = element;
+            }
+        }
+
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Labels the elements of the given root node and its descendants.
+     * <p/>
+     * The document is walked in preorder with an explicit stack of the nodes whose children are being labeled,
+     * so the depth of the document isn't limited by the call stack.
+     */
+    private void label(U rootNode, HashMap<String, IntList> ids, HashMap<String, IntList> classes,
+                       HashMap<String, IntList> localNames) {
+        // For each node on the stack: its number or -1, the parent of its element children and the number of
+        // its last element child so far or -1.
+        ArrayList<U> stack = new ArrayList<>();
+        IntList stackNumbers = new IntList();
+        IntList stackParents = new IntList();
+        IntList stackPrevious = new IntList();
+
+        U node = rootNode;
+        while (true) {
+            int top = stack.size() - 1;
+            int parent = top < 0 ? -1 : stackParents.values[top];
+            int number = -1;
+            if (node.getType() == DOMNode.Type.ELEMENT) {
+                number = labelElement(node, parent, ids, classes, localNames);
+                if (top >= 0) {
+                    previousSiblings[number] = stackPrevious.values[top];
+                    stackPrevious.values[top] = number;
+                }
+            }
+
+            U child = node.getFirstChild();
+            if (child != null) {
+                stack.add(node);
+                stackNumbers.add(number);
+                stackParents.add(number >= 0 ? number : parent);
+                stackPrevious.add(-1);
+                node = child;
+                continue;
+            }
+
+            if (number >= 0) {
+                ends[number] = nodes.size();
+            }
+
+            // The siblings of the root node aren't labeled.
+            while (!stack.isEmpty()) {
+                U next = node.getNextSibling();
+                if (next != null) {
+                    node = next;
+                    break;
+                }
+
+                top = stack.size() - 1;
+                node = stack.remove(top);
+                if (stackNumbers.values[top] >= 0) {
+                    ends[stackNumbers.values[top]] = nodes.size();
+                }
+
+                stackNumbers.size = top;
+                stackParents.size = top;
+                stackPrevious.size = top;
+            }
+
+            if (stack.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds the given element to the index.
+     *
+     * @return The number of the element.
+     */
+    private int labelElement(U node, int parent, HashMap<String, IntList> ids, HashMap<String, IntList> classes,
+                             HashMap<String, IntList> localNames) {
+        int number = nodes.size();
+        if (number == ends.length) {
+            ends = Arrays.copyOf(ends, number * 2);
+            parents = Arrays.copyOf(parents, number * 2);
+            previousSiblings = Arrays.copyOf(previousSiblings, number * 2);
+            depths = Arrays.copyOf(depths, number * 2);
+        }
+
+        nodes.add(node);
+        numbers.put(node, number);
+        parents[number] = parent;
+        previousSiblings[number] = -1;
+        depths[number] = parent < 0 ? 0 : depths[parent] + 1;
+
+        Map<String, String> attributes = node.getAttributes();
+        if (attributes != null) {
+            String id = attributes.get("id");
+            if (id != null) {
+                add(ids, id, number);
+            }
+
+            String classNames = attributes.get("class");
+            if (classNames != null) {
+                for (String className : SelectorMatcher.SPACE_REGEX.split(classNames)) {
+                    if (!className.isEmpty()) {
+                        add(classes, className, number);
+                    }
+                }
+            }
+        }
+
+        add(localNames, node.getData().toLowerCase(Locale.ROOT), number);
+        return number;
+    }
+
+    private void check(int number) {
+        if (number < 0 || number >= nodes.size()) {
+            throw new IndexOutOfBoundsException("Number: " + number + ", size: " + nodes.size());
+        }
+    }
+
+    private BitSet toBitSet(int[] numbers) {
+        BitSet set = new BitSet(nodes.size());
+        for (int number : numbers) {
+            set.set(number);
+        }
+
+        return set;
+    }
+
+    private static int[] lookup(HashMap<String, int[]> map, String key) {
+        return find(map, key).clone();
+    }
+
+    private static int[] find(HashMap<String, int[]> map, String key) {
+        int[] numbers = map.get(key);
+        return numbers == null ? EMPTY : numbers;
+    }
+
+    private static void add(HashMap<String, IntList> map, String key, int number) {
+        IntList list = map.get(key);
+        if (list == null) {
+            list = new IntList();
+            map.put(key, list);
+        }
+
+        // An element with the same class twice is only added once.
+        if (list.size == 0 || list.values[list.size - 1] != number) {
+            list.add(number);
+        }
+    }
+
+    private static void toArrays(HashMap<String, IntList> from, HashMap<String, int[]> to) {
+        for (Map.Entry<String, IntList> entry : from.entrySet()) {
+            IntList list = entry.getValue();
+            to.put(entry.getKey(), Arrays.copyOf(list.values, list.size));
+        }
+    }
+
+    /**
+     * A growable list of element numbers.
+     */
+    private static class IntList {
+
+        int[] values = new int[4];
+
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            values[size++] = value;
+        }
+
+    }
+
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.jfr;
+
+import java.util.List;
+
+import se.fishtank.css.selectors.selector.Selector;
+
+/**
+ * Flight recorder event support, implemented by {@link JfrEventSupport} when the JDK Flight Recorder is
+ * available.
+ *
+ * @author Christer Sandberg
+ */
+interface EventSupport {
+
+    /**
+     * Begins a parse event.
+     *
+     * @return The event or {@code null} if parse events aren't enabled.
+     */
+    Object beginParse();
+
+    /**
+     * Ends a parse event and commits it if it exceeded its threshold.
+     *
+     * @param event The event returned from {@link #beginParse()}
+     * @param input The input containing the selectors.
+     * @param start The start offset of the selectors.
+     * @param end The end offset (exclusive) of the selectors.
+     * @param selectors The number of selectors parsed or {@code -1} if parsing failed.
+     */
+    void endParse(Object event, CharSequence input, int start, int end, int selectors);
+
+    /**
+     * Begins a query event.
+     *
+     * @return The event or {@code null} if query events aren't enabled.
+     */
+    Object beginQuery();
+
+    /**
+     * Ends a query event and commits it if it exceeded its threshold.
+     *
+     * @param event The event returned from {@link #beginQuery()}
+     * @param method The query method.
+     * @param selectors The selectors queried.
+     * @param elements The number of elements visited.
+     * @param matches The number of matching elements.
+     */
+    void endQuery(Object event, String method, List<Selector> selectors, long elements, long matches);
+
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.jfr;
+
+import java.util.List;
+
+import se.fishtank.css.selectors.selector.Selector;
+
+/**
+ * Java Flight Recorder events for parsing and queries.
+ * <p/>
+ * When running on a JVM with the JDK Flight Recorder ({@code jdk.jfr}) the events
+ * {@code se.fishtank.css.selectors.Parse} and {@code se.fishtank.css.selectors.Query} are recorded for
+ * operations exceeding their thresholds, 1 ms and 10 ms by default. Both the thresholds and whether the
+ * events are enabled may be changed in the recording settings like for any other event. On other JVMs,
+ * and when the events aren't enabled, {@code begin*} returns {@code null} and nothing is recorded.
+ *
+ * @author Christer Sandberg
+ */
+public final class Events {
+
+    /** The event support or {@code null} if the flight recorder isn't available. */
+    private static final EventSupport SUPPORT = load();
+
+    private Events() {
+    }
+
+    /**
+     * Begins a parse event.
+     *
+     * @return The event or {@code null} if parse events aren't recorded.
+     */
+    public static Object beginParse() {
+        return SUPPORT == null ? null : SUPPORT.beginParse();
+    }
+
+    /**
+     * Ends a parse event.
+     *
+     * @param event The event returned from {@link #beginParse()} or {@code null}
+     * @param input The input containing the selectors.
+     * @param start The start offset of the selectors.
+     * @param end The end offset (exclusive) of the selectors.
+     * @param selectors The number of selectors parsed or {@code -1} if parsing failed.
+     */
+    public static void endParse(Object event, CharSequence input, int start, int end, int selectors) {
+        if (event != null) {
+            SUPPORT.endParse(event, input, start, end, selectors);
+        }
+    }
+
+    /**
+     * Begins a query event.
+     *
+     * @return The event or {@code null} if query events aren't recorded.
+     */
+    public static Object beginQuery() {
+        return SUPPORT == null ? null : SUPPORT.beginQuery();
+    }
+
+    /**
+     * Ends a query event.
+     *
+     * @param event The event returned from {@link #beginQuery()} or {@code null}
+     * @param method The query method.
+     * @param selectors The selectors queried.
+     * @param elements The number of elements visited.
+     * @param matches The number of matching elements.
+     */
+    public static void endQuery(Object event, String method, List<Selector> selectors, long elements,
+                                long matches) {
+        if (event != null) {
+            SUPPORT.endQuery(event, method, selectors, elements, matches);
+        }
+    }
+
+    private static EventSupport load() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (EventSupport) Class.forName("se.fishtank.css.selectors.jfr.JfrEventSupport").newInstance();
+        } catch (Exception | LinkageError e) {
+            return null;
+        }
+    }
+
+}
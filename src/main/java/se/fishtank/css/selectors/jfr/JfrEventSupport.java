@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.jfr;
+
+import java.util.List;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import se.fishtank.css.selectors.selector.Selector;
+
+/**
+ * {@link EventSupport} implementation using the JDK Flight Recorder.
+ * <p/>
+ * This class is compiled for Java 11 and only loaded by {@link Events} when {@code jdk.jfr} is available.
+ *
+ * @author Christer Sandberg
+ */
+class JfrEventSupport implements EventSupport {
+
+    /** The maximum length of the selector text recorded. */
+    private static final int MAX_TEXT_LENGTH = 1024;
+
+    @Name("se.fishtank.css.selectors.Parse")
+    @Label("Selector Parse")
+    @Description("Parsing of a selector group")
+    @Category("CSS Selectors")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static class ParseEvent extends Event {
+
+        @Label("Selectors")
+        String selectors;
+
+        @Label("Selector Count")
+        int selectorCount;
+
+    }
+
+    @Name("se.fishtank.css.selectors.Query")
+    @Label("Selector Query")
+    @Description("A querySelector or querySelectorAll call")
+    @Category("CSS Selectors")
+    @Threshold("10 ms")
+    static class QueryEvent extends Event {
+
+        @Label("Method")
+        String method;
+
+        @Label("Selectors")
+        String selectors;
+
+        @Label("Elements Visited")
+        long elementsVisited;
+
+        @Label("Matches")
+        long matches;
+
+    }
+
+    @Override
+    public Object beginParse() {
+        ParseEvent event = new ParseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endParse(Object e, CharSequence input, int start, int end, int selectors) {
+        ParseEvent event = (ParseEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            event.selectors = truncate(input.subSequence(start, Math.min(end, start + MAX_TEXT_LENGTH + 1)));
+            event.selectorCount = selectors;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginQuery() {
+        QueryEvent event = new QueryEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endQuery(Object e, String method, List<Selector> selectors, long elements, long matches) {
+        QueryEvent event = (QueryEvent) e;
+        event.end();
+        if (event.shouldCommit()) {
+            StringBuilder sb = new StringBuilder();
+            for (Selector selector : selectors) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+
+                sb.append(selector);
+                if (sb.length() > MAX_TEXT_LENGTH) {
+                    break;
+                }
+            }
+
+            event.method = method;
+            event.selectors = truncate(sb);
+            event.elementsVisited = elements;
+            event.matches = matches;
+            event.commit();
+        }
+    }
+
+    private static String truncate(CharSequence text) {
+        if (text.length() > MAX_TEXT_LENGTH) {
+            return text.subSequence(0, MAX_TEXT_LENGTH) + "...";
+        }
+
+        return text.toString();
+    }
+
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+import se.fishtank.css.selectors.selector.SimpleSelector;
+
+/**
+ * A simple selector matcher that declares which of the selectors it matches are pure, i.e. always give
+ * the same result for the same node as long as the document isn't changed.
+ * <p/>
+ * The results of pure selectors are cached per node by the {@link SelectorMatcher}, until it's reset, so
+ * an expensive matcher is only invoked once per node however many selectors contain the same selector or
+ * however many times the node is reached when matching combinators.
+ *
+ * @author Christer Sandberg
+ */
+public interface CacheableSimpleSelectorMatcher<T extends DOMNode<T, ?>> extends SimpleSelectorMatcher<T> {
+
+    /**
+     * Returns whether the results of matching the given simple selector may be cached.
+     *
+     * @param simpleSelector Simple selector
+     * @return {@code true} if the selector is pure, {@code false} otherwise.
+     */
+    public boolean isPure(SimpleSelector simpleSelector);
+
+}
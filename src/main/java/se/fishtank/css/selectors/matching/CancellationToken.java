@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+/**
+ * A token used to cancel queries from another thread.
+ * <p/>
+ * Cancellation is cooperative, a query checks its token regularly while running and stops with a
+ * {@link QueryBudgetExceededException} once the token is cancelled.
+ *
+ * @author Christer Sandberg
+ */
+public class CancellationToken {
+
+    /** Whether this token has been cancelled. */
+    private volatile boolean cancelled = false;
+
+    /**
+     * Cancels the queries using this token.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Returns whether this token has been cancelled.
+     *
+     * @return {@code true} or {@code false}
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+}
@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+import se.fishtank.css.selectors.selector.AttributeSelector;
+import se.fishtank.css.selectors.selector.LocalNameSelector;
+import se.fishtank.css.selectors.selector.Selector;
+import se.fishtank.css.selectors.selector.SimpleSelector;
+
+/**
+ * A selector list compiled for matching as a single unit, used for {@code :is()} and {@code :where()}
+ * <p/>
+ * Duplicate selectors are removed and the rest are indexed by a key of their rightmost compound
+ * selector, the id if it has one, otherwise a class or the local name. When matching an element only
+ * the selectors indexed by its id, classes and local name are matched against it, along with the
+ * selectors without a key, so a long alternation costs about as much as the selectors that may
+ * actually match.
+ * <p/>
+ * The selectors indexed by class are kept in a hash table probed with the class tokens of the
+ * {@link MatchContext}, so the classes of an element are looked up without splitting its {@code class}
+ * attribute.
+ *
+ * @author Christer Sandberg
+ */
+class CompiledSelectorList<T extends DOMNode<T, ?>> {
+
+    private static final Selector[] EMPTY = new Selector[0];
+
+    /** Selectors by id. */
+    private final HashMap<String, Selector[]> ids = new HashMap<>();
+
+    /** The classes of the hash table of selectors by class, {@code null} for empty slots. */
+    private final String[] classKeys;
+
+    /** The selectors of each class in the hash table of selectors by class. */
+    private final Selector[][] classSelectors;
+
+    /** The mask of the slots in use in the hash table of selectors by class. */
+    private final int classMask;
+
+    /** Selectors by lower case local name. */
+    private final HashMap<String, Selector[]> localNames = new HashMap<>();
+
+    /** Whether any selectors are indexed by class. */
+    private final boolean hasClasses;
+
+    /** The slots of the classes of the element being matched found in the hash table of selectors by class. */
+    private int[] hits = new int[4];
+
+    /** Selectors without a key. */
+    private final Selector[] others;
+
+    /**
+     * Compile the given selector list.
+     *
+     * @param selectors The selectors.
+     */
+    CompiledSelectorList(List<Selector> selectors) {
+        HashMap<String, List<Selector>> ids = new HashMap<>();
+        HashMap<String, List<Selector>> classes = new HashMap<>();
+        HashMap<String, List<Selector>> localNames = new HashMap<>();
+        ArrayList<Selector> others = new ArrayList<>();
+        for (Selector selector : new LinkedHashSet<>(selectors)) {
+            String id = null;
+            String className = null;
+            String localName = null;
+            for (SimpleSelector simpleSelector : selector.compoundSelector.simpleSelectors) {
+                if (simpleSelector instanceof AttributeSelector) {
+                    AttributeSelector attributeSelector = (AttributeSelector) simpleSelector;
+                    if (attributeSelector.match == AttributeSelector.Match.EQUALS &&
+                            attributeSelector.name.equals("id")) {
+                        id = attributeSelector.value;
+                    } else if (attributeSelector.match == AttributeSelector.Match.INCLUDES &&
+                            attributeSelector.name.equals("class") && className == null) {
+                        className = attributeSelector.value;
+                    }
+                } else if (simpleSelector instanceof LocalNameSelector) {
+                    localName = ((LocalNameSelector) simpleSelector).name.toLowerCase(Locale.ROOT);
+                }
+            }
+
+            if (id != null) {
+                add(ids, id, selector);
+            } else if (className != null) {
+                add(classes, className, selector);
+            } else if (localName != null && !localName.equals("*")) {
+                add(localNames, localName, selector);
+            } else {
+                others.add(selector);
+            }
+        }
+
+        toArrays(ids, this.ids);
+        toArrays(localNames, this.localNames);
+
+        // At most half of the slots are used.
+        int size = Integer.highestOneBit(Math.max(classes.size(), 1) * 2 - 1) << 1;
+        this.classKeys = new String[size];
+        this.classSelectors = new Selector[size][];
+        this.classMask = size - 1;
+        for (Map.Entry<String, List<Selector>> entry : classes.entrySet()) {
+            int slot = MatchContext.hash(entry.getKey().hashCode()) & classMask;
+            while (classKeys[slot] != null) {
+                slot = (slot + 1) & classMask;
+            }
+
+            classKeys[slot] = entry.getKey();
+            classSelectors[slot] = entry.getValue().toArray(EMPTY);
+        }
+
+        this.hasClasses = !classes.isEmpty();
+        this.others = others.toArray(new Selector[others.size()]);
+    }
+
+    /**
+     * Returns whether the given element matches any of the selectors.
+     *
+     * @param matcher The selector matcher.
+     * @param node The element.
+     * @return {@code true} or {@code false}
+     */
+    boolean matches(SelectorMatcher<T> matcher, T node) {
+        MatchContext<T> context = matcher.getContext();
+        if (!ids.isEmpty()) {
+            Map<String, String> attributes = context.getAttributes(node);
+            String id = attributes == null ? null : attributes.get("id");
+            if (id != null && matchesAny(matcher, ids.get(id), node)) {
+                return true;
+            }
+        }
+
+        if (hasClasses) {
+            // The classes are looked up before matching, which may move the context to other elements.
+            int classCount = context.getClassCount(node);
+            int hitCount = 0;
+            for (int index = 0; index < classCount; ++index) {
+                int slot = findClass(context, index);
+                if (slot >= 0) {
+                    if (hitCount == hits.length) {
+                        hits = Arrays.copyOf(hits, hitCount * 2);
+                    }
+
+                    hits[hitCount++] = slot;
+                }
+            }
+
+            for (int i = 0; i < hitCount; ++i) {
+                if (matchesAny(matcher, classSelectors[hits[i]], node)) {
+                    return true;
+                }
+            }
+        }
+
+        if (!localNames.isEmpty()) {
+            Selector[] selectors = localNames.get(node.getData().toLowerCase(Locale.ROOT));
+            if (matchesAny(matcher, selectors, node)) {
+                return true;
+            }
+        }
+
+        return matchesAny(matcher, others, node);
+    }
+
+    /**
+     * Returns the slot of the class with the given index of the element being matched in the hash table of
+     * selectors by class.
+     *
+     * @param context The match context.
+     * @param index The index of the class.
+     * @return The slot or {@code -1} if no selectors are indexed by the class.
+     */
+    private int findClass(MatchContext<T> context, int index) {
+        int h = context.getClassHash(index);
+        for (int slot = MatchContext.hash(h) & classMask; classKeys[slot] != null; slot = (slot + 1) & classMask) {
+            String className = classKeys[slot];
+            if (className.hashCode() == h && context.isClass(index, className)) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    private boolean matchesAny(SelectorMatcher<T> matcher, Selector[] selectors, T node) {
+        if (selectors == null) {
+            return false;
+        }
+
+        for (Selector selector : selectors) {
+            if (matcher.matchesSelector(selector, node)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static void add(HashMap<String, List<Selector>> map, String key, Selector selector) {
+        List<Selector> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            map.put(key, list);
+        }
+
+        list.add(selector);
+    }
+
+    private static void toArrays(HashMap<String, List<Selector>> from, HashMap<String, Selector[]> to) {
+        for (Map.Entry<String, List<Selector>> entry : from.entrySet()) {
+            to.put(entry.getKey(), entry.getValue().toArray(EMPTY));
+        }
+    }
+
+}
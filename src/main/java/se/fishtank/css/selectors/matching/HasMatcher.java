@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+import se.fishtank.css.selectors.selector.Combinator;
+import se.fishtank.css.selectors.selector.CompoundSelector;
+import se.fishtank.css.selectors.selector.PseudoHasSelector;
+import se.fishtank.css.selectors.selector.Selector;
+import se.fishtank.css.selectors.selector.SimpleSelector;
+import se.fishtank.css.selectors.util.Pair;
+
+/**
+ * Matches {@code :has()} pseudo classes with results cached per element.
+ * <p/>
+ * A relative selector {@code c1 A c2 B} is equivalent to {@code c1 A:has(c2 B)}, so each relative
+ * selector is compiled into a chain of steps with a single compound selector each, matched left to
+ * right from the element being matched. The result of every step is cached per element, and so are
+ * the results of the searches for a matching descendant or later sibling. A descendant search is
+ * answered from the cached results of the children, filling the cache bottom-up, and a later sibling
+ * search from the cached result of the next sibling, so each step is evaluated at most once per element
+ * no matter how many elements are matched against the {@code :has()} pseudo class. Child and next
+ * sibling searches only look at the children and the next sibling respectively.
+ * <p/>
+ * The cached results are only valid as long as the document isn't changed.
+ *
+ * @author Christer Sandberg
+ */
+class HasMatcher<T extends DOMNode<T, ?>> {
+
+    /** The selector matcher used for the compound selectors of the steps. */
+    private final SelectorMatcher<T> selectorMatcher;
+
+    /** The compiled relative selectors. */
+    private final IdentityHashMap<Pair<Combinator, Selector>, Step<T>> steps = new IdentityHashMap<>();
+
+    /**
+     * Create a new {@code :has()} matcher.
+     *
+     * @param selectorMatcher The selector matcher used for the compound selectors.
+     */
+    HasMatcher(SelectorMatcher<T> selectorMatcher) {
+        this.selectorMatcher = selectorMatcher;
+    }
+
+    /**
+     * Matches the given {@code :has()} pseudo class against the given element.
+     *
+     * @param selector The {@code :has()} pseudo class selector.
+     * @param node The element.
+     * @return {@code true} or {@code false}
+     */
+    boolean matches(PseudoHasSelector selector, T node) {
+        for (Pair<Combinator, Selector> relative : selector.selectors) {
+            if (holds(compile(relative), node)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private Step<T> compile(Pair<Combinator, Selector> relative) {
+        Step<T> step = steps.get(relative);
+        if (step != null) {
+            return step;
+        }
+
+        CompoundSelector compoundSelector = relative.second.compoundSelector;
+        while (true) {
+            if (compoundSelector.previous == null) {
+                step = new Step<>(relative.first, compoundSelector.simpleSelectors, step);
+                break;
+            }
+
+            step = new Step<>(compoundSelector.previous.first, compoundSelector.simpleSelectors, step);
+            compoundSelector = compoundSelector.previous.second;
+        }
+
+        steps.put(relative, step);
+        return step;
+    }
+
+    /**
+     * Returns whether an element related to the given node by the combinator of the given step
+     * satisfies the step.
+     */
+    private boolean holds(Step<T> step, T node) {
+        switch (step.combinator) {
+        case CHILD:
+            for (T child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (satisfies(step, child)) {
+                    return true;
+                }
+            }
+
+            return false;
+        case DESCENDANT:
+            return hasDescendant(step, node);
+        case NEXT_SIBLING:
+            T sibling = nextElementSibling(node);
+            return sibling != null && satisfies(step, sibling);
+        case LATER_SIBLING:
+            return hasLaterSibling(step, node);
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Returns whether the given node matches the compound selector of the given step and the rest of
+     * the steps.
+     */
+    private boolean satisfies(Step<T> step, T node) {
+        if (node.getType() != DOMNode.Type.ELEMENT) {
+            return false;
+        }
+
+        Boolean cached = step.matches.get(node);
+        if (cached != null) {
+            return cached;
+        }
+
+        boolean result = true;
+        for (SimpleSelector simpleSelector : step.simpleSelectors) {
+            if (!selectorMatcher.matchesSimpleSelector(simpleSelector, node)) {
+                result = false;
+                break;
+            }
+        }
+
+        if (result && step.next != null) {
+            result = holds(step.next, node);
+        }
+
+        step.matches.put(node, result);
+        return result;
+    }
+
+    private boolean hasDescendant(Step<T> step, T node) {
+        Boolean cached = step.descendants.get(node);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Depth-first with an explicit stack of the elements being searched and the child of each to look at
+        // next. An element without a matching descendant is cached when popped, a match answers the whole stack.
+        ArrayList<T> parents = new ArrayList<>();
+        ArrayList<T> children = new ArrayList<>();
+        parents.add(node);
+        children.add(node.getFirstChild());
+        while (true) {
+            int top = parents.size() - 1;
+            T child = children.get(top);
+            if (child == null) {
+                step.descendants.put(parents.remove(top), false);
+                children.remove(top);
+                if (top == 0) {
+                    return false;
+                }
+
+                children.set(top - 1, children.get(top - 1).getNextSibling());
+                continue;
+            }
+
+            if (child.getType() == DOMNode.Type.ELEMENT) {
+                if (satisfies(step, child)) {
+                    break;
+                }
+
+                cached = step.descendants.get(child);
+                if (cached == null) {
+                    parents.add(child);
+                    children.add(child.getFirstChild());
+                    continue;
+                }
+
+                if (cached) {
+                    break;
+                }
+            }
+
+            children.set(top, child.getNextSibling());
+        }
+
+        for (T parent : parents) {
+            step.descendants.put(parent, true);
+        }
+
+        return true;
+    }
+
+    private boolean hasLaterSibling(Step<T> step, T node) {
+        Boolean cached = step.laterSiblings.get(node);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Walk forward until the answer is known, every node on the way shares it.
+        List<T> path = new ArrayList<>();
+        boolean result;
+        while (true) {
+            path.add(node);
+            T sibling = nextElementSibling(node);
+            if (sibling == null) {
+                result = false;
+                break;
+            }
+
+            if (satisfies(step, sibling)) {
+                result = true;
+                break;
+            }
+
+            cached = step.laterSiblings.get(sibling);
+            if (cached != null) {
+                result = cached;
+                break;
+            }
+
+            node = sibling;
+        }
+
+        for (T n : path) {
+            step.laterSiblings.put(n, result);
+        }
+
+        return result;
+    }
+
+    private static <T extends DOMNode<T, ?>> T nextElementSibling(T node) {
+        for (T n = node.getNextSibling(); n != null; n = n.getNextSibling()) {
+            if (n.getType() == DOMNode.Type.ELEMENT) {
+                return n;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * A step of a compiled relative selector with its cached results.
+     */
+    private static class Step<T> {
+
+        /** The combinator relating the element of the previous step to the element of this step. */
+        final Combinator combinator;
+
+        /** The simple selectors of the compound selector. */
+        final List<SimpleSelector> simpleSelectors;
+
+        /** The next step or {@code null} */
+        final Step<T> next;
+
+        /** Whether an element satisfies this and the following steps. */
+        final HashMap<T, Boolean> matches = new HashMap<>();
+
+        /** Whether a descendant of an element satisfies this step. */
+        final HashMap<T, Boolean> descendants = new HashMap<>();
+
+        /** Whether a later sibling of an element satisfies this step. */
+        final HashMap<T, Boolean> laterSiblings = new HashMap<>();
+
+        Step(Combinator combinator, List<SimpleSelector> simpleSelectors, Step<T> next) {
+            this.combinator = combinator;
+            this.simpleSelectors = simpleSelectors;
+            this.next = next;
+        }
+
+    }
+
+}
@@ -0,0 +1,256 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+
+/**
+ * The attributes and class tokens of the element being matched, shared by all the simple selectors
+ * matched against it.
+ * <p/>
+ * The attributes are fetched once per element, and the {@code class} attribute is tokenized once into
+ * the offsets of its classes and a hash table of them, hashed like {@link String#hashCode()} so that a
+ * class is looked up by the cached hash code of the selector value and compared in place. The arrays are
+ * reused for the next element, so matching classes doesn't allocate anything.
+ * <p/>
+ * A context belongs to a single {@link SelectorMatcher} and isn't safe for use by multiple threads.
+ *
+ * @author Christer Sandberg
+ */
+class MatchContext<T extends DOMNode<T, ?>> {
+
+    /** The element or {@code null} */
+    private T node = null;
+
+    /** Whether the attributes of the element have been fetched. */
+    private boolean fetched = false;
+
+    /** The attributes of the element or {@code null} */
+    private Map<String, String> attributes = null;
+
+    /** Whether the {@code class} attribute of the element has been tokenized. */
+    private boolean tokenized = false;
+
+    /** The value of the {@code class} attribute or {@code null} */
+    private String classNames = null;
+
+    /** The start offset of each class. */
+    private int[] starts = new int[8];
+
+    /** The end offset of each class. */
+    private int[] ends = new int[8];
+
+    /** The hash code of each class, equal to the hash code of the class as a string. */
+    private int[] hashes = new int[8];
+
+    /** The number of classes. */
+    private int classCount = 0;
+
+    /** Hash table of class indexes plus one, zero for empty slots. */
+    private int[] table = new int[16];
+
+    /** The mask of the slots in use in the hash table. */
+    private int mask = 0;
+
+    /**
+     * Returns the attributes of the given element.
+     *
+     * @param node The element.
+     * @return The attributes or {@code null}
+     */
+    Map<String, String> getAttributes(T node) {
+        select(node);
+        if (!fetched) {
+            attributes = node.getAttributes();
+            fetched = true;
+        }
+
+        return attributes;
+    }
+
+    /**
+     * Returns whether the given element has the given class.
+     *
+     * @param node The element.
+     * @param className The class.
+     * @return {@code true} or {@code false}
+     */
+    boolean hasClass(T node, String className) {
+        if (getClassCount(node) == 0 || className.isEmpty()) {
+            return false;
+        }
+
+        int h = className.hashCode();
+        for (int slot = hash(h) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int index = table[slot] - 1;
+            if (hashes[index] == h && isClass(index, className)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the number of classes of the given element, which are then accessed by their index with
+     * {@link #getClassHash(int)} and {@link #isClass(int, String)}
+     *
+     * @param node The element.
+     * @return The number of classes.
+     */
+    int getClassCount(T node) {
+        select(node);
+        if (!tokenized) {
+            Map<String, String> attributes = getAttributes(node);
+            tokenize(attributes == null ? null : attributes.get("class"));
+        }
+
+        return classCount;
+    }
+
+    /**
+     * Returns the hash code of the class with the given index of the current element, equal to the hash code
+     * of the class as a string.
+     *
+     * @param index The index of the class.
+     * @return The hash code.
+     */
+    int getClassHash(int index) {
+        return hashes[index];
+    }
+
+    /**
+     * Returns whether the class with the given index of the current element is the given class.
+     *
+     * @param index The index of the class.
+     * @param className The class.
+     * @return {@code true} or {@code false}
+     */
+    boolean isClass(int index, String className) {
+        int length = className.length();
+        return ends[index] - starts[index] == length &&
+                classNames.regionMatches(starts[index], className, 0, length);
+    }
+
+    /**
+     * Forgets the current element, e.g. after the document has been changed.
+     */
+    void clear() {
+        node = null;
+        fetched = false;
+        attributes = null;
+        tokenized = false;
+        classNames = null;
+    }
+
+    /**
+     * Returns whether the given whitespace separated list of values contains the given value.
+     *
+     * @param values The whitespace separated list of values.
+     * @param value The value.
+     * @return {@code true} or {@code false}
+     */
+    static boolean includes(String values, String value) {
+        int length = value.length();
+        if (length == 0) {
+            return false;
+        }
+
+        int end = values.length();
+        for (int start = 0; start < end; ) {
+            int tokenEnd = start;
+            while (tokenEnd < end && !isWhitespace(values.charAt(tokenEnd))) {
+                ++tokenEnd;
+            }
+
+            if (tokenEnd - start == length && values.regionMatches(start, value, 0, length)) {
+                return true;
+            }
+
+            start = tokenEnd + 1;
+        }
+
+        return false;
+    }
+
+    private void select(T node) {
+        if (node != this.node && !node.equals(this.node)) {
+            clear();
+            this.node = node;
+        }
+    }
+
+    private void tokenize(String value) {
+        tokenized = true;
+        classNames = value;
+        classCount = 0;
+        if (value == null) {
+            return;
+        }
+
+        int end = value.length();
+        for (int start = 0; start < end; ) {
+            int tokenEnd = start;
+            while (tokenEnd < end && !isWhitespace(value.charAt(tokenEnd))) {
+                ++tokenEnd;
+            }
+
+            if (tokenEnd > start) {
+                if (classCount == starts.length) {
+                    starts = Arrays.copyOf(starts, classCount * 2);
+                    ends = Arrays.copyOf(ends, classCount * 2);
+                    hashes = Arrays.copyOf(hashes, classCount * 2);
+                }
+
+                starts[classCount] = start;
+                ends[classCount] = tokenEnd;
+                ++classCount;
+            }
+
+            start = tokenEnd + 1;
+        }
+
+        // At most half of the slots are used.
+        int size = Integer.highestOneBit(Math.max(classCount, 4) * 2 - 1) << 1;
+        if (size > table.length) {
+            table = new int[size];
+        } else {
+            Arrays.fill(table, 0, size, 0);
+        }
+
+        mask = size - 1;
+        for (int index = 0; index < classCount; ++index) {
+            int h = 0;
+            for (int i = starts[index]; i < ends[index]; ++i) {
+                h = 31 * h + value.charAt(i);
+            }
+
+            hashes[index] = h;
+            int slot = hash(h) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            table[slot] = index + 1;
+        }
+    }
+
+    /**
+     * Spreads the higher bits of the given hash code for indexing a hash table.
+     *
+     * @param h The hash code.
+     * @return The spread hash code.
+     */
+    static int hash(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\f';
+    }
+
+}
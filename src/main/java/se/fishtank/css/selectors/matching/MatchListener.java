@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+import se.fishtank.css.selectors.selector.Combinator;
+import se.fishtank.css.selectors.selector.CompoundSelector;
+import se.fishtank.css.selectors.selector.SimpleSelector;
+
+/**
+ * A match listener is notified about the work done while matching selectors.
+ * <p/>
+ * Listeners are optional and a {@link SelectorMatcher} without a listener doesn't do any additional work.
+ * See {@link MatchProfiler} for a listener counting the events.
+ *
+ * @author Christer Sandberg
+ */
+public interface MatchListener<T extends DOMNode<T, ?>> {
+
+    /**
+     * Called for each element visited when traversing a document for a query.
+     *
+     * @param node The element.
+     */
+    public void elementVisited(T node);
+
+    /**
+     * Called when matching of a compound selector, and the compound selectors preceding it, against a node starts.
+     *
+     * @param selector The compound selector.
+     * @param node The node.
+     */
+    public void compoundSelectorEntered(CompoundSelector selector, T node);
+
+    /**
+     * Called when matching of a compound selector, and the compound selectors preceding it, against a node ends.
+     *
+     * @param selector The compound selector.
+     * @param node The node.
+     * @param matched Whether the compound selector and the compound selectors preceding it matched.
+     */
+    public void compoundSelectorExited(CompoundSelector selector, T node, boolean matched);
+
+    /**
+     * Called for each evaluation of a simple selector.
+     *
+     * @param selector The simple selector.
+     * @param node The element the selector was evaluated against.
+     * @param matched Whether the selector matched.
+     */
+    public void simpleSelectorEvaluated(SimpleSelector selector, T node, boolean matched);
+
+    /**
+     * Called for each step to a parent or a previous sibling when looking for a node matching the
+     * compound selector on the left side of a combinator.
+     *
+     * @param combinator The combinator.
+     * @param node The node stepped to.
+     */
+    public void combinatorStep(Combinator combinator, T node);
+
+    /**
+     * Called when the compound selector on the left side of a combinator failed to match a node and signalled
+     * that matching continues from the closest descendant or from the closest later sibling.
+     *
+     * @param node The node the compound selector was matched against.
+     * @param fromClosestDescendant {@code true} if restarting from the closest descendant,
+     *                              {@code false} if restarting from the closest later sibling.
+     */
+    public void restarted(T node, boolean fromClosestDescendant);
+
+    /**
+     * Called for each invocation of a custom {@link SimpleSelectorMatcher}
+     *
+     * @param selector The simple selector.
+     * @param node The element the selector was evaluated against.
+     * @param matched Whether the selector matched.
+     */
+    public void customMatcherInvoked(SimpleSelector selector, T node, boolean matched);
+
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+import se.fishtank.css.selectors.selector.Combinator;
+import se.fishtank.css.selectors.selector.CompoundSelector;
+import se.fishtank.css.selectors.selector.SimpleSelector;
+import se.fishtank.css.selectors.selector.SimpleSelectorType;
+
+/**
+ * A {@link MatchListener} counting the work done while matching.
+ * <p/>
+ * A profiler is not thread safe, so use one profiler per thread.
+ *
+ * @author Christer Sandberg
+ */
+public class MatchProfiler<T extends DOMNode<T, ?>> implements MatchListener<T> {
+
+    private long elementsVisited;
+
+    private long compoundEvaluations;
+
+    private final long[] evaluations = new long[SimpleSelectorType.values().length];
+
+    private final long[] matches = new long[SimpleSelectorType.values().length];
+
+    private long ancestorSteps;
+
+    private long siblingSteps;
+
+    private long descendantRestarts;
+
+    private long laterSiblingRestarts;
+
+    private long customMatcherInvocations;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void elementVisited(T node) {
+        ++elementsVisited;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void compoundSelectorEntered(CompoundSelector selector, T node) {
+        ++compoundEvaluations;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void compoundSelectorExited(CompoundSelector selector, T node, boolean matched) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void simpleSelectorEvaluated(SimpleSelector selector, T node, boolean matched) {
+        int i = selector.getType().ordinal();
+        ++evaluations[i];
+        if (matched) {
+            ++matches[i];
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void combinatorStep(Combinator combinator, T node) {
+        switch (combinator) {
+        case CHILD:
+        case DESCENDANT:
+            ++ancestorSteps;
+            break;
+        default:
+            ++siblingSteps;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void restarted(T node, boolean fromClosestDescendant) {
+        if (fromClosestDescendant) {
+            ++descendantRestarts;
+        } else {
+            ++laterSiblingRestarts;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void customMatcherInvoked(SimpleSelector selector, T node, boolean matched) {
+        ++customMatcherInvocations;
+    }
+
+    /**
+     * Returns the number of elements visited.
+     *
+     * @return The number of elements visited.
+     */
+    public long getElementsVisited() {
+        return elementsVisited;
+    }
+
+    /**
+     * Returns the number of compound selector evaluations.
+     *
+     * @return The number of evaluations.
+     */
+    public long getCompoundEvaluations() {
+        return compoundEvaluations;
+    }
+
+    /**
+     * Returns the number of evaluations of simple selectors of the given type.
+     *
+     * @param type The simple selector type.
+     * @return The number of evaluations.
+     */
+    public long getEvaluations(SimpleSelectorType type) {
+        return evaluations[type.ordinal()];
+    }
+
+    /**
+     * Returns the total number of simple selector evaluations.
+     *
+     * @return The number of evaluations.
+     */
+    public long getEvaluations() {
+        long total = 0;
+        for (long n : evaluations) {
+            total += n;
+        }
+
+        return total;
+    }
+
+    /**
+     * Returns the number of successful evaluations of simple selectors of the given type.
+     *
+     * @param type The simple selector type.
+     * @return The number of matches.
+     */
+    public long getMatches(SimpleSelectorType type) {
+        return matches[type.ordinal()];
+    }
+
+    /**
+     * Returns the number of steps taken to parent nodes for child and descendant combinators.
+     *
+     * @return The number of ancestor steps.
+     */
+    public long getAncestorSteps() {
+        return ancestorSteps;
+    }
+
+    /**
+     * Returns the number of steps taken to previous siblings for sibling combinators.
+     *
+     * @return The number of sibling steps.
+     */
+    public long getSiblingSteps() {
+        return siblingSteps;
+    }
+
+    /**
+     * Returns the number of restarts from the closest descendant.
+     *
+     * @return The number of restarts.
+     */
+    public long getDescendantRestarts() {
+        return descendantRestarts;
+    }
+
+    /**
+     * Returns the number of restarts from the closest later sibling.
+     *
+     * @return The number of restarts.
+     */
+    public long getLaterSiblingRestarts() {
+        return laterSiblingRestarts;
+    }
+
+    /**
+     * Returns the number of custom simple selector matcher invocations.
+     *
+     * @return The number of invocations.
+     */
+    public long getCustomMatcherInvocations() {
+        return customMatcherInvocations;
+    }
+
+    /**
+     * Resets all counters.
+     */
+    public void reset() {
+        elementsVisited = 0;
+        compoundEvaluations = 0;
+        for (int i = 0; i < evaluations.length; ++i) {
+            evaluations[i] = 0;
+            matches[i] = 0;
+        }
+
+        ancestorSteps = 0;
+        siblingSteps = 0;
+        descendantRestarts = 0;
+        laterSiblingRestarts = 0;
+        customMatcherInvocations = 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("elements visited: ").append(elementsVisited).append('\n');
+        sb.append("compound selector evaluations: ").append(compoundEvaluations).append('\n');
+        for (SimpleSelectorType type : SimpleSelectorType.values()) {
+            int i = type.ordinal();
+            if (evaluations[i] > 0) {
+                sb.append(type.name().toLowerCase()).append(" evaluations: ").append(evaluations[i])
+                        .append(" (").append(matches[i]).append(" matched)\n");
+            }
+        }
+
+        sb.append("ancestor steps: ").append(ancestorSteps).append('\n');
+        sb.append("sibling steps: ").append(siblingSteps).append('\n');
+        sb.append("restarts from closest descendant: ").append(descendantRestarts).append('\n');
+        sb.append("restarts from closest later sibling: ").append(laterSiblingRestarts).append('\n');
+        sb.append("custom matcher invocations: ").append(customMatcherInvocations);
+        return sb.toString();
+    }
+
+}
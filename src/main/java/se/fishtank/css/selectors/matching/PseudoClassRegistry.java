@@ -0,0 +1,104 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import java.util.HashMap;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+import se.fishtank.css.selectors.selector.PseudoClassSelector;
+import se.fishtank.css.selectors.selector.PseudoFunctionSelector;
+import se.fishtank.css.selectors.selector.SimpleSelector;
+
+/**
+ * A simple selector matcher dispatching custom pseudo classes and functional pseudo classes by name.
+ * <p/>
+ * Each pseudo class, e.g. {@code :visible}, and each functional pseudo class, e.g. {@code :contains('x')},
+ * is registered with a dedicated matcher that is only invoked for selectors naming it. Any other simple
+ * selector doesn't match. The built in pseudo classes are always matched by the {@link SelectorMatcher}
+ * and can't be registered.
+ * <p/>
+ * The selectors of a registered matcher are pure if it's a {@link CacheableSimpleSelectorMatcher} declaring
+ * them pure, and their results are then cached per node. A {@link SelectorMatcher} resolves the matcher
+ * and purity of each selector once, so matching a registered pseudo class doesn't look it up by name.
+ * <p/>
+ * A registry may be shared by multiple threads once all the matchers have been registered.
+ *
+ * @author Christer Sandberg
+ */
+public class PseudoClassRegistry<T extends DOMNode<T, ?>> implements CacheableSimpleSelectorMatcher<T> {
+
+    /** Matchers by pseudo class name. */
+    private final HashMap<String, SimpleSelectorMatcher<T>> pseudoClasses = new HashMap<>();
+
+    /** Matchers by functional pseudo class name. */
+    private final HashMap<String, SimpleSelectorMatcher<T>> functions = new HashMap<>();
+
+    /**
+     * Registers a matcher for the pseudo class with the given name.
+     *
+     * @param name The name of the pseudo class, without the colon.
+     * @param matcher The matcher, invoked with the {@link PseudoClassSelector}
+     * @return This registry.
+     * @throws IllegalArgumentException If the pseudo class is built in.
+     */
+    public PseudoClassRegistry<T> register(String name, SimpleSelectorMatcher<T> matcher) {
+        if (SelectorMatcher.isBuiltInPseudoClass(name)) {
+            throw new IllegalArgumentException("Built in pseudo class: " + name);
+        }
+
+        pseudoClasses.put(name, matcher);
+        return this;
+    }
+
+    /**
+     * Registers a matcher for the functional pseudo class with the given name.
+     * <p/>
+     * The built in functional pseudo classes, e.g. {@code :not()} and {@code :nth-child()}, are parsed into
+     * their own selectors and never dispatched to a registered matcher.
+     *
+     * @param name The name of the functional pseudo class, without the colon and parenthesis.
+     * @param matcher The matcher, invoked with the {@link PseudoFunctionSelector}
+     * @return This registry.
+     */
+    public PseudoClassRegistry<T> registerFunction(String name, SimpleSelectorMatcher<T> matcher) {
+        functions.put(name, matcher);
+        return this;
+    }
+
+    /**
+     * Returns the matcher registered for the given simple selector.
+     *
+     * @param simpleSelector The simple selector.
+     * @return The matcher or {@code null} if the selector isn't a registered pseudo class.
+     */
+    public SimpleSelectorMatcher<T> resolve(SimpleSelector simpleSelector) {
+        if (simpleSelector instanceof PseudoClassSelector) {
+            return pseudoClasses.get(((PseudoClassSelector) simpleSelector).value);
+        } else if (simpleSelector instanceof PseudoFunctionSelector) {
+            return functions.get(((PseudoFunctionSelector) simpleSelector).name);
+        }
+
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isPure(SimpleSelector simpleSelector) {
+        SimpleSelectorMatcher<T> matcher = resolve(simpleSelector);
+        return matcher instanceof CacheableSimpleSelectorMatcher &&
+                ((CacheableSimpleSelectorMatcher<T>) matcher).isPure(simpleSelector);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean matches(SimpleSelector simpleSelector, T node) {
+        SimpleSelectorMatcher<T> matcher = resolve(simpleSelector);
+        return matcher != null && matcher.matches(simpleSelector, node);
+    }
+
+}
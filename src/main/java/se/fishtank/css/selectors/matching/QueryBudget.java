@@ -0,0 +1,219 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import java.util.concurrent.TimeUnit;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+import se.fishtank.css.selectors.selector.Combinator;
+import se.fishtank.css.selectors.selector.CompoundSelector;
+import se.fishtank.css.selectors.selector.SimpleSelector;
+
+/**
+ * Limits the work a single query may do.
+ * <p/>
+ * A budget limits the number of elements visited, the number of matcher steps (simple selector
+ * evaluations and steps to parents and siblings for combinators) and the time a query may run, and may
+ * hold a {@link CancellationToken}. The limits are enforced cooperatively by a {@link MatchListener}
+ * created for each query, see {@link #newListener(MatchListener)}, which throws a
+ * {@link QueryBudgetExceededException} once a limit is exceeded. The deadline and the cancellation token
+ * are checked for each element visited and every {@link #CHECK_INTERVAL} matcher steps.
+ * <p/>
+ * A budget is immutable and may be shared between queries and threads.
+ *
+ * @author Christer Sandberg
+ */
+public class QueryBudget {
+
+    /** No limit. */
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    /** The number of matcher steps between checks of the deadline and the cancellation token. */
+    public static final int CHECK_INTERVAL = 256;
+
+    /** The maximum number of elements visited. */
+    public final long maxElements;
+
+    /** The maximum number of matcher steps. */
+    public final long maxSteps;
+
+    /** The maximum query time in nanoseconds. */
+    public final long timeout;
+
+    /** Cancellation token or {@code null} */
+    public final CancellationToken cancellationToken;
+
+    /**
+     * Create a new query budget.
+     *
+     * @param maxElements The maximum number of elements visited or {@link #UNLIMITED}
+     * @param maxSteps The maximum number of matcher steps or {@link #UNLIMITED}
+     * @param timeout The maximum query time or {@link #UNLIMITED}
+     * @param unit The unit of the timeout.
+     * @param cancellationToken A cancellation token or {@code null}
+     */
+    public QueryBudget(long maxElements, long maxSteps, long timeout, TimeUnit unit,
+                       CancellationToken cancellationToken) {
+        this.maxElements = maxElements;
+        this.maxSteps = maxSteps;
+        this.timeout = timeout == UNLIMITED ? UNLIMITED : unit.toNanos(timeout);
+        this.cancellationToken = cancellationToken;
+    }
+
+    /**
+     * Returns a budget only limiting the number of elements visited.
+     *
+     * @param maxElements The maximum number of elements visited.
+     * @return A new query budget.
+     */
+    public static QueryBudget elements(long maxElements) {
+        return new QueryBudget(maxElements, UNLIMITED, UNLIMITED, TimeUnit.NANOSECONDS, null);
+    }
+
+    /**
+     * Returns a budget only limiting the number of matcher steps.
+     *
+     * @param maxSteps The maximum number of matcher steps.
+     * @return A new query budget.
+     */
+    public static QueryBudget steps(long maxSteps) {
+        return new QueryBudget(UNLIMITED, maxSteps, UNLIMITED, TimeUnit.NANOSECONDS, null);
+    }
+
+    /**
+     * Returns a budget only limiting the query time.
+     *
+     * @param timeout The maximum query time.
+     * @param unit The unit of the timeout.
+     * @return A new query budget.
+     */
+    public static QueryBudget timeout(long timeout, TimeUnit unit) {
+        return new QueryBudget(UNLIMITED, UNLIMITED, timeout, unit, null);
+    }
+
+    /**
+     * Returns a budget without limits that only checks the given cancellation token.
+     *
+     * @param cancellationToken The cancellation token.
+     * @return A new query budget.
+     */
+    public static QueryBudget cancellable(CancellationToken cancellationToken) {
+        return new QueryBudget(UNLIMITED, UNLIMITED, UNLIMITED, TimeUnit.NANOSECONDS, cancellationToken);
+    }
+
+    /**
+     * Creates a listener enforcing this budget for a single query, starting the clock for the timeout.
+     *
+     * @param delegate A listener to forward all events to or {@code null}
+     * @return A new match listener.
+     */
+    public <T extends DOMNode<T, ?>> MatchListener<T> newListener(MatchListener<T> delegate) {
+        return new BudgetListener<>(this, delegate);
+    }
+
+    /**
+     * Match listener enforcing a budget.
+     */
+    private static class BudgetListener<T extends DOMNode<T, ?>> implements MatchListener<T> {
+
+        final QueryBudget budget;
+
+        final MatchListener<T> delegate;
+
+        /** The deadline in {@link System#nanoTime()} or {@code 0} if none. */
+        final long deadline;
+
+        long elements = 0;
+
+        long steps = 0;
+
+        BudgetListener(QueryBudget budget, MatchListener<T> delegate) {
+            this.budget = budget;
+            this.delegate = delegate;
+            if (budget.timeout == UNLIMITED) {
+                this.deadline = 0;
+            } else {
+                this.deadline = System.nanoTime() + budget.timeout;
+            }
+        }
+
+        @Override
+        public void elementVisited(T node) {
+            if (++elements > budget.maxElements) {
+                throw new QueryBudgetExceededException(QueryBudgetExceededException.Reason.ELEMENTS);
+            }
+
+            check();
+            if (delegate != null) {
+                delegate.elementVisited(node);
+            }
+        }
+
+        @Override
+        public void compoundSelectorEntered(CompoundSelector selector, T node) {
+            if (delegate != null) {
+                delegate.compoundSelectorEntered(selector, node);
+            }
+        }
+
+        @Override
+        public void compoundSelectorExited(CompoundSelector selector, T node, boolean matched) {
+            if (delegate != null) {
+                delegate.compoundSelectorExited(selector, node, matched);
+            }
+        }
+
+        @Override
+        public void simpleSelectorEvaluated(SimpleSelector selector, T node, boolean matched) {
+            step();
+            if (delegate != null) {
+                delegate.simpleSelectorEvaluated(selector, node, matched);
+            }
+        }
+
+        @Override
+        public void combinatorStep(Combinator combinator, T node) {
+            step();
+            if (delegate != null) {
+                delegate.combinatorStep(combinator, node);
+            }
+        }
+
+        @Override
+        public void restarted(T node, boolean fromClosestDescendant) {
+            if (delegate != null) {
+                delegate.restarted(node, fromClosestDescendant);
+            }
+        }
+
+        @Override
+        public void customMatcherInvoked(SimpleSelector selector, T node, boolean matched) {
+            if (delegate != null) {
+                delegate.customMatcherInvoked(selector, node, matched);
+            }
+        }
+
+        private void step() {
+            if (++steps > budget.maxSteps) {
+                throw new QueryBudgetExceededException(QueryBudgetExceededException.Reason.STEPS);
+            }
+
+            if (steps % CHECK_INTERVAL == 0) {
+                check();
+            }
+        }
+
+        private void check() {
+            if (budget.cancellationToken != null && budget.cancellationToken.isCancelled()) {
+                throw new QueryBudgetExceededException(QueryBudgetExceededException.Reason.CANCELLED);
+            }
+
+            if (deadline != 0 && System.nanoTime() - deadline >= 0) {
+                throw new QueryBudgetExceededException(QueryBudgetExceededException.Reason.DEADLINE);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when a query exceeds its {@link QueryBudget} or is cancelled.
+ *
+ * @author Christer Sandberg
+ */
+public class QueryBudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The reason a query was stopped. */
+    public static enum Reason {
+        ELEMENTS, STEPS, DEADLINE, CANCELLED
+    }
+
+    /** The reason the query was stopped. */
+    public final Reason reason;
+
+    /** The matches found before the query was stopped, in document order. */
+    private final List<?> partialResult;
+
+    /**
+     * Create a new exception without any partial result.
+     *
+     * @param reason The reason the query was stopped.
+     */
+    public QueryBudgetExceededException(Reason reason) {
+        this(reason, Collections.emptyList(), null);
+    }
+
+    /**
+     * Create a new exception.
+     *
+     * @param reason The reason the query was stopped.
+     * @param partialResult The matches found before the query was stopped.
+     * @param cause The cause or {@code null}
+     */
+    public QueryBudgetExceededException(Reason reason, List<?> partialResult, Throwable cause) {
+        super("Query stopped: " + reason.name().toLowerCase(), cause);
+        this.reason = reason;
+        this.partialResult = partialResult;
+    }
+
+    /**
+     * Returns the matches found before the query was stopped.
+     *
+     * @return The partial result, in document order.
+     */
+    public List<?> getPartialResult() {
+        return partialResult;
+    }
+
+}
@@ -0,0 +1,415 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import se.fishtank.css.selectors.dom.DOMNode;
+import se.fishtank.css.selectors.dom.Visitor;
+import se.fishtank.css.selectors.selector.Combinator;
+import se.fishtank.css.selectors.selector.CompoundSelector;
+import se.fishtank.css.selectors.selector.Selector;
+import se.fishtank.css.selectors.selector.SimpleSelector;
+
+/**
+ * A selector group compiled into an automaton that is evaluated top-down in a single walk of the document.
+ * <p/>
+ * Each compound selector of each selector is a state, waiting for an element matching the compound selector
+ * below an element that matched the previous one. The states of the leftmost compound selectors are always
+ * active. When an element matches an active state, the state of the next compound selector is activated for
+ * its children, or for the whole subtree if the combinator is a descendant combinator, for its next element
+ * sibling if it's a next sibling combinator or for all its later siblings if it's a later sibling combinator.
+ * The element matches the group when it matches the state of a rightmost compound selector.
+ * <p/>
+ * The active states are kept on a stack indexed by depth while walking the document, along with the states
+ * activated by the previous element sibling and by any earlier sibling, so deciding whether an element
+ * matches takes time proportional to the number of active states, however deep the element is or however
+ * many siblings it has, instead of climbing its ancestors and previous siblings for each selector.
+ * <p/>
+ * An automaton may be used for any number of walks but isn't safe for use by multiple threads.
+ *
+ * @author Christer Sandberg
+ */
+public class SelectorAutomaton<T extends DOMNode<T, ?>> {
+
+    /** The simple selectors of the compound selector of each state. */
+    private final List<SimpleSelector>[] compounds;
+
+    /** The combinator preceding the compound selector of each state or {@code null} */
+    private final Combinator[] combinators;
+
+    /** Whether each state is the state of a rightmost compound selector. */
+    private final boolean[] finals;
+
+    /** The states of the leftmost compound selectors. */
+    private final int[] startStates;
+
+    /** Simple selector matcher for custom matching or {@code null} */
+    private final SimpleSelectorMatcher<T> simpleSelectorMatcher;
+
+    /** Match listener or {@code null} */
+    private final MatchListener<T> matchListener;
+
+    /** The active states for the children of the elements at each depth. */
+    private int[][] frames = new int[16][];
+
+    /** The number of states in each frame. */
+    private int[] frameSizes = new int[16];
+
+    /** The states activated by the previous element sibling of the element being matched at each depth. */
+    private int[][] nextStates = new int[16][];
+
+    /** The number of states activated by the previous element sibling at each depth. */
+    private int[] nextSizes = new int[16];
+
+    /** The states activated by any earlier sibling of the element being matched at each depth. */
+    private int[][] laterStates = new int[16][];
+
+    /** The number of states activated by any earlier sibling at each depth. */
+    private int[] laterSizes = new int[16];
+
+    /** Whether each state has been activated by any earlier sibling at each depth. */
+    private boolean[][] laterMarks = new boolean[16][];
+
+    /** The states activated for the next element sibling by the element being matched. */
+    private final int[] pending;
+
+    /** The number of states activated for the next element sibling by the element being matched. */
+    private int pendingSize = 0;
+
+    /**
+     * The stamp of each state, equal to the current stamp if it has been added to the frame or the pending
+     * states being filled.
+     */
+    private final int[] stamps;
+
+    /** The stamp of the frame being filled. */
+    private int stamp = 0;
+
+    /**
+     * Compile the given selectors.
+     *
+     * @param selectors The selectors.
+     */
+    public SelectorAutomaton(List<Selector> selectors) {
+        this(selectors, null, null);
+    }
+
+    /**
+     * Compile the given selectors.
+     *
+     * @param selectors The selectors.
+     * @param simpleSelectorMatcher A simple selector matcher for custom matching or {@code null}
+     * @param matchListener A match listener or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public SelectorAutomaton(List<Selector> selectors, SimpleSelectorMatcher<T> simpleSelectorMatcher,
+                             MatchListener<T> matchListener) {
+        this.simpleSelectorMatcher = simpleSelectorMatcher;
+        this.matchListener = matchListener;
+
+        ArrayList<List<SimpleSelector>> compounds = new ArrayList<>();
+        ArrayList<Combinator> combinators = new ArrayList<>();
+        ArrayList<Integer> startStates = new ArrayList<>();
+        LinkedList<CompoundSelector> sequence = new LinkedList<>();
+        for (Selector selector : selectors) {
+            if (selector.pseudoElement != null) {
+                continue;
+            }
+
+            sequence.clear();
+            for (CompoundSelector compound = selector.compoundSelector; compound != null;
+                 compound = compound.previous == null ? null : compound.previous.second) {
+                sequence.addFirst(compound);
+            }
+
+            startStates.add(compounds.size());
+            for (CompoundSelector compound : sequence) {
+                compounds.add(compound.simpleSelectors);
+                combinators.add(compound.previous == null ? null : compound.previous.first);
+            }
+        }
+
+        int size = compounds.size();
+        this.compounds = compounds.toArray(new List[size]);
+        this.combinators = combinators.toArray(new Combinator[size]);
+        this.finals = new boolean[size];
+        for (int state = 0; state < size; ++state) {
+            finals[state] = state + 1 == size || this.combinators[state + 1] == null;
+        }
+
+        this.startStates = new int[startStates.size()];
+        for (int i = 0; i < this.startStates.length; ++i) {
+            this.startStates[i] = startStates.get(i);
+        }
+
+        this.pending = new int[size];
+        this.stamps = new int[size];
+    }
+
+    /**
+     * Returns the number of states.
+     *
+     * @return The number of states.
+     */
+    public int getStateCount() {
+        return compounds.length;
+    }
+
+    /**
+     * Visits the elements under the given root node, including the root node, matching any of the selectors
+     * in document order.
+     * <p/>
+     * If the root node is an element, the selectors are matched in the context of its document, i.e. the
+     * ancestors of the root node and the earlier siblings of the root node and its ancestors are matched
+     * first to activate their states, without being visited.
+     *
+     * @param root The root node.
+     * @param visitor The visitor that will be called for each matching element.
+     */
+    public void match(T root, Visitor<T> visitor) {
+        SelectorMatcher<T> matcher = new SelectorMatcher<>(simpleSelectorMatcher, matchListener);
+        frameSizes[0] = 0;
+        resetSiblings(0);
+        T node;
+        int depth = 0;
+        if (root.getType() == DOMNode.Type.ELEMENT) {
+            depth = enter(matcher, root);
+            node = root;
+        } else {
+            node = root.getFirstChild();
+        }
+
+        while (node != null) {
+            if (node.getType() == DOMNode.Type.ELEMENT) {
+                if (step(matcher, node, depth)) {
+                    visitor.visit(node);
+                }
+
+                T child = node.getFirstChild();
+                if (child != null) {
+                    ++depth;
+                    resetSiblings(depth);
+                    node = child;
+                    continue;
+                }
+            }
+
+            // Node wrappers may be created on demand, so they're compared by equality.
+            while (!node.equals(root)) {
+                T next = node.getNextSibling();
+                if (next != null) {
+                    node = next;
+                    break;
+                }
+
+                node = node.getParentNode();
+                --depth;
+            }
+
+            if (node.equals(root)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns all the elements under the given root node, including the root node, matching any of the
+     * selectors in document order.
+     *
+     * @param root The root node.
+     * @return A list of all the matching nodes.
+     */
+    public List<T> matchAll(T root) {
+        final LinkedList<T> result = new LinkedList<>();
+        match(root, new Visitor<T>() {
+            @Override
+            public void visit(T node) {
+                result.add(node);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Matches the ancestors of the given root element and the earlier element siblings of the root element
+     * and its ancestors top-down, leaving the states active for the root element.
+     *
+     * @return The depth of the root element.
+     */
+    private int enter(SelectorMatcher<T> matcher, T root) {
+        LinkedList<T> path = new LinkedList<>();
+        for (T n = root; n != null && n.getType() == DOMNode.Type.ELEMENT; n = n.getParentNode()) {
+            path.addFirst(n);
+        }
+
+        int depth = 0;
+        LinkedList<T> siblings = new LinkedList<>();
+        for (T n : path) {
+            siblings.clear();
+            for (T sibling = n.getPreviousSibling(); sibling != null; sibling = sibling.getPreviousSibling()) {
+                if (sibling.getType() == DOMNode.Type.ELEMENT) {
+                    siblings.addFirst(sibling);
+                }
+            }
+
+            for (T sibling : siblings) {
+                step(matcher, sibling, depth);
+            }
+
+            if (n == root) {
+                break;
+            }
+
+            step(matcher, n, depth);
+            ++depth;
+            resetSiblings(depth);
+        }
+
+        return depth;
+    }
+
+    /**
+     * Matches an element against the states active at its depth, fills the frame of its children and
+     * replaces the states activated by the previous element sibling with its own.
+     *
+     * @return {@code true} if the element matches any of the selectors.
+     */
+    private boolean step(SelectorMatcher<T> matcher, T node, int depth) {
+        if (matchListener != null) {
+            matchListener.elementVisited(node);
+        }
+
+        if (frames[depth + 1] == null) {
+            frames[depth + 1] = new int[compounds.length];
+        }
+
+        ++stamp;
+        frameSizes[depth + 1] = 0;
+        pendingSize = 0;
+
+        // States activated by this element for its later siblings are appended and not matched against itself.
+        int laterSize = laterSizes[depth];
+
+        boolean matched = false;
+        int[] active = frames[depth];
+        int activeSize = frameSizes[depth];
+        for (int i = 0; i < activeSize; ++i) {
+            int state = active[i];
+            if (combinators[state] == Combinator.DESCENDANT) {
+                add(depth + 1, state);
+            }
+
+            matched = advance(matcher, node, depth, state, matched);
+        }
+
+        int[] next = nextStates[depth];
+        int nextSize = nextSizes[depth];
+        for (int i = 0; i < nextSize; ++i) {
+            matched = advance(matcher, node, depth, next[i], matched);
+        }
+
+        for (int i = 0; i < laterSize; ++i) {
+            matched = advance(matcher, node, depth, laterStates[depth][i], matched);
+        }
+
+        for (int state : startStates) {
+            matched = advance(matcher, node, depth, state, matched);
+        }
+
+        if (pendingSize > 0) {
+            if (next == null) {
+                next = nextStates[depth] = new int[compounds.length];
+            }
+
+            System.arraycopy(pending, 0, next, 0, pendingSize);
+        }
+
+        nextSizes[depth] = pendingSize;
+        return matched;
+    }
+
+    /**
+     * Matches an element against an active state, activating the next state if it matches.
+     *
+     * @return Whether the element matches any of the selectors so far.
+     */
+    private boolean advance(SelectorMatcher<T> matcher, T node, int depth, int state, boolean matched) {
+        if (finals[state]) {
+            return matched || matcher.matchesSimpleSelectors(compounds[state], node);
+        }
+
+        int next = state + 1;
+        switch (combinators[next]) {
+        case NEXT_SIBLING:
+            if (stamps[next] != stamp && matcher.matchesSimpleSelectors(compounds[state], node)) {
+                stamps[next] = stamp;
+                pending[pendingSize++] = next;
+            }
+
+            break;
+        case LATER_SIBLING:
+            boolean[] marks = laterMarks[depth];
+            if ((marks == null || !marks[next]) && matcher.matchesSimpleSelectors(compounds[state], node)) {
+                addLater(depth, next);
+            }
+
+            break;
+        default:
+            if (stamps[next] != stamp && matcher.matchesSimpleSelectors(compounds[state], node)) {
+                add(depth + 1, next);
+            }
+
+            break;
+        }
+
+        return matched;
+    }
+
+    private void add(int depth, int state) {
+        if (stamps[state] != stamp) {
+            stamps[state] = stamp;
+            frames[depth][frameSizes[depth]++] = state;
+        }
+    }
+
+    private void addLater(int depth, int state) {
+        if (laterStates[depth] == null) {
+            laterStates[depth] = new int[compounds.length];
+            laterMarks[depth] = new boolean[compounds.length];
+        }
+
+        laterMarks[depth][state] = true;
+        laterStates[depth][laterSizes[depth]++] = state;
+    }
+
+    /**
+     * Clears the sibling states at the given depth when starting on the children of an element, growing the
+     * stacks if needed.
+     */
+    private void resetSiblings(int depth) {
+        if (depth + 1 >= frames.length) {
+            int length = frames.length * 2;
+            frames = Arrays.copyOf(frames, length);
+            frameSizes = Arrays.copyOf(frameSizes, length);
+            nextStates = Arrays.copyOf(nextStates, length);
+            nextSizes = Arrays.copyOf(nextSizes, length);
+            laterStates = Arrays.copyOf(laterStates, length);
+            laterSizes = Arrays.copyOf(laterSizes, length);
+            laterMarks = Arrays.copyOf(laterMarks, length);
+        }
+
+        nextSizes[depth] = 0;
+        for (int i = 0; i < laterSizes[depth]; ++i) {
+            laterMarks[depth][laterStates[depth][i]] = false;
+        }
+
+        laterSizes[depth] = 0;
+    }
+
+}
@@ -3,6 +3,9 @@
  */
 package se.fishtank.css.selectors.matching;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -12,6 +15,12 @@ import se.fishtank.css.selectors.selector.*;
 
 /**
  * Selector matching
+ * <p/>
+ * The results of {@code :has()}, the sibling indexes of {@code :nth-child(An+B of S)} pseudo classes and
+ * the results of pure custom selectors, see {@link CacheableSimpleSelectorMatcher}, are cached per element,
+ * as are the attributes and classes of the element being matched, so a selector matcher should only be
+ * used for a single query or as long as the document isn't changed, see {@link #reset()}, and it isn't
+ * safe for use by multiple threads.
  *
  * @author Christer Sandberg
  */
@@ -28,20 +37,86 @@ public class SelectorMatcher<T extends DOMNode<T, ?>> {
     /** Simple selector matcher for custom matching. */
     private final SimpleSelectorMatcher<T> simpleSelectorMatcher;
 
+    /** The simple selector matcher if it declares pure selectors, otherwise {@code null} */
+    private final CacheableSimpleSelectorMatcher<T> cacheableMatcher;
+
+    /** The simple selector matcher if it's a registry, otherwise {@code null} */
+    private final PseudoClassRegistry<T> registry;
+
+    /** Match listener or {@code null} */
+    private final MatchListener<T> matchListener;
+
+    /** The custom selectors resolved so far. */
+    private IdentityHashMap<SimpleSelector, CustomSelector<T>> customSelectors = null;
+
+    /** The attributes and classes of the element being matched. */
+    private final MatchContext<T> context = new MatchContext<>();
+
+    /** Matcher for {@code :has()} pseudo classes, created when first needed. */
+    private HasMatcher<T> hasMatcher = null;
+
+    /** The compiled selector lists of {@code :is()} and {@code :where()} pseudo classes. */
+    private IdentityHashMap<PseudoIsSelector, CompiledSelectorList<T>> compiledLists = null;
+
+    /**
+     * The indexes of the elements among their siblings matching the selectors of {@code :nth-child(An+B of S)}
+     * pseudo classes, from the start and from the end or zero if not matching, computed for all the children
+     * of a parent at once.
+     */
+    private IdentityHashMap<PseudoNthSelector, HashMap<T, int[]>> nthIndexes = null;
+
     /**
      * Create a selector matcher.
      *
      * @param simpleSelectorMatcher A simple selector matcher for custom matching or {@code null}
+     * @param matchListener A match listener or {@code null}
      */
-    public SelectorMatcher(SimpleSelectorMatcher<T> simpleSelectorMatcher) {
+    public SelectorMatcher(SimpleSelectorMatcher<T> simpleSelectorMatcher, MatchListener<T> matchListener) {
         this.simpleSelectorMatcher = simpleSelectorMatcher;
+        this.cacheableMatcher = simpleSelectorMatcher instanceof CacheableSimpleSelectorMatcher ?
+                (CacheableSimpleSelectorMatcher<T>) simpleSelectorMatcher : null;
+        this.registry = simpleSelectorMatcher instanceof PseudoClassRegistry ?
+                (PseudoClassRegistry<T>) simpleSelectorMatcher : null;
+        this.matchListener = matchListener;
+    }
+
+    /**
+     * Create a selector matcher.
+     *
+     * @param simpleSelectorMatcher A simple selector matcher for custom matching or {@code null}
+     */
+    public SelectorMatcher(SimpleSelectorMatcher<T> simpleSelectorMatcher) {
+        this(simpleSelectorMatcher, null);
     }
 
     /**
      * Create a selector matcher.
      */
     public SelectorMatcher() {
-        this.simpleSelectorMatcher = null;
+        this(null, null);
+    }
+
+    /**
+     * Returns the match listener.
+     *
+     * @return The match listener or {@code null}
+     */
+    public MatchListener<T> getMatchListener() {
+        return matchListener;
+    }
+
+    /**
+     * Clears the results cached while matching, e.g. after the document has been changed.
+     */
+    public void reset() {
+        context.clear();
+        hasMatcher = null;
+        nthIndexes = null;
+        if (customSelectors != null) {
+            for (CustomSelector<T> customSelector : customSelectors.values()) {
+                customSelector.results = null;
+            }
+        }
     }
 
     /**
@@ -73,6 +148,23 @@ public class SelectorMatcher<T extends DOMNode<T, ?>> {
                 matchesCompoundSelector(selector.compoundSelector, node) == MatchingResult.MATCHED;
     }
 
+    /**
+     * Matches the given simple selectors, e.g. those of a compound selector, against the given node.
+     *
+     * @param selectors The simple selectors.
+     * @param node The root node.
+     * @return {@code true} if all of the simple selectors match, otherwise {@code false}
+     */
+    public boolean matchesSimpleSelectors(List<SimpleSelector> selectors, T node) {
+        for (SimpleSelector selector : selectors) {
+            if (!matchesSimpleSelector(selector, node)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Matches the given simple selector against the given node.
      *
@@ -93,23 +185,128 @@ public class SelectorMatcher<T extends DOMNode<T, ?>> {
             return false;
         }
 
+        if (matchListener == null) {
+            return matchesElement(selector, node);
+        }
+
+        boolean matched = matchesElement(selector, node);
+        matchListener.simpleSelectorEvaluated(selector, node, matched);
+        return matched;
+    }
+
+    /**
+     * Matches the given simple selector against the given element.
+     *
+     * @param selector The simple selector.
+     * @param node The element.
+     * @return {@code true} or {@code false}
+     */
+    private boolean matchesElement(SimpleSelector selector, T node) {
+        // Only pseudo classes and functional pseudo classes that aren't built in are matched by the simple
+        // selector matcher, a built in selector that doesn't match returns immediately.
         if (selector instanceof LocalNameSelector) {
             return node.getData().equalsIgnoreCase(((LocalNameSelector) selector).name);
         } else if (selector instanceof AttributeSelector) {
             return matchesAttributeSelector((AttributeSelector) selector, node);
         } else if (selector instanceof PseudoNegationSelector) {
             return !matchesSimpleSelector(((PseudoNegationSelector) selector).selector, node);
+        } else if (selector instanceof PseudoHasSelector) {
+            if (hasMatcher == null) {
+                hasMatcher = new HasMatcher<>(this);
+            }
+
+            return hasMatcher.matches((PseudoHasSelector) selector, node);
+        } else if (selector instanceof PseudoIsSelector) {
+            return compile((PseudoIsSelector) selector).matches(this, node);
         } else if (selector instanceof PseudoClassSelector) {
-            if (matchesPseudoClassSelector((PseudoClassSelector) selector, node)) {
-                return true;
+            PseudoClassSelector pseudoClassSelector = (PseudoClassSelector) selector;
+            if (isBuiltInPseudoClass(pseudoClassSelector.value)) {
+                return matchesPseudoClassSelector(pseudoClassSelector, node);
             }
         } else if (selector instanceof PseudoNthSelector) {
-            if (matchesPseudoNthSelector((PseudoNthSelector) selector, node)) {
-                return true;
+            return matchesPseudoNthSelector((PseudoNthSelector) selector, node);
+        }
+
+        if (simpleSelectorMatcher == null) {
+            return false;
+        }
+
+        CustomSelector<T> customSelector = resolve(selector);
+        HashMap<T, Boolean> results = null;
+        if (customSelector.pure) {
+            results = customSelector.results;
+            if (results == null) {
+                results = customSelector.results = new HashMap<>();
+            } else {
+                Boolean cached = results.get(node);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        }
+
+        boolean matched = customSelector.matcher != null && customSelector.matcher.matches(selector, node);
+        if (matchListener != null) {
+            matchListener.customMatcherInvoked(selector, node, matched);
+        }
+
+        if (results != null) {
+            results.put(node, matched);
+        }
+
+        return matched;
+    }
+
+    /**
+     * Returns the matcher and purity of the given custom selector, resolved once per selector instance so
+     * that a registry isn't looked up by name, and isn't asked whether the selector is pure, on every match.
+     *
+     * @param selector The custom selector.
+     * @return The resolved selector.
+     */
+    private CustomSelector<T> resolve(SimpleSelector selector) {
+        if (customSelectors == null) {
+            customSelectors = new IdentityHashMap<>();
+        }
+
+        CustomSelector<T> customSelector = customSelectors.get(selector);
+        if (customSelector == null) {
+            SimpleSelectorMatcher<T> matcher;
+            boolean pure;
+            if (registry != null) {
+                matcher = registry.resolve(selector);
+                pure = matcher instanceof CacheableSimpleSelectorMatcher &&
+                        ((CacheableSimpleSelectorMatcher<T>) matcher).isPure(selector);
+            } else {
+                matcher = simpleSelectorMatcher;
+                pure = cacheableMatcher != null && cacheableMatcher.isPure(selector);
             }
+
+            customSelector = new CustomSelector<>(matcher, pure);
+            customSelectors.put(selector, customSelector);
         }
 
-        return simpleSelectorMatcher != null && simpleSelectorMatcher.matches(selector, node);
+        return customSelector;
+    }
+
+    /**
+     * Returns the compiled selector list of the given {@code :is()} or {@code :where()} pseudo class.
+     *
+     * @param selector The pseudo class selector.
+     * @return The compiled selector list.
+     */
+    private CompiledSelectorList<T> compile(PseudoIsSelector selector) {
+        if (compiledLists == null) {
+            compiledLists = new IdentityHashMap<>();
+        }
+
+        CompiledSelectorList<T> compiled = compiledLists.get(selector);
+        if (compiled == null) {
+            compiled = new CompiledSelectorList<>(selector.selectors);
+            compiledLists.put(selector, compiled);
+        }
+
+        return compiled;
     }
 
     /**
@@ -120,6 +317,24 @@ public class SelectorMatcher<T extends DOMNode<T, ?>> {
      * @return A matching result.
      */
     private MatchingResult matchesCompoundSelector(CompoundSelector selector, T node) {
+        if (matchListener == null) {
+            return matchesCompound(selector, node);
+        }
+
+        matchListener.compoundSelectorEntered(selector, node);
+        MatchingResult result = matchesCompound(selector, node);
+        matchListener.compoundSelectorExited(selector, node, result == MatchingResult.MATCHED);
+        return result;
+    }
+
+    /**
+     * Matches the given compound selector against the given node without notifying the match listener.
+     *
+     * @param selector The compound selector.
+     * @param node The root node.
+     * @return A matching result.
+     */
+    private MatchingResult matchesCompound(CompoundSelector selector, T node) {
         for (SimpleSelector simpleSelector : selector.simpleSelectors) {
             if (!matchesSimpleSelector(simpleSelector, node)) {
                 return MatchingResult.RESTART_FROM_CLOSEST_LATER_SIBLING;
@@ -154,12 +369,20 @@ public class SelectorMatcher<T extends DOMNode<T, ?>> {
                 node = nextNode;
             }
 
+            if (matchListener != null) {
+                matchListener.combinatorStep(selector.previous.first, node);
+            }
+
             if (node.getType() == DOMNode.Type.ELEMENT) {
                 MatchingResult result = matchesCompoundSelector(selector.previous.second, node);
                 if (result == MatchingResult.MATCHED || result == MatchingResult.NOT_MATCHED) {
                     return result;
                 }
 
+                if (matchListener != null) {
+                    matchListener.restarted(node, result == MatchingResult.RESTART_FROM_CLOSEST_DESCENDANT);
+                }
+
                 switch (selector.previous.first) {
                 case CHILD:
                     return MatchingResult.RESTART_FROM_CLOSEST_DESCENDANT;
@@ -182,46 +405,72 @@ public class SelectorMatcher<T extends DOMNode<T, ?>> {
      * @return {@code true} or {@code false}
      */
     private boolean matchesAttributeSelector(AttributeSelector selector, T node) {
-        Map<String, String> attributes = node.getAttributes();
+        if (selector.match == AttributeSelector.Match.INCLUDES && selector.name.equals("class")) {
+            return context.hasClass(node, selector.value);
+        }
+
+        Map<String, String> attributes = context.getAttributes(node);
         if (attributes == null) {
             return false;
         }
 
-        for (Map.Entry<String, String> entry : attributes.entrySet()) {
-            if (!entry.getKey().equals(selector.name)) {
-                continue;
-            }
-
-            switch (selector.match) {
-            case EXISTS:
-                return true;
-            case EQUALS:
-                return entry.getValue().equals(selector.value);
-            case INCLUDES:
-                for (String v : SPACE_REGEX.split(entry.getValue())) {
-                    if (v.equals(selector.value)) {
-                        return true;
-                    }
-                }
-
-                return false;
-            case BEGINS:
-                return entry.getValue().startsWith(selector.value);
-            case ENDS:
-                return entry.getValue().endsWith(selector.value);
-            case CONTAINS:
-                return entry.getValue().contains(selector.value);
-            case HYPHENS:
-                String v = entry.getValue();
-                return v.equals(selector.value) || v.startsWith(selector.value + "-");
-            }
-
+        String value = attributes.get(selector.name);
+        if (value == null) {
             return false;
         }
 
+        switch (selector.match) {
+        case EXISTS:
+            return true;
+        case EQUALS:
+            return value.equals(selector.value);
+        case INCLUDES:
+            return MatchContext.includes(value, selector.value);
+        case BEGINS:
+            return value.startsWith(selector.value);
+        case ENDS:
+            return value.endsWith(selector.value);
+        case CONTAINS:
+            return value.contains(selector.value);
+        case HYPHENS:
+            return value.equals(selector.value) || (value.startsWith(selector.value) &&
+                    value.length() > selector.value.length() && value.charAt(selector.value.length()) == '-');
+        }
+
         return false;
     }
 
+    /**
+     * Returns the attributes and classes of the element being matched.
+     *
+     * @return The match context.
+     */
+    MatchContext<T> getContext() {
+        return context;
+    }
+
+    /**
+     * Returns whether the given pseudo class is built in, i.e. isn't matched by a simple selector matcher.
+     *
+     * @param name The name of the pseudo class.
+     * @return {@code true} or {@code false}
+     */
+    static boolean isBuiltInPseudoClass(String name) {
+        switch (name) {
+            case "first-child":
+            case "last-child":
+            case "only-child":
+            case "first-of-type":
+            case "last-of-type":
+            case "only-of-type":
+            case "root":
+            case "empty":
+                return true;
+            default:
+                return false;
+        }
+    }
+
     /**
      * Matches the given pseudo class selector against the given node.
      *
@@ -273,6 +522,17 @@ public class SelectorMatcher<T extends DOMNode<T, ?>> {
      * @return {@code true} or {@code false}
      */
     private boolean matchesPseudoNthSelector(PseudoNthSelector selector, T node) {
+        if (selector.selectors != null) {
+            switch (selector.name) {
+            case "nth-child":
+                return matchesNthChildOf(selector, node, false);
+            case "nth-last-child":
+                return matchesNthChildOf(selector, node, true);
+            default:
+                return false;
+            }
+        }
+
         switch (selector.name) {
         case "nth-child":
             return matchesNthChild(node, selector.a, selector.b, false, false);
@@ -287,6 +547,107 @@ public class SelectorMatcher<T extends DOMNode<T, ?>> {
         }
     }
 
+    /**
+     * Matches the <i>nth</i> child among the siblings matching the selectors of the given pseudo class.
+     *
+     * @param selector The {@code :nth-child(An+B of S)} pseudo class selector.
+     * @param node The root node.
+     * @param fromEnd If matching is performed from the end.
+     * @return {@code true} or {@code false}
+     */
+    private boolean matchesNthChildOf(PseudoNthSelector selector, T node, boolean fromEnd) {
+        T parentNode = node.getParentNode();
+        if (parentNode == null || parentNode.getType() == DOMNode.Type.DOCUMENT) {
+            return false;
+        }
+
+        if (nthIndexes == null) {
+            nthIndexes = new IdentityHashMap<>();
+        }
+
+        HashMap<T, int[]> indexes = nthIndexes.get(selector);
+        if (indexes == null) {
+            indexes = new HashMap<>();
+            nthIndexes.put(selector, indexes);
+        }
+
+        int[] index = indexes.get(node);
+        if (index == null) {
+            ArrayList<T> matching = new ArrayList<>();
+            for (T child = parentNode.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (child.getType() != DOMNode.Type.ELEMENT) {
+                    continue;
+                }
+
+                if (matchesSelectors(selector.selectors, child)) {
+                    matching.add(child);
+                } else {
+                    indexes.put(child, new int[2]);
+                }
+            }
+
+            for (int i = 0; i < matching.size(); ++i) {
+                indexes.put(matching.get(i), new int[] {i + 1, matching.size() - i});
+            }
+
+            index = indexes.get(node);
+            if (index == null) {
+                // The node isn't equal to the wrapper of it reached from its parent, see DOMNode.
+                index = nthChildOfIndexes(selector, node);
+            }
+        }
+
+        int i = index[fromEnd ? 1 : 0];
+        return i != 0 && matchesIndex(selector.a, selector.b, i);
+    }
+
+    /**
+     * Returns the indexes of the given element among its siblings matching the selectors of the given
+     * {@code :nth-child(An+B of S)} pseudo class, from the start and from the end or zero if not matching,
+     * without caching anything.
+     *
+     * @param selector The pseudo class selector.
+     * @param node The element.
+     * @return The indexes.
+     */
+    private int[] nthChildOfIndexes(PseudoNthSelector selector, T node) {
+        int[] index = new int[2];
+        if (!matchesSelectors(selector.selectors, node)) {
+            return index;
+        }
+
+        index[0] = index[1] = 1;
+        for (T sibling = node.getPreviousSibling(); sibling != null; sibling = sibling.getPreviousSibling()) {
+            if (sibling.getType() == DOMNode.Type.ELEMENT && matchesSelectors(selector.selectors, sibling)) {
+                ++index[0];
+            }
+        }
+
+        for (T sibling = node.getNextSibling(); sibling != null; sibling = sibling.getNextSibling()) {
+            if (sibling.getType() == DOMNode.Type.ELEMENT && matchesSelectors(selector.selectors, sibling)) {
+                ++index[1];
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns whether the given one-based index matches {@code An+B}
+     *
+     * @param a The <i>A</i> argument.
+     * @param b The <i>B</i> argument.
+     * @param i The index.
+     * @return {@code true} or {@code false}
+     */
+    private static boolean matchesIndex(int a, int b, int i) {
+        if (a == 0) {
+            return b == i;
+        }
+
+        return ((i - b) / a) >= 0 && ((i - b) % a) == 0;
+    }
+
     /**
      * Matches a first or last child.
      *
@@ -358,11 +719,28 @@ public class SelectorMatcher<T extends DOMNode<T, ?>> {
             }
         }
 
-        if (a == 0) {
-            return b == i;
+        return matchesIndex(a, b, i);
+    }
+
+    /**
+     * A custom selector resolved to its matcher.
+     */
+    private static final class CustomSelector<T extends DOMNode<T, ?>> {
+
+        /** The matcher or {@code null} if the selector isn't registered. */
+        final SimpleSelectorMatcher<T> matcher;
+
+        /** Whether the selector is pure. */
+        final boolean pure;
+
+        /** The results per element if the selector is pure, or {@code null} */
+        HashMap<T, Boolean> results = null;
+
+        CustomSelector(SimpleSelectorMatcher<T> matcher, boolean pure) {
+            this.matcher = matcher;
+            this.pure = pure;
         }
 
-        return ((i - b) / a) >= 0 && ((i - b) %a) == 0;
     }
 
 }
@@ -3,7 +3,6 @@
  */
 package se.fishtank.css.selectors.parser;
 
-import se.fishtank.css.selectors.tokenizer.Token;
 import se.fishtank.css.selectors.tokenizer.TokenType;
 import se.fishtank.css.selectors.tokenizer.Tokenizer;
 import se.fishtank.css.selectors.util.Pair;
@@ -21,14 +20,19 @@ public class NthParser {
     /** Exception thrown on parsing errors. */
     private final ParserException error;
 
+    /** Whether the arguments may end with {@code of} instead of a right paren. */
+    private final boolean allowOf;
+
     /**
      * Create a new parser.
      *
      * @param tokenizer The tokenizer to use when parsing.
+     * @param allowOf Whether the arguments may end with {@code of} instead of a right paren.
      */
-    private NthParser(Tokenizer tokenizer) {
+    private NthParser(Tokenizer tokenizer, boolean allowOf) {
         this.tokenizer = tokenizer;
         this.error = new ParserException("Invalid nth arguments at position " + tokenizer.getPosition());
+        this.allowOf = allowOf;
     }
 
     /**
@@ -38,26 +42,43 @@ public class NthParser {
      * @return The values for <i>A</i> and <i>B</i>.
      */
     public static Pair<Integer, Integer> parse(Tokenizer tokenizer) {
-        NthParser parser = new NthParser(tokenizer);
+        return parse(tokenizer, false);
+    }
+
+    /**
+     * Parses {@code An+B} notation at the current position in the given tokenizer, optionally followed
+     * by {@code of} as in {@code :nth-child(An+B of S)}
+     * <p/>
+     * If {@code of} is allowed and found the current token of the tokenizer is the {@code of} identifier,
+     * otherwise it's the right paren.
+     *
+     * @param tokenizer The tokenizer to use when parsing.
+     * @param allowOf Whether the arguments may end with {@code of} instead of a right paren.
+     * @return The values for <i>A</i> and <i>B</i>.
+     */
+    public static Pair<Integer, Integer> parse(Tokenizer tokenizer, boolean allowOf) {
+        NthParser parser = new NthParser(tokenizer, allowOf);
         try {
             String str;
-            Token token = parser.skipWhitespace();
-            switch (token.type) {
+            switch (parser.skipWhitespace()) {
             case NUMBER:
-                Token.Number n = (Token.Number) token;
-                if (!n.integer || !parser.matchClosingParen()) {
+                if (!tokenizer.isTokenInteger()) {
+                    throw parser.error;
+                }
+
+                int b = Integer.parseInt(tokenizer.getTokenValue());
+                if (!parser.matchClosingParen()) {
                     throw parser.error;
                 }
 
-                return new Pair<>(0, Integer.parseInt(n.value));
+                return new Pair<>(0, b);
             case DIMENSION:
-                Token.Dimension d = (Token.Dimension) token;
-                if (!d.integer) {
+                if (!tokenizer.isTokenInteger()) {
                     throw parser.error;
                 }
 
-                int a = Integer.parseInt(d.value);
-                str = d.unit.toLowerCase();
+                int a = Integer.parseInt(tokenizer.getTokenValue());
+                str = tokenizer.getTokenUnit().toLowerCase();
                 switch (str) {
                 case "n":
                     return new Pair<>(a, parser.parseB());
@@ -71,7 +92,7 @@ public class NthParser {
                     parser.mustMatchClosingParen();
                 }
             case IDENT:
-                str = token.value.toLowerCase();
+                str = tokenizer.getTokenValue().toLowerCase();
                 switch (str) {
                 case "even":
                     parser.mustMatchClosingParen();
@@ -99,16 +120,15 @@ public class NthParser {
                     parser.mustMatchClosingParen();
                 }
             case DELIM:
-                if (!"+".equals(token.value)) {
+                if (tokenizer.getTokenDelimiter() != '+') {
                     throw parser.error;
                 }
 
-                token = tokenizer.nextToken();
-                if (token.type != TokenType.IDENT) {
+                if (tokenizer.advance() != TokenType.IDENT) {
                     throw parser.error;
                 }
 
-                str = token.value.toLowerCase();
+                str = tokenizer.getTokenValue().toLowerCase();
                 switch (str) {
                 case "n":
                     return new Pair<>(1, parser.parseB());
@@ -135,23 +155,30 @@ public class NthParser {
      * @return The number parsed.
      */
     private int parseB() {
-        Token token = skipWhitespace();
-        switch (token.type) {
+        switch (skipWhitespace()) {
         case RIGHT_PAREN:
             return 0;
+        case IDENT:
+            if (isOf()) {
+                return 0;
+            }
+
+            break;
         case DELIM:
-            switch (token.value) {
-            case "+":
+            switch (tokenizer.getTokenDelimiter()) {
+            case '+':
                 return parseSignlessB(1);
-            case "-":
+            case '-':
                 return parseSignlessB(-1);
             }
 
             break;
         case NUMBER:
-            Token.Number n = (Token.Number) token;
-            if (n.integer && hasSignPrefix(n.value) && matchClosingParen()) {
-                return Integer.parseInt(n.value);
+            if (tokenizer.isTokenInteger()) {
+                String value = tokenizer.getTokenValue();
+                if (hasSignPrefix(value) && matchClosingParen()) {
+                    return Integer.parseInt(value);
+                }
             }
 
             break;
@@ -167,11 +194,11 @@ public class NthParser {
      * @return The number parsed.
      */
     private int parseSignlessB(int sign) {
-        Token token = skipWhitespace();
-        if (token instanceof Token.Number) {
-            Token.Number n = (Token.Number) token;
-            if (n.integer && !hasSignPrefix(n.value) && matchClosingParen()) {
-                return Integer.parseInt(n.value) * sign;
+        skipWhitespace();
+        if (tokenizer.isTokenInteger()) {
+            String value = tokenizer.getTokenValue();
+            if (!hasSignPrefix(value) && matchClosingParen()) {
+                return Integer.parseInt(value) * sign;
             }
         }
 
@@ -204,12 +231,22 @@ public class NthParser {
     }
 
     /**
-     * Returns whether the next non-whitespace token is a right parent.
+     * Returns whether the next non-whitespace token is a right paren, or {@code of} if allowed.
      *
      * @return {@code true} or {@code false}
      */
     private boolean matchClosingParen() {
-        return skipWhitespace().type == TokenType.RIGHT_PAREN;
+        TokenType type = skipWhitespace();
+        return type == TokenType.RIGHT_PAREN || (type == TokenType.IDENT && isOf());
+    }
+
+    /**
+     * Returns whether {@code of} is allowed and the current token is {@code of}
+     *
+     * @return {@code true} or {@code false}
+     */
+    private boolean isOf() {
+        return allowOf && tokenizer.tokenValueEqualsIgnoreCase("of");
     }
 
     /**
@@ -222,15 +259,15 @@ public class NthParser {
     }
 
     /**
-     * Returns the next non-whitespace token from the given tokenizer.
+     * Advances the tokenizer to the next non-whitespace token.
      *
-     * @return The next non-whitespace token.
+     * @return The type of the next non-whitespace token.
      */
-    private Token skipWhitespace() {
+    private TokenType skipWhitespace() {
         while (true) {
-            Token token = tokenizer.nextToken();
-            if (token.type != TokenType.WHITESPACE) {
-                return token;
+            TokenType type = tokenizer.advance();
+            if (type != TokenType.WHITESPACE) {
+                return type;
             }
         }
     }
@@ -0,0 +1,22 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.parser;
+
+/**
+ * Exception thrown when selectors exceed the {@link ParserLimits} they are parsed with.
+ *
+ * @author Christer Sandberg
+ */
+public class ParserLimitException extends ParserException {
+
+    /**
+     * Create a new parser limit exception with the specified message.
+     *
+     * @param message The error message.
+     */
+    public ParserLimitException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.parser;
+
+import se.fishtank.css.selectors.selector.SelectorCost;
+
+/**
+ * Limits on the complexity of the selectors accepted by the {@link SelectorParser}.
+ * <p/>
+ * Limits are used to reject expensive selectors from untrusted sources before they are matched. The
+ * counts are per selector in a group, except for the input length and the number of selectors. Only
+ * descendant and later sibling combinators are counted against {@link #maxCombinators} since they are
+ * the ones that make the matcher step over an unbounded number of nodes. The estimated cost is the one
+ * from {@link SelectorCost#of(se.fishtank.css.selectors.selector.Selector)}.
+ * <p/>
+ * Selectors exceeding a limit are rejected with a {@link ParserLimitException}.
+ *
+ * @author Christer Sandberg
+ */
+public class ParserLimits {
+
+    /** Limits that accept anything. */
+    public static final ParserLimits UNLIMITED = new ParserLimits(Integer.MAX_VALUE, Integer.MAX_VALUE,
+            Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Double.POSITIVE_INFINITY);
+
+    /** The maximum length of the input. */
+    public final int maxLength;
+
+    /** The maximum number of selectors in a group. */
+    public final int maxSelectors;
+
+    /** The maximum number of compound selectors per selector. */
+    public final int maxCompounds;
+
+    /** The maximum number of simple selectors per selector. */
+    public final int maxSimpleSelectors;
+
+    /** The maximum number of descendant and later sibling combinators per selector. */
+    public final int maxCombinators;
+
+    /** The maximum estimated cost per selector. */
+    public final double maxCost;
+
+    /**
+     * Create new parser limits.
+     *
+     * @param maxLength The maximum length of the input.
+     * @param maxSelectors The maximum number of selectors in a group.
+     * @param maxCompounds The maximum number of compound selectors per selector.
+     * @param maxSimpleSelectors The maximum number of simple selectors per selector.
+     * @param maxCombinators The maximum number of descendant and later sibling combinators per selector.
+     * @param maxCost The maximum estimated cost per selector.
+     */
+    public ParserLimits(int maxLength, int maxSelectors, int maxCompounds, int maxSimpleSelectors,
+                        int maxCombinators, double maxCost) {
+        this.maxLength = maxLength;
+        this.maxSelectors = maxSelectors;
+        this.maxCompounds = maxCompounds;
+        this.maxSimpleSelectors = maxSimpleSelectors;
+        this.maxCombinators = maxCombinators;
+        this.maxCost = maxCost;
+    }
+
+    /**
+     * Returns a copy of these limits with the given maximum input length.
+     *
+     * @param maxLength The maximum length of the input.
+     * @return New parser limits.
+     */
+    public ParserLimits withMaxLength(int maxLength) {
+        return new ParserLimits(maxLength, maxSelectors, maxCompounds, maxSimpleSelectors, maxCombinators, maxCost);
+    }
+
+    /**
+     * Returns a copy of these limits with the given maximum number of selectors in a group.
+     *
+     * @param maxSelectors The maximum number of selectors.
+     * @return New parser limits.
+     */
+    public ParserLimits withMaxSelectors(int maxSelectors) {
+        return new ParserLimits(maxLength, maxSelectors, maxCompounds, maxSimpleSelectors, maxCombinators, maxCost);
+    }
+
+    /**
+     * Returns a copy of these limits with the given maximum number of compound selectors per selector.
+     *
+     * @param maxCompounds The maximum number of compound selectors.
+     * @return New parser limits.
+     */
+    public ParserLimits withMaxCompounds(int maxCompounds) {
+        return new ParserLimits(maxLength, maxSelectors, maxCompounds, maxSimpleSelectors, maxCombinators, maxCost);
+    }
+
+    /**
+     * Returns a copy of these limits with the given maximum number of simple selectors per selector.
+     *
+     * @param maxSimpleSelectors The maximum number of simple selectors.
+     * @return New parser limits.
+     */
+    public ParserLimits withMaxSimpleSelectors(int maxSimpleSelectors) {
+        return new ParserLimits(maxLength, maxSelectors, maxCompounds, maxSimpleSelectors, maxCombinators, maxCost);
+    }
+
+    /**
+     * Returns a copy of these limits with the given maximum number of descendant and later sibling
+     * combinators per selector.
+     *
+     * @param maxCombinators The maximum number of combinators.
+     * @return New parser limits.
+     */
+    public ParserLimits withMaxCombinators(int maxCombinators) {
+        return new ParserLimits(maxLength, maxSelectors, maxCompounds, maxSimpleSelectors, maxCombinators, maxCost);
+    }
+
+    /**
+     * Returns a copy of these limits with the given maximum estimated cost per selector.
+     *
+     * @param maxCost The maximum estimated cost.
+     * @return New parser limits.
+     */
+    public ParserLimits withMaxCost(double maxCost) {
+        return new ParserLimits(maxLength, maxSelectors, maxCompounds, maxSimpleSelectors, maxCombinators, maxCost);
+    }
+
+}
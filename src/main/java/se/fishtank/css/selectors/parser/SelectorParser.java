@@ -6,14 +6,17 @@ package se.fishtank.css.selectors.parser;
 import java.util.LinkedList;
 import java.util.List;
 
+import se.fishtank.css.selectors.jfr.Events;
 import se.fishtank.css.selectors.selector.*;
-import se.fishtank.css.selectors.tokenizer.Token;
 import se.fishtank.css.selectors.tokenizer.TokenType;
 import se.fishtank.css.selectors.tokenizer.Tokenizer;
 import se.fishtank.css.selectors.util.Pair;
 
 /**
  * Selector parser.
+ * <p/>
+ * The parser is built on the pull API of the {@link Tokenizer} so that no token objects are created
+ * while parsing and strings are only created for the names and values kept in the parsed selectors.
  *
  * @author Christer Sandberg
  */
@@ -22,16 +25,33 @@ public class SelectorParser {
     /** Tokenizer used when parsing. */
     private final Tokenizer tokenizer;
 
-    /** Possibly saved token. */
-    private Token savedToken;
+    /** The limits of the selectors parsed. */
+    private final ParserLimits limits;
+
+    /** The number of pseudo classes taking selector lists being parsed. */
+    private int nesting = 0;
+
+    /** Whether a {@code :has()} pseudo class is being parsed. */
+    private boolean insideHas = false;
+
+    /** The number of compound selectors of the current selector. */
+    private int compoundCount;
+
+    /** The number of simple selectors of the current selector. */
+    private int simpleSelectorCount;
+
+    /** The number of descendant and later sibling combinators of the current selector. */
+    private int combinatorCount;
 
     /**
      * Create a new selector parser.
      *
      * @param tokenizer Tokenizer used when parsing.
+     * @param limits The limits of the selectors parsed.
      */
-    private SelectorParser(Tokenizer tokenizer) {
+    private SelectorParser(Tokenizer tokenizer, ParserLimits limits) {
         this.tokenizer = tokenizer;
+        this.limits = limits;
     }
 
     /**
@@ -40,10 +60,34 @@ public class SelectorParser {
      * @param str The selectors string.
      * @return The selectors parsed.
      */
-    public static List<Selector> parse(String str) {
+    public static List<Selector> parse(CharSequence str) {
         return parse(new Tokenizer(str));
     }
 
+    /**
+     * Parse selectors from the given string, rejecting selectors exceeding the given limits.
+     *
+     * @param str The selectors string.
+     * @param limits The limits of the selectors parsed.
+     * @return The selectors parsed.
+     * @throws ParserLimitException If the selectors exceed the limits.
+     */
+    public static List<Selector> parse(CharSequence str, ParserLimits limits) {
+        return parse(new Tokenizer(str), limits);
+    }
+
+    /**
+     * Parse selectors from a region of the given character sequence without copying it.
+     *
+     * @param str The character sequence containing the selectors.
+     * @param start The start offset of the selectors.
+     * @param end The end offset (exclusive) of the selectors.
+     * @return The selectors parsed.
+     */
+    public static List<Selector> parse(CharSequence str, int start, int end) {
+        return parse(new Tokenizer(str, start, end));
+    }
+
     /**
      * Parse selectors from the given tokenizer.
      *
@@ -51,7 +95,37 @@ public class SelectorParser {
      * @return The selectors parsed.
      */
     public static List<Selector> parse(Tokenizer tokenizer) {
-        return new SelectorParser(tokenizer).parseSelectorList();
+        return parse(tokenizer, ParserLimits.UNLIMITED);
+    }
+
+    /**
+     * Parse selectors from the given tokenizer, rejecting selectors exceeding the given limits.
+     *
+     * @param tokenizer The tokenizer to use when parsing.
+     * @param limits The limits of the selectors parsed.
+     * @return The selectors parsed.
+     * @throws ParserLimitException If the selectors exceed the limits.
+     */
+    public static List<Selector> parse(Tokenizer tokenizer, ParserLimits limits) {
+        int length = tokenizer.getEnd() - tokenizer.getPosition();
+        if (length > limits.maxLength) {
+            throw new ParserLimitException("Input length " + length + " exceeds the limit of " + limits.maxLength);
+        }
+
+        Object event = Events.beginParse();
+        if (event == null) {
+            return new SelectorParser(tokenizer, limits).parseSelectorList();
+        }
+
+        int start = tokenizer.getPosition();
+        int count = -1;
+        try {
+            List<Selector> selectors = new SelectorParser(tokenizer, limits).parseSelectorList();
+            count = selectors.size();
+            return selectors;
+        } finally {
+            Events.endParse(event, tokenizer.input, start, tokenizer.getPosition(), count);
+        }
     }
 
     /**
@@ -65,13 +139,18 @@ public class SelectorParser {
         LinkedList<Selector> selectors = new LinkedList<>();
         selectors.add(parseSelector());
         while (true) {
-            Token token = skipWhitespace().first;
-            if (token.type == TokenType.EOF) {
+            skipWhitespace();
+            TokenType type = tokenizer.getTokenType();
+            if (type == TokenType.EOF) {
                 break;
             }
 
-            if (token.type != TokenType.COMMA) {
-                throw expected(",", token);
+            if (type != TokenType.COMMA) {
+                throw expected(",");
+            }
+
+            if (selectors.size() == limits.maxSelectors) {
+                throw limitExceeded("selectors", limits.maxSelectors);
             }
 
             selectors.add(parseSelector());
@@ -88,48 +167,60 @@ public class SelectorParser {
      * @return The selector parsed.
      */
     private Selector parseSelector() {
+        if (nesting == 0) {
+            compoundCount = 0;
+            simpleSelectorCount = 0;
+            combinatorCount = 0;
+        }
+
         Pair<List<SimpleSelector>, PseudoElementSelector> simpleSelectors = parseSimpleSelectors();
         CompoundSelector compoundSelector = CompoundSelector.of(simpleSelectors.first);
         PseudoElementSelector pseudoElement = simpleSelectors.second;
         while (pseudoElement == null) {
-            Pair<Token, Boolean> p = skipWhitespace();
-            if (p.first.type == TokenType.EOF) {
+            boolean whitespace = skipWhitespace();
+            TokenType type = tokenizer.getTokenType();
+            if (type == TokenType.EOF) {
                 break;
-            } else if (p.first.type == TokenType.COMMA) {
-                savedToken = p.first;
+            } else if (type == TokenType.COMMA || (type == TokenType.RIGHT_PAREN && nesting > 0)) {
+                tokenizer.pushBack();
                 break;
             }
 
             Combinator combinator = null;
-            if (p.first.type == TokenType.DELIM) {
-                switch (p.first.value) {
-                case ">":
-                    combinator = Combinator.CHILD;
-                    break;
-                case "+":
-                    combinator = Combinator.NEXT_SIBLING;
-                    break;
-                case "~":
-                    combinator = Combinator.LATER_SIBLING;
-                    break;
-                }
+            switch (tokenizer.getTokenDelimiter()) {
+            case '>':
+                combinator = Combinator.CHILD;
+                break;
+            case '+':
+                combinator = Combinator.NEXT_SIBLING;
+                break;
+            case '~':
+                combinator = Combinator.LATER_SIBLING;
+                break;
             }
 
             if (combinator == null) {
-                if (p.second) {
+                if (whitespace) {
                     combinator = Combinator.DESCENDANT;
                 } else {
-                    throw expected("one of ' ', '>', '+', '~'", p.first);
+                    throw expected("one of ' ', '>', '+', '~'");
                 }
 
-                savedToken = p.first;
+                tokenizer.pushBack();
             }
 
+            countCombinator(combinator);
             simpleSelectors = parseSimpleSelectors();
             compoundSelector = new CompoundSelector(simpleSelectors.first, new Pair<>(combinator, compoundSelector));
         }
 
-        return new Selector(compoundSelector, pseudoElement);
+        Selector selector = new Selector(compoundSelector, pseudoElement);
+        if (nesting == 0 && limits.maxCost != Double.POSITIVE_INFINITY && SelectorCost.of(selector) > limits.maxCost) {
+            throw new ParserLimitException(String.format("Estimated cost of selector ending at position %d " +
+                    "exceeds the limit of %s", tokenizer.getPosition(), limits.maxCost));
+        }
+
+        return selector;
     }
 
     /**
@@ -149,9 +240,9 @@ public class SelectorParser {
         PseudoElementSelector pseudoElement = null;
 
         boolean empty = true;
-        Pair<String, Boolean> name = parseName();
-        if (name.second && !"*".equals(name.first)) {
-            selectorSequence.add(new LocalNameSelector(name.first));
+        String name = parseName();
+        if (name != null && !"*".equals(name)) {
+            selectorSequence.add(new LocalNameSelector(name));
             empty = false;
         }
 
@@ -171,36 +262,44 @@ public class SelectorParser {
             empty = false;
         }
 
-        if (empty && !name.second) {
+        if (empty && name == null) {
             throw new IllegalArgumentException("No simple selectors found at position " + pos);
         }
 
+        if (++compoundCount > limits.maxCompounds) {
+            throw limitExceeded("compound selectors", limits.maxCompounds);
+        }
+
+        simpleSelectorCount += selectorSequence.size() + (pseudoElement == null ? 0 : 1);
+        if (simpleSelectorCount > limits.maxSimpleSelectors) {
+            throw limitExceeded("simple selectors", limits.maxSimpleSelectors);
+        }
+
         return new Pair<List<SimpleSelector>, PseudoElementSelector>(selectorSequence, pseudoElement);
     }
 
     /**
-     * Parse the name of an element and returns the name and a boolean indicating
-     * if a type selector was found or not.
+     * Parse the name of an element.
      * <p/>
      * See http://www.w3.org/TR/selectors/#type-selectors and http://www.w3.org/TR/selectors/#universal-selector
      *
-     * @return The parsed name and whether a type selector was found or not.
+     * @return The parsed name, {@code *} for the universal selector or {@code null} if no type selector was found.
      */
-    private Pair<String, Boolean> parseName() {
-        Token token = skipWhitespace().first;
-        switch (token.type) {
+    private String parseName() {
+        skipWhitespace();
+        switch (tokenizer.getTokenType()) {
         case DELIM:
-            if ("*".equals(token.value)) {
-                return new Pair<>("*", true);
+            if (tokenizer.getTokenDelimiter() == '*') {
+                return "*";
             }
 
             break;
         case IDENT:
-            return new Pair<>(token.value, true);
+            return tokenizer.getTokenValue();
         }
 
-        savedToken = token;
-        return new Pair<>("*", false);
+        tokenizer.pushBack();
+        return null;
     }
 
     /**
@@ -212,50 +311,44 @@ public class SelectorParser {
      * @return The simple selector parsed or {@code null}
      */
     private SimpleSelector parseOneSimpleSelector(boolean insideNegation) {
-        Token token = nextToken();
-        switch (token.type) {
+        switch (tokenizer.advance()) {
         case HASH:
-            Token.Hash h = (Token.Hash) token;
-            return new AttributeSelector(AttributeSelector.Match.EQUALS, "id", h.value);
+            return new AttributeSelector(AttributeSelector.Match.EQUALS, "id", tokenizer.getTokenValue());
         case DELIM:
-            if (".".equals(token.value)) {
-                token = nextToken();
-                if (token.type == TokenType.IDENT) {
-                    return new AttributeSelector(AttributeSelector.Match.INCLUDES, "class", token.value);
+            if (tokenizer.getTokenDelimiter() == '.') {
+                if (tokenizer.advance() == TokenType.IDENT) {
+                    return new AttributeSelector(AttributeSelector.Match.INCLUDES, "class", tokenizer.getTokenValue());
                 } else {
-                    throw expected("class value", token);
+                    throw expected("class value");
                 }
             }
 
-            throw expected(".", token);
+            throw expected(".");
         case LEFT_SQUARE_BRACKET:
             return parseAttribute();
         case COLON:
-            token = nextToken();
-            switch (token.type) {
+            switch (tokenizer.advance()) {
             case IDENT:
-                switch (token.value.toLowerCase()) {
-                case "first-line":
-                case "first-letter":
-                case "before":
-                case "after":
-                    return new PseudoElementSelector(token.value);
-                default:
-                    return new PseudoClassSelector(token.value);
+                if (tokenizer.tokenValueEqualsIgnoreCase("first-line") ||
+                        tokenizer.tokenValueEqualsIgnoreCase("first-letter") ||
+                        tokenizer.tokenValueEqualsIgnoreCase("before") ||
+                        tokenizer.tokenValueEqualsIgnoreCase("after")) {
+                    return new PseudoElementSelector(tokenizer.getTokenValue());
                 }
+
+                return new PseudoClassSelector(tokenizer.getTokenValue());
             case COLON:
-                token = nextToken();
-                if (token.type != TokenType.IDENT) {
-                    throw expected("pseudo element value", token);
+                if (tokenizer.advance() != TokenType.IDENT) {
+                    throw expected("pseudo element value");
                 } else {
-                    return new PseudoElementSelector(token.value);
+                    return new PseudoElementSelector(tokenizer.getTokenValue());
                 }
             case FUNCTION:
-                return parseFunctionalPseudoClass(token.value, insideNegation);
+                return parseFunctionalPseudoClass(tokenizer.getTokenValue(), insideNegation);
             }
         }
 
-        savedToken = token;
+        tokenizer.pushBack();
         return null;
     }
 
@@ -267,19 +360,19 @@ public class SelectorParser {
      * @return The attribute selector parsed.
      */
     private AttributeSelector parseAttribute() {
-        Token token = skipWhitespace().first;
-        if (token.type != TokenType.IDENT) {
-            throw expected("attribute name", token);
+        skipWhitespace();
+        if (tokenizer.getTokenType() != TokenType.IDENT) {
+            throw expected("attribute name");
         }
 
-        String name = token.value;
-        token = skipWhitespace().first;
-        if (token.type == TokenType.RIGHT_SQUARE_BRACKET) {
+        String name = tokenizer.getTokenValue();
+        skipWhitespace();
+        if (tokenizer.getTokenType() == TokenType.RIGHT_SQUARE_BRACKET) {
             return new AttributeSelector(AttributeSelector.Match.EXISTS, name, "");
         }
 
         AttributeSelector.Match match = null;
-        switch (token.type) {
+        switch (tokenizer.getTokenType()) {
         case PREFIX_MATCH:
             match = AttributeSelector.Match.BEGINS;
             break;
@@ -296,25 +389,26 @@ public class SelectorParser {
             match = AttributeSelector.Match.HYPHENS;
             break;
         case DELIM:
-            if ("=".equals(token.value)) {
+            if (tokenizer.getTokenDelimiter() == '=') {
                 match = AttributeSelector.Match.EQUALS;
             } else {
-                throw expected("=", token);
+                throw expected("=");
             }
         }
 
-        token = skipWhitespace().first;
+        skipWhitespace();
 
         String value;
-        if (token.type == TokenType.IDENT || token.type == TokenType.STRING) {
-            value = token.value;
+        TokenType type = tokenizer.getTokenType();
+        if (type == TokenType.IDENT || type == TokenType.STRING) {
+            value = tokenizer.getTokenValue();
         } else {
-            throw expected("attribute value", token);
+            throw expected("attribute value");
         }
 
-        token = skipWhitespace().first;
-        if (token.type != TokenType.RIGHT_SQUARE_BRACKET) {
-            throw expected("]", token);
+        skipWhitespace();
+        if (tokenizer.getTokenType() != TokenType.RIGHT_SQUARE_BRACKET) {
+            throw expected("]");
         }
 
         return new AttributeSelector(match, name, value);
@@ -334,6 +428,13 @@ public class SelectorParser {
         switch (name.toLowerCase()) {
         case "nth-child":
         case "nth-last-child":
+            Pair<Integer, Integer> nthOf = NthParser.parse(tokenizer, true);
+            if (tokenizer.getTokenType() == TokenType.IDENT) {
+                List<Selector> selectors = parseNestedSelectorList(name);
+                return new PseudoNthSelector(name, nthOf.first, nthOf.second, selectors);
+            }
+
+            return new PseudoNthSelector(name, nthOf.first, nthOf.second);
         case "nth-of-type":
         case "nth-last-of-type":
             Pair<Integer, Integer> nth = NthParser.parse(tokenizer);
@@ -344,35 +445,45 @@ public class SelectorParser {
             }
 
             PseudoNegationSelector selector;
-            Pair<String, Boolean> pair = parseName();
-            if (pair.second) {
-                selector = new PseudoNegationSelector(new LocalNameSelector(pair.first));
+            String localName = parseName();
+            if (localName != null) {
+                selector = new PseudoNegationSelector(new LocalNameSelector(localName));
             } else {
                 SimpleSelector simpleSelector = parseOneSimpleSelector(true);
                 if (simpleSelector == null) {
-                    throw expected("simple selector", nextToken());
+                    tokenizer.advance();
+                    throw expected("simple selector");
                 }
 
                 selector = new PseudoNegationSelector(simpleSelector);
             }
 
-            Token token = skipWhitespace().first;
-            if (token.type != TokenType.RIGHT_PAREN) {
-                throw expected(")", token);
+            skipWhitespace();
+            if (tokenizer.getTokenType() != TokenType.RIGHT_PAREN) {
+                throw expected(")");
             }
 
             return selector;
+        case "has":
+            if (insideHas) {
+                throw new ParserException("Error at position " + pos + ": :has() may not be nested");
+            }
+
+            return parseHas();
+        case "is":
+        case "where":
+            return parseIs(name.toLowerCase());
         }
 
         StringBuilder sb = new StringBuilder();
         while (true) {
-            Token token = nextToken();
-            if (token.type == TokenType.EOF) {
+            TokenType type = tokenizer.advance();
+            if (type == TokenType.EOF) {
                 throw new ParserException("EOF in function expression starting at position " + pos);
-            } else if (token.type == TokenType.RIGHT_PAREN) {
+            } else if (type == TokenType.RIGHT_PAREN) {
                 break;
             } else {
-                sb.append(token.value);
+                sb.append(tokenizer.getTokenValue());
             }
         }
 
@@ -380,47 +491,157 @@ public class SelectorParser {
     }
 
     /**
-     * Returns the next token to parse.
+     * Parse the relative selector list of a {@code :has()} pseudo class.
+     * <p/>
+     * See http://www.w3.org/TR/selectors4/#relational
      *
-     * @return The next token.
+     * @return The {@code :has()} pseudo class selector parsed.
      */
-    private Token nextToken() {
-        if (savedToken != null) {
-            Token token = savedToken;
-            savedToken = null;
-            return token;
+    private PseudoHasSelector parseHas() {
+        ++nesting;
+        insideHas = true;
+        LinkedList<Pair<Combinator, Selector>> selectors = new LinkedList<>();
+        while (true) {
+            skipWhitespace();
+            Combinator combinator = Combinator.DESCENDANT;
+            if (tokenizer.getTokenType() == TokenType.DELIM) {
+                switch (tokenizer.getTokenDelimiter()) {
+                case '>':
+                    combinator = Combinator.CHILD;
+                    break;
+                case '+':
+                    combinator = Combinator.NEXT_SIBLING;
+                    break;
+                case '~':
+                    combinator = Combinator.LATER_SIBLING;
+                    break;
+                default:
+                    tokenizer.pushBack();
+                }
+            } else {
+                tokenizer.pushBack();
+            }
+
+            countCombinator(combinator);
+            int pos = tokenizer.getPosition();
+            Selector selector = parseSelector();
+            if (selector.pseudoElement != null) {
+                throw new ParserException("Error at position " + pos + ": pseudo elements are not allowed in :has()");
+            }
+
+            selectors.add(new Pair<>(combinator, selector));
+            skipWhitespace();
+            TokenType type = tokenizer.getTokenType();
+            if (type == TokenType.RIGHT_PAREN) {
+                break;
+            }
+
+            if (type != TokenType.COMMA) {
+                throw expected("one of ',', ')'");
+            }
         }
 
-        return tokenizer.nextToken();
+        --nesting;
+        insideHas = false;
+        return new PseudoHasSelector(selectors);
+    }
+
+    /**
+     * Parse the selector list of an {@code :is()} or {@code :where()} pseudo class.
+     * <p/>
+     * See http://www.w3.org/TR/selectors4/#matches
+     *
+     * @param name The name of the pseudo class.
+     * @return The pseudo class selector parsed.
+     */
+    private PseudoIsSelector parseIs(String name) {
+        return new PseudoIsSelector(name, parseNestedSelectorList(name));
     }
 
     /**
-     * Skips whitespace tokens and returns the next non-whitespace token and a
-     * boolean inidicating if some whitespace was skipped.
+     * Parse a selector list that is the argument, or the last part of the arguments, of a functional
+     * pseudo class.
      *
-     * @return A pair of the next non-whitespace token and whether some whitespace was skipped.
+     * @param name The name of the pseudo class.
+     * @return The selectors parsed.
      */
-    private Pair<Token, Boolean> skipWhitespace() {
-        boolean skipped = false;
+    private List<Selector> parseNestedSelectorList(String name) {
+        ++nesting;
+        LinkedList<Selector> selectors = new LinkedList<>();
         while (true) {
-            Token token = nextToken();
-            if (token.type != TokenType.WHITESPACE) {
-                return new Pair<>(token, skipped);
+            int pos = tokenizer.getPosition();
+            Selector selector = parseSelector();
+            if (selector.pseudoElement != null) {
+                throw new ParserException("Error at position " + pos + ": pseudo elements are not allowed in :" +
+                        name + "()");
+            }
+
+            selectors.add(selector);
+            skipWhitespace();
+            TokenType type = tokenizer.getTokenType();
+            if (type == TokenType.RIGHT_PAREN) {
+                break;
+            }
+
+            if (type != TokenType.COMMA) {
+                throw expected("one of ',', ')'");
+            }
+        }
+
+        --nesting;
+        return selectors;
+    }
+
+    /**
+     * Counts a combinator of the current selector against the limits.
+     *
+     * @param combinator The combinator.
+     */
+    private void countCombinator(Combinator combinator) {
+        if (combinator == Combinator.DESCENDANT || combinator == Combinator.LATER_SIBLING) {
+            if (++combinatorCount > limits.maxCombinators) {
+                throw limitExceeded("descendant and later sibling combinators", limits.maxCombinators);
             }
+        }
+    }
 
+    /**
+     * Advances the tokenizer to the next non-whitespace token and returns a
+     * boolean indicating if some whitespace was skipped.
+     *
+     * @return Whether some whitespace was skipped.
+     */
+    private boolean skipWhitespace() {
+        boolean skipped = false;
+        while (tokenizer.advance() == TokenType.WHITESPACE) {
             skipped = true;
         }
+
+        return skipped;
+    }
+
+    /**
+     * Returns an exception for a selector exceeding one of the limits at the current position.
+     *
+     * @param what What the limit is for.
+     * @param limit The limit.
+     * @return An exception.
+     */
+    private ParserLimitException limitExceeded(String what, int limit) {
+        String msg = String.format("Error at position %d: the limit of %d %s was exceeded", tokenizer.getPosition(),
+                limit, what);
+        return new ParserLimitException(msg);
     }
 
     /**
-     * Returns an exception of what was expected and what was unexpectedly found.
+     * Returns an exception of what was expected and what was unexpectedly found at the current token.
      *
      * @param what What was expected.
-     * @param token The token found.
      * @return An exception.
      */
-    private static ParserException expected(String what, Token token) {
-        String msg = String.format("Expected %s at position %d, got %s", what, token.position, token.type);
+    private ParserException expected(String what) {
+        String msg = String.format("Expected %s at position %d, got %s", what, tokenizer.getTokenStart(),
+                tokenizer.getTokenType());
         return new ParserException(msg);
     }
 
@@ -0,0 +1,494 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+import se.fishtank.css.selectors.selector.Selector;
+import se.fishtank.css.selectors.tokenizer.Tokenizer;
+import se.fishtank.css.selectors.util.Pair;
+
+/**
+ * Streaming style sheet parser that extracts the selectors of the style rules in a style sheet.
+ * <p/>
+ * The style sheet is read incrementally from a {@link Reader}. Only the prelude of the current rule is kept
+ * in memory and it is parsed with the {@link SelectorParser} directly from the reused prelude buffer.
+ * Declaration blocks and the bodies of at-rules are skipped without being kept, except for the bodies of
+ * conditional group rules such as {@code @media} and {@code @supports} whose nested style rules are returned
+ * as well. Rules whose selectors can't be parsed are dropped, just as a browser would, and counted by
+ * {@link #getDroppedRuleCount()}
+ * <p/>
+ * The rules are delimited by a small scanner of its own rather than the {@link Tokenizer}, which needs the
+ * whole input as a character sequence. The scanner only tracks what's needed to find the end of a prelude or
+ * a block, i.e. strings, escapes, comments and bracket nesting, so it can run on the read buffer as it's
+ * refilled without the style sheet ever being kept in memory. The prelude itself is tokenized by the
+ * {@link SelectorParser}
+ * <p/>
+ * See <a href="http://www.w3.org/TR/css-syntax-3/#parsing">http://www.w3.org/TR/css-syntax-3/#parsing</a>
+ *
+ * @author Christer Sandberg
+ */
+public class StylesheetParser implements Closeable {
+
+    /** The size of the read buffer. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The reader to read the style sheet from. */
+    private final Reader reader;
+
+    /** The read buffer. */
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    /** The current position in the read buffer. */
+    private int bufferPos = 0;
+
+    /** The number of characters in the read buffer. */
+    private int bufferLen = 0;
+
+    /** The source offset of the next character. */
+    private int offset = 0;
+
+    /** The number of conditional group rules the parser is currently inside. */
+    private int depth = 0;
+
+    /** Buffer for the prelude of the current rule. */
+    private final StringBuilder prelude = new StringBuilder();
+
+    /** The number of style rules dropped so far. */
+    private int droppedRuleCount = 0;
+
+    /**
+     * Create a new style sheet parser.
+     *
+     * @param reader The reader to read the style sheet from.
+     */
+    public StylesheetParser(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Returns the selectors of the next style rule.
+     *
+     * @return A pair of the selectors and the source offset of the rule or {@code null} at the end of the input.
+     * @throws IOException On errors reading the style sheet.
+     */
+    public Pair<List<Selector>, Integer> next() throws IOException {
+        while (true) {
+            skipWhitespaceAndComments();
+            int c = peek();
+            if (c == Tokenizer.EOF) {
+                return null;
+            }
+
+            if (c == '}') {
+                read();
+                if (depth > 0) {
+                    --depth;
+                }
+
+                continue;
+            }
+
+            if (c == '@') {
+                read();
+                String name = readName();
+                if (readPrelude(null) == '{') {
+                    if (isConditionalGroupRule(name)) {
+                        ++depth;
+                    } else {
+                        skipBlock();
+                    }
+                }
+
+                continue;
+            }
+
+            int start = offset;
+            prelude.setLength(0);
+            int end = readPrelude(prelude);
+            if (end == Tokenizer.EOF) {
+                return null;
+            }
+
+            if (end != '{') {
+                continue;
+            }
+
+            skipBlock();
+            try {
+                return new Pair<>(SelectorParser.parse(prelude), start);
+            } catch (ParserException | IllegalArgumentException e) {
+                // Drop the rule.
+                ++droppedRuleCount;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of style rules dropped so far because their selectors couldn't be parsed.
+     *
+     * @return The number of dropped style rules.
+     */
+    public int getDroppedRuleCount() {
+        return droppedRuleCount;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Returns whether the at-rule with the given name contains a list of rules.
+     *
+     * @param name The at-rule name.
+     * @return {@code true} or {@code false}
+     */
+    private static boolean isConditionalGroupRule(String name) {
+        switch (name.toLowerCase()) {
+        case "media":
+        case "supports":
+        case "document":
+        case "-moz-document":
+        case "layer":
+        case "container":
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Skips whitespace, comments and {@code <!--} and {@code -->} at the current position.
+     *
+     * @throws IOException On read errors.
+     */
+    private void skipWhitespaceAndComments() throws IOException {
+        while (true) {
+            int c = peek();
+            if (Tokenizer.isSpace(c)) {
+                read();
+            } else if (c == '/' && lookingAt("/*")) {
+                skipComment();
+            } else if (c == '<' && lookingAt("<!--")) {
+                skip(4);
+            } else if (c == '-' && lookingAt("-->")) {
+                skip(3);
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads the prelude of a rule up to and including the {@code {} starting its block or a {@code ;}
+     * ending an at-rule. A {@code }} ending the enclosing block is not consumed.
+     *
+     * @param sb Buffer to append the prelude to or {@code null}
+     * @return The code point ending the prelude or {@link Tokenizer#EOF}
+     * @throws IOException On read errors.
+     */
+    private int readPrelude(StringBuilder sb) throws IOException {
+        int nesting = 0;
+        while (true) {
+            int c = peek();
+            switch (c) {
+            case Tokenizer.EOF:
+                return c;
+            case '{':
+                if (nesting == 0) {
+                    read();
+                    return c;
+                }
+
+                ++nesting;
+                break;
+            case '}':
+                if (nesting == 0) {
+                    return c;
+                }
+
+                --nesting;
+                break;
+            case ';':
+                if (nesting == 0 && sb == null) {
+                    read();
+                    return c;
+                }
+
+                break;
+            case '(':
+            case '[':
+                ++nesting;
+                break;
+            case ')':
+            case ']':
+                if (nesting > 0) {
+                    --nesting;
+                }
+
+                break;
+            case '"':
+            case '\'':
+                skipString(sb);
+                continue;
+            case '\\':
+                skipEscape(sb);
+                continue;
+            case '/':
+                if (lookingAt("/*")) {
+                    skipComment();
+                    if (sb != null) {
+                        // Keep the comment as a token separator.
+                        sb.append("/**/");
+                    }
+
+                    continue;
+                }
+
+                break;
+            }
+
+            read();
+            if (sb != null) {
+                sb.append((char) c);
+            }
+        }
+    }
+
+    /**
+     * Skips a block whose {@code {} has already been consumed.
+     *
+     * @throws IOException On read errors.
+     */
+    private void skipBlock() throws IOException {
+        int nesting = 1;
+        while (true) {
+            int c = peek();
+            switch (c) {
+            case Tokenizer.EOF:
+                return;
+            case '{':
+                ++nesting;
+                break;
+            case '}':
+                if (--nesting == 0) {
+                    read();
+                    return;
+                }
+
+                break;
+            case '"':
+            case '\'':
+                skipString(null);
+                continue;
+            case '\\':
+                skipEscape(null);
+                continue;
+            case '/':
+                if (lookingAt("/*")) {
+                    skipComment();
+                    continue;
+                }
+
+                break;
+            }
+
+            read();
+        }
+    }
+
+    /**
+     * Skips a string at the current position.
+     *
+     * @param sb Buffer to append the string to or {@code null}
+     * @throws IOException On read errors.
+     */
+    private void skipString(StringBuilder sb) throws IOException {
+        int quote = read();
+        if (sb != null) {
+            sb.append((char) quote);
+        }
+
+        while (true) {
+            int c = peek();
+            if (c == Tokenizer.EOF || c == '\n' || c == '\r' || c == '\f') {
+                // A bad string ends at the newline.
+                return;
+            }
+
+            if (c == '\\') {
+                skipEscape(sb);
+                continue;
+            }
+
+            read();
+            if (sb != null) {
+                sb.append((char) c);
+            }
+
+            if (c == quote) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Skips a backslash and the code point following it.
+     *
+     * @param sb Buffer to append the escape to or {@code null}
+     * @throws IOException On read errors.
+     */
+    private void skipEscape(StringBuilder sb) throws IOException {
+        read();
+        if (sb != null) {
+            sb.append('\\');
+        }
+
+        int c = read();
+        if (c != Tokenizer.EOF && sb != null) {
+            sb.append((char) c);
+        }
+    }
+
+    /**
+     * Skips a comment at the current position.
+     *
+     * @throws IOException On read errors.
+     */
+    private void skipComment() throws IOException {
+        skip(2);
+        while (true) {
+            int c = read();
+            if (c == Tokenizer.EOF) {
+                return;
+            }
+
+            if (c == '*' && peek() == '/') {
+                read();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads a name at the current position.
+     *
+     * @return The name read.
+     * @throws IOException On read errors.
+     */
+    private String readName() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            int c = peek();
+            if (c == '\\') {
+                skipEscape(sb);
+            } else if (c != Tokenizer.EOF && Tokenizer.isName(c)) {
+                sb.append((char) read());
+            } else {
+                return sb.toString();
+            }
+        }
+    }
+
+    /**
+     * Returns whether the input at the current position starts with the given string.
+     *
+     * @param str The string to check for.
+     * @return {@code true} or {@code false}
+     * @throws IOException On read errors.
+     */
+    private boolean lookingAt(String str) throws IOException {
+        int len = str.length();
+        if (!fill(len)) {
+            return false;
+        }
+
+        for (int i = 0; i < len; ++i) {
+            if (buffer[bufferPos + i] != str.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Skips the given number of characters.
+     *
+     * @param n The number of characters to skip.
+     * @throws IOException On read errors.
+     */
+    private void skip(int n) throws IOException {
+        for (int i = 0; i < n; ++i) {
+            read();
+        }
+    }
+
+    /**
+     * Consumes and returns the next character.
+     *
+     * @return The next character or {@link Tokenizer#EOF}
+     * @throws IOException On read errors.
+     */
+    private int read() throws IOException {
+        if (!fill(1)) {
+            return Tokenizer.EOF;
+        }
+
+        ++offset;
+        return buffer[bufferPos++];
+    }
+
+    /**
+     * Returns the next character without consuming it.
+     *
+     * @return The next character or {@link Tokenizer#EOF}
+     * @throws IOException On read errors.
+     */
+    private int peek() throws IOException {
+        if (!fill(1)) {
+            return Tokenizer.EOF;
+        }
+
+        return buffer[bufferPos];
+    }
+
+    /**
+     * Makes sure that at least {@code n} characters are available in the read buffer.
+     *
+     * @param n The number of characters needed.
+     * @return {@code false} if the end of the input is reached before {@code n} characters are available.
+     * @throws IOException On read errors.
+     */
+    private boolean fill(int n) throws IOException {
+        if (bufferLen - bufferPos >= n) {
+            return true;
+        }
+
+        if (bufferPos > 0) {
+            System.arraycopy(buffer, bufferPos, buffer, 0, bufferLen - bufferPos);
+            bufferLen -= bufferPos;
+            bufferPos = 0;
+        }
+
+        while (bufferLen < n) {
+            int len = reader.read(buffer, bufferLen, buffer.length - bufferLen);
+            if (len == -1) {
+                return false;
+            }
+
+            bufferLen += len;
+        }
+
+        return true;
+    }
+
+}
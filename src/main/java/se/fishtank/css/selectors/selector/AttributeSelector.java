@@ -29,6 +29,9 @@ public class AttributeSelector implements SimpleSelector {
     /** The attribute value. */
     public final String value;
 
+    /** The cached hash code. */
+    private final int hash;
+
     /**
      * Create a new attribute selector.
      *
@@ -40,6 +43,7 @@ public class AttributeSelector implements SimpleSelector {
         this.match = match;
         this.name = name;
         this.value = value;
+        this.hash = Objects.hash(match, name, value);
     }
 
     /**
@@ -64,6 +68,10 @@ public class AttributeSelector implements SimpleSelector {
         }
 
         AttributeSelector that = (AttributeSelector) other;
+        if (hash != that.hash) {
+            return false;
+        }
+
         return Objects.equals(match, that.match) &&
                 Objects.equals(name, that.name) &&
                 Objects.equals(value, that.value);
@@ -74,7 +82,50 @@ public class AttributeSelector implements SimpleSelector {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(match, name, value);
+        return hash;
+    }
+
+    /**
+     * Returns the CSS serialization of this selector.
+     *
+     * @return The serialized selector.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (match == Match.EQUALS && name.equals("id") && !value.isEmpty()) {
+            return Serialization.appendIdentifier(sb.append('#'), value).toString();
+        }
+
+        if (match == Match.INCLUDES && name.equals("class") && !value.isEmpty()) {
+            return Serialization.appendIdentifier(sb.append('.'), value).toString();
+        }
+
+        Serialization.appendIdentifier(sb.append('['), name);
+        switch (match) {
+        case EXISTS:
+            return sb.append(']').toString();
+        case EQUALS:
+            sb.append('=');
+            break;
+        case INCLUDES:
+            sb.append("~=");
+            break;
+        case BEGINS:
+            sb.append("^=");
+            break;
+        case ENDS:
+            sb.append("$=");
+            break;
+        case CONTAINS:
+            sb.append("*=");
+            break;
+        case HYPHENS:
+            sb.append("|=");
+            break;
+        }
+
+        return Serialization.appendString(sb, value).append(']').toString();
     }
 
 }
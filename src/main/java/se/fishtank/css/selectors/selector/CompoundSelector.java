@@ -3,6 +3,8 @@
  */
 package se.fishtank.css.selectors.selector;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -19,12 +21,15 @@ import se.fishtank.css.selectors.util.Pair;
  */
 public class CompoundSelector {
 
-    /** Simple selector sequence. */
+    /** Simple selector sequence, an immutable array backed list. */
     public final List<SimpleSelector> simpleSelectors;
 
     /** A pointer to the previous compound selector separated by a combinator or {@code null} */
     public final Pair<Combinator, CompoundSelector> previous;
 
+    /** The cached hash code. */
+    private final int hash;
+
     /**
      * Create a new compound selector.
      *
@@ -32,8 +37,10 @@ public class CompoundSelector {
      * @param previous A pointer to the previous compound selector separated by a combinator or {@code null}
      */
     public CompoundSelector(List<SimpleSelector> simpleSelectors, Pair<Combinator, CompoundSelector> previous) {
-        this.simpleSelectors = simpleSelectors;
+        SimpleSelector[] array = simpleSelectors.toArray(new SimpleSelector[simpleSelectors.size()]);
+        this.simpleSelectors = Collections.unmodifiableList(Arrays.asList(array));
         this.previous = previous;
+        this.hash = Objects.hash(simpleSelectors, previous);
     }
 
     /**
@@ -60,6 +67,10 @@ public class CompoundSelector {
         }
 
         CompoundSelector that = (CompoundSelector) other;
+        if (hash != that.hash) {
+            return false;
+        }
+
         return Objects.equals(simpleSelectors, that.simpleSelectors) &&
                 Objects.equals(previous, that.previous);
     }
@@ -69,7 +80,44 @@ public class CompoundSelector {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(simpleSelectors, previous);
+        return hash;
+    }
+
+    /**
+     * Returns the CSS serialization of this selector.
+     *
+     * @return The serialized selector.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (previous != null) {
+            sb.append(previous.second);
+            switch (previous.first) {
+            case CHILD:
+                sb.append(" > ");
+                break;
+            case DESCENDANT:
+                sb.append(' ');
+                break;
+            case NEXT_SIBLING:
+                sb.append(" + ");
+                break;
+            case LATER_SIBLING:
+                sb.append(" ~ ");
+                break;
+            }
+        }
+
+        if (simpleSelectors.isEmpty()) {
+            sb.append('*');
+        }
+
+        for (SimpleSelector simpleSelector : simpleSelectors) {
+            sb.append(simpleSelector);
+        }
+
+        return sb.toString();
     }
 
 }
@@ -59,4 +59,18 @@ public class LocalNameSelector implements SimpleSelector {
         return name.hashCode();
     }
 
+    /**
+     * Returns the CSS serialization of this selector.
+     *
+     * @return The serialized selector.
+     */
+    @Override
+    public String toString() {
+        if (name.equals("*")) {
+            return name;
+        }
+
+        return Serialization.appendIdentifier(new StringBuilder(), name).toString();
+    }
+
 }
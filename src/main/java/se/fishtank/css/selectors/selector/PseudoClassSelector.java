@@ -59,4 +59,14 @@ public class PseudoClassSelector implements SimpleSelector {
         return value.hashCode();
     }
 
+    /**
+     * Returns the CSS serialization of this selector.
+     *
+     * @return The serialized selector.
+     */
+    @Override
+    public String toString() {
+        return Serialization.appendIdentifier(new StringBuilder(":"), value).toString();
+    }
+
 }
@@ -20,6 +20,9 @@ public class PseudoFunctionSelector implements SimpleSelector {
     /** The arguments of this selector. */
     public final String arguments;
 
+    /** The cached hash code. */
+    private final int hash;
+
     /**
      * Create a new functional pseudo class selector.
      *
@@ -29,6 +32,7 @@ public class PseudoFunctionSelector implements SimpleSelector {
     public PseudoFunctionSelector(String name, String arguments) {
         this.name = name;
         this.arguments = arguments;
+        this.hash = Objects.hash(name, arguments);
     }
 
     /**
@@ -53,6 +57,10 @@ public class PseudoFunctionSelector implements SimpleSelector {
         }
 
         PseudoFunctionSelector that = (PseudoFunctionSelector) other;
+        if (hash != that.hash) {
+            return false;
+        }
+
         return Objects.equals(name, that.name) &&
                 Objects.equals(arguments, that.arguments);
     }
@@ -62,7 +70,24 @@ public class PseudoFunctionSelector implements SimpleSelector {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(name, arguments);
+        return hash;
+    }
+
+    /**
+     * Returns the CSS serialization of this selector.
+     *
+     * @return The serialized selector.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = Serialization.appendIdentifier(new StringBuilder(":"), name).append('(');
+        if (Serialization.isPlainIdentifier(arguments)) {
+            sb.append(arguments);
+        } else {
+            Serialization.appendString(sb, arguments);
+        }
+
+        return sb.append(')').toString();
     }
 
 }
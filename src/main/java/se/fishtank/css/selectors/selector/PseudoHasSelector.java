@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.selector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import se.fishtank.css.selectors.util.Pair;
+
+/**
+ * Represents the relational {@code :has()} pseudo class.
+ * <p/>
+ * The arguments are relative selectors, i.e. a selector with the combinator relating its leftmost
+ * compound selector to the element matched against the {@code :has()} pseudo class. The combinator is
+ * {@link Combinator#DESCENDANT} if the relative selector doesn't start with one.
+ * <p/>
+ * See <a href="http://www.w3.org/TR/selectors4/#relational">http://www.w3.org/TR/selectors4/#relational</a>
+ *
+ * @author Christer Sandberg
+ */
+public class PseudoHasSelector implements SimpleSelector {
+
+    /** The relative selectors, an immutable list. */
+    public final List<Pair<Combinator, Selector>> selectors;
+
+    /** The cached hash code. */
+    private final int hash;
+
+    /**
+     * Create a new {@code :has()} pseudo class selector.
+     *
+     * @param selectors The relative selectors.
+     */
+    public PseudoHasSelector(List<Pair<Combinator, Selector>> selectors) {
+        this.selectors = Collections.unmodifiableList(new ArrayList<>(selectors));
+        this.hash = this.selectors.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SimpleSelectorType getType() {
+        return SimpleSelectorType.PSEUDO_HAS;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+
+        if (other == null || getClass() != other.getClass()) {
+            return false;
+        }
+
+        PseudoHasSelector that = (PseudoHasSelector) other;
+        return hash == that.hash && selectors.equals(that.selectors);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Returns the CSS serialization of this selector.
+     *
+     * @return The serialized selector.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(":has(");
+        for (int i = 0; i < selectors.size(); ++i) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+
+            Pair<Combinator, Selector> selector = selectors.get(i);
+            switch (selector.first) {
+            case CHILD:
+                sb.append("> ");
+                break;
+            case NEXT_SIBLING:
+                sb.append("+ ");
+                break;
+            case LATER_SIBLING:
+                sb.append("~ ");
+                break;
+            }
+
+            sb.append(selector.second);
+        }
+
+        return sb.append(')').toString();
+    }
+
+}
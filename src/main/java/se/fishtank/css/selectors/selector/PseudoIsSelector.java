@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.selector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Represents the {@code :is()} and {@code :where()} pseudo classes.
+ * <p/>
+ * An element matches if it matches any of the selectors in the list. The two pseudo classes only differ
+ * in specificity, which isn't used by this library.
+ * <p/>
+ * See <a href="http://www.w3.org/TR/selectors4/#matches">http://www.w3.org/TR/selectors4/#matches</a>
+ *
+ * @author Christer Sandberg
+ */
+public class PseudoIsSelector implements SimpleSelector {
+
+    /** The name of this selector, {@code is} or {@code where} */
+    public final String name;
+
+    /** The selector list, an immutable list. */
+    public final List<Selector> selectors;
+
+    /** The cached hash code. */
+    private final int hash;
+
+    /**
+     * Create a new {@code :is()} or {@code :where()} pseudo class selector.
+     *
+     * @param name The name of the selector.
+     * @param selectors The selector list.
+     */
+    public PseudoIsSelector(String name, List<Selector> selectors) {
+        this.name = name;
+        this.selectors = Collections.unmodifiableList(new ArrayList<>(selectors));
+        this.hash = Objects.hash(name, this.selectors);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SimpleSelectorType getType() {
+        return SimpleSelectorType.PSEUDO_IS;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+
+        if (other == null || getClass() != other.getClass()) {
+            return false;
+        }
+
+        PseudoIsSelector that = (PseudoIsSelector) other;
+        return hash == that.hash && name.equals(that.name) && selectors.equals(that.selectors);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Returns the CSS serialization of this selector.
+     *
+     * @return The serialized selector.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(":");
+        Serialization.appendIdentifier(sb, name).append('(');
+        for (int i = 0; i < selectors.size(); ++i) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+
+            sb.append(selectors.get(i));
+        }
+
+        return sb.append(')').toString();
+    }
+
+}
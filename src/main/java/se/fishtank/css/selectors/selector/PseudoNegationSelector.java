@@ -59,4 +59,14 @@ public class PseudoNegationSelector implements SimpleSelector {
         return selector.hashCode();
     }
 
+    /**
+     * Returns the CSS serialization of this selector.
+     *
+     * @return The serialized selector.
+     */
+    @Override
+    public String toString() {
+        return ":not(" + selector + ")";
+    }
+
 }
@@ -3,12 +3,20 @@
  */
 package se.fishtank.css.selectors.selector;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
  * Represents a {@code nth-*} pseudo class selector.
  * <p/>
+ * The {@code :nth-child()} and {@code :nth-last-child()} pseudo classes may also have a selector list
+ * as in {@code :nth-child(An+B of S)}, in which case only the siblings matching the selector list are
+ * counted.
+ * <p/>
  * See <a href="http://www.w3.org/TR/selectors/#pseudo-classes">http://www.w3.org/TR/selectors/#pseudo-classes</a>
+ * and <a href="http://www.w3.org/TR/selectors4/#the-nth-child-pseudo">http://www.w3.org/TR/selectors4/#the-nth-child-pseudo</a>
  *
  * @author Christer Sandberg
  */
@@ -23,6 +31,12 @@ public class PseudoNthSelector implements SimpleSelector {
     /** The <i>b</i> argument of this selector. */
     public final int b;
 
+    /** The selector list of the {@code of S} argument, an immutable list, or {@code null} */
+    public final List<Selector> selectors;
+
+    /** The cached hash code. */
+    private final int hash;
+
     /**
      * Create a new {@code nth-*} pseudo class selector.
      *
@@ -31,9 +45,23 @@ public class PseudoNthSelector implements SimpleSelector {
      * @param b The <i>b</i> argument value.
      */
     public PseudoNthSelector(String name, int a, int b) {
+        this(name, a, b, null);
+    }
+
+    /**
+     * Create a new {@code nth-*} pseudo class selector with an {@code of S} argument.
+     *
+     * @param name The name of the selector.
+     * @param a The <i>a</i> argument value.
+     * @param b The <i>b</i> argument value.
+     * @param selectors The selector list of the {@code of S} argument or {@code null}
+     */
+    public PseudoNthSelector(String name, int a, int b, List<Selector> selectors) {
         this.name = name;
         this.a = a;
         this.b = b;
+        this.selectors = selectors == null ? null : Collections.unmodifiableList(new ArrayList<>(selectors));
+        this.hash = Objects.hash(name, a, b, this.selectors);
     }
 
     /**
@@ -58,9 +86,14 @@ public class PseudoNthSelector implements SimpleSelector {
         }
 
         PseudoNthSelector that = (PseudoNthSelector) other;
+        if (hash != that.hash) {
+            return false;
+        }
+
         return Objects.equals(a, that.a) &&
                 Objects.equals(b, that.b) &&
-                Objects.equals(name, that.name);
+                Objects.equals(name, that.name) &&
+                Objects.equals(selectors, that.selectors);
     }
 
     /**
@@ -68,7 +101,46 @@ public class PseudoNthSelector implements SimpleSelector {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(name, a, b);
+        return hash;
+    }
+
+    /**
+     * Returns the CSS serialization of this selector.
+     *
+     * @return The serialized selector.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = Serialization.appendIdentifier(new StringBuilder(":"), name).append('(');
+        if (a != 0) {
+            if (a == -1) {
+                sb.append('-');
+            } else if (a != 1) {
+                sb.append(a);
+            }
+
+            sb.append('n');
+            if (b > 0) {
+                sb.append('+');
+            }
+        }
+
+        if (a == 0 || b != 0) {
+            sb.append(b);
+        }
+
+        if (selectors != null) {
+            sb.append(" of ");
+            for (int i = 0; i < selectors.size(); ++i) {
+                if (i > 0) {
+                    sb.append(", ");
+                }
+
+                sb.append(selectors.get(i));
+            }
+        }
+
+        return sb.append(')').toString();
     }
 
 }
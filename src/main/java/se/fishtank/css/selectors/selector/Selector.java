@@ -20,6 +20,9 @@ public class Selector {
     /** The pseudo element or {@code null} */
     public final PseudoElementSelector pseudoElement;
 
+    /** The cached hash code. */
+    private final int hash;
+
     /**
      * Create a new selector.
      *
@@ -29,6 +32,7 @@ public class Selector {
     public Selector(CompoundSelector compoundSelector, PseudoElementSelector pseudoElement) {
         this.compoundSelector = compoundSelector;
         this.pseudoElement = pseudoElement;
+        this.hash = Objects.hash(compoundSelector, pseudoElement);
     }
 
     /**
@@ -45,6 +49,10 @@ public class Selector {
         }
 
         Selector selector = (Selector) other;
+        if (hash != selector.hash) {
+            return false;
+        }
+
         return Objects.equals(compoundSelector, selector.compoundSelector) &&
                 Objects.equals(pseudoElement, selector.pseudoElement);
     }
@@ -54,7 +62,21 @@ public class Selector {
      */
     @Override
     public int hashCode() {
-        return Objects.hash(compoundSelector, pseudoElement);
+        return hash;
+    }
+
+    /**
+     * Returns the CSS serialization of this selector.
+     *
+     * @return The serialized selector.
+     */
+    @Override
+    public String toString() {
+        if (pseudoElement == null) {
+            return compoundSelector.toString();
+        }
+
+        return compoundSelector.toString() + pseudoElement;
     }
 
 }
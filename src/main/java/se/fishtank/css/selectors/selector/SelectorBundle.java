@@ -0,0 +1,489 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.selector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+import se.fishtank.css.selectors.util.Pair;
+
+/**
+ * Compact binary serialization of parsed selector lists.
+ * <p/>
+ * A selector bundle is written once, e.g. at build time, and read back directly into selectors without
+ * tokenizing or parsing anything. A bundle starts with {@link #MAGIC} and {@link #VERSION} followed by a
+ * table of the distinct strings used by the selectors and the selector lists themselves. Integers are
+ * written as variable length quantities and strings as indexes into the string table.
+ * <p/>
+ * The format uses the ordinals of {@link SimpleSelectorType}, {@link Combinator} and
+ * {@link AttributeSelector.Match}, so any change to them requires a new {@link #VERSION}
+ * <p/>
+ * A bundle is read without trusting its counts and indexes, so a corrupt or crafted bundle is rejected with
+ * an {@link IOException} rather than exhausting the memory or the stack. Simple selectors may be nested, as
+ * in {@code :not()}, {@code :has()} and {@code :is()}, at most {@link #MAX_DEPTH} levels deep.
+ *
+ * @author Christer Sandberg
+ */
+public class SelectorBundle {
+
+    /** The magic number starting a bundle, {@code CSSB} in ASCII. */
+    public static final int MAGIC = 0x43535342;
+
+    /** The current bundle format version. */
+    public static final int VERSION = 1;
+
+    /** The maximum nesting depth of simple selectors. */
+    public static final int MAX_DEPTH = 64;
+
+    /** The size of the chunks strings longer than it are read in. */
+    private static final int CHUNK_SIZE = 8192;
+
+    private SelectorBundle() {
+    }
+
+    /**
+     * Writes the given selector lists as a bundle.
+     *
+     * @param selectorLists The selector lists to write.
+     * @param out The stream to write to.
+     * @throws IOException On write errors.
+     * @throws IllegalArgumentException If a selector contains an unknown simple selector implementation or
+     *                                  simple selectors nested deeper than {@link #MAX_DEPTH} levels.
+     */
+    public static void write(List<List<Selector>> selectorLists, OutputStream out) throws IOException {
+        Writer writer = new Writer();
+        writer.writeVarInt(selectorLists.size());
+        for (List<Selector> selectors : selectorLists) {
+            writer.writeSelectors(selectors);
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        writeVarInt(data, VERSION);
+        writeVarInt(data, writer.strings.size());
+        for (String str : writer.strings) {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(data, bytes.length);
+            data.write(bytes);
+        }
+
+        writer.body.writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * Reads the selector lists of a bundle.
+     *
+     * @param in The stream to read from.
+     * @return The selector lists read.
+     * @throws IOException On read errors or if the stream doesn't contain a valid bundle.
+     */
+    public static List<List<Selector>> read(InputStream in) throws IOException {
+        Reader reader = new Reader(new DataInputStream(in));
+        return reader.readBundle();
+    }
+
+    /**
+     * Reads the selector lists of a bundle and interns them.
+     *
+     * @param in The stream to read from.
+     * @param interner The interner to intern the selector lists with.
+     * @return The interned selector lists read.
+     * @throws IOException On read errors or if the stream doesn't contain a valid bundle.
+     */
+    public static List<List<Selector>> read(InputStream in, SelectorInterner interner) throws IOException {
+        List<List<Selector>> selectorLists = read(in);
+        for (int i = 0; i < selectorLists.size(); ++i) {
+            selectorLists.set(i, interner.intern(selectorLists.get(i)));
+        }
+
+        return selectorLists;
+    }
+
+    /**
+     * Writes a variable length quantity.
+     *
+     * @param out The stream to write to.
+     * @param value The value to write.
+     * @throws IOException On write errors.
+     */
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        out.writeByte(value);
+    }
+
+    /**
+     * Selector bundle writer collecting the string table while writing the body.
+     */
+    private static class Writer {
+
+        /** The string table. */
+        final List<String> strings = new ArrayList<>();
+
+        /** The indexes of the strings in the string table. */
+        final HashMap<String, Integer> indexes = new HashMap<>();
+
+        /** The bundle body. */
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        /** Output for the bundle body. */
+        final DataOutputStream out = new DataOutputStream(body);
+
+        /** The nesting depth of the simple selector being written. */
+        int depth = 0;
+
+        void writeSelectors(List<Selector> selectors) throws IOException {
+            writeVarInt(selectors.size());
+            for (Selector selector : selectors) {
+                writeSelector(selector);
+            }
+        }
+
+        void writeSelector(Selector selector) throws IOException {
+            LinkedList<CompoundSelector> compoundSelectors = new LinkedList<>();
+            for (CompoundSelector c = selector.compoundSelector; c != null; ) {
+                compoundSelectors.addFirst(c);
+                c = c.previous == null ? null : c.previous.second;
+            }
+
+            writeVarInt(compoundSelectors.size());
+            boolean first = true;
+            for (CompoundSelector compoundSelector : compoundSelectors) {
+                if (!first) {
+                    // The combinator of the compound selector following this one.
+                    out.writeByte(compoundSelector.previous.first.ordinal());
+                }
+
+                first = false;
+                writeVarInt(compoundSelector.simpleSelectors.size());
+                for (SimpleSelector simpleSelector : compoundSelector.simpleSelectors) {
+                    writeSimpleSelector(simpleSelector);
+                }
+            }
+
+            if (selector.pseudoElement == null) {
+                out.writeByte(0);
+            } else {
+                out.writeByte(1);
+                writeString(selector.pseudoElement.value);
+            }
+        }
+
+        void writeSimpleSelector(SimpleSelector selector) throws IOException {
+            if (depth == MAX_DEPTH) {
+                throw new IllegalArgumentException("Simple selectors nested deeper than " + MAX_DEPTH + " levels");
+            }
+
+            ++depth;
+            try {
+                writeSimpleSelectorBody(selector);
+            } finally {
+                --depth;
+            }
+        }
+
+        void writeSimpleSelectorBody(SimpleSelector selector) throws IOException {
+            SimpleSelectorType type = selector.getType();
+            out.writeByte(type.ordinal());
+            switch (type) {
+            case ATTRIBUTE:
+                AttributeSelector attributeSelector = (AttributeSelector) selector;
+                out.writeByte(attributeSelector.match.ordinal());
+                writeString(attributeSelector.name);
+                writeString(attributeSelector.value);
+                break;
+            case LOCAL_NAME:
+                writeString(((LocalNameSelector) selector).name);
+                break;
+            case PSEUDO_CLASS:
+                writeString(((PseudoClassSelector) selector).value);
+                break;
+            case PSEUDO_ELEMENT:
+                writeString(((PseudoElementSelector) selector).value);
+                break;
+            case PSEUDO_NTH:
+                PseudoNthSelector nthSelector = (PseudoNthSelector) selector;
+                writeString(nthSelector.name);
+                writeVarInt(zigZag(nthSelector.a));
+                writeVarInt(zigZag(nthSelector.b));
+                if (nthSelector.selectors == null) {
+                    out.writeByte(0);
+                } else {
+                    out.writeByte(1);
+                    writeSelectors(nthSelector.selectors);
+                }
+
+                break;
+            case PSEUDO_NEGATION:
+                writeSimpleSelector(((PseudoNegationSelector) selector).selector);
+                break;
+            case PSEUDO_FUNCTION:
+                PseudoFunctionSelector functionSelector = (PseudoFunctionSelector) selector;
+                writeString(functionSelector.name);
+                writeString(functionSelector.arguments);
+                break;
+            case PSEUDO_HAS:
+                PseudoHasSelector hasSelector = (PseudoHasSelector) selector;
+                writeVarInt(hasSelector.selectors.size());
+                for (Pair<Combinator, Selector> relative : hasSelector.selectors) {
+                    out.writeByte(relative.first.ordinal());
+                    writeSelector(relative.second);
+                }
+
+                break;
+            case PSEUDO_IS:
+                PseudoIsSelector isSelector = (PseudoIsSelector) selector;
+                writeString(isSelector.name);
+                writeSelectors(isSelector.selectors);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported simple selector: " + selector.getClass().getName());
+            }
+        }
+
+        void writeString(String str) throws IOException {
+            Integer index = indexes.get(str);
+            if (index == null) {
+                index = strings.size();
+                strings.add(str);
+                indexes.put(str, index);
+            }
+
+            writeVarInt(index);
+        }
+
+        void writeVarInt(int value) throws IOException {
+            SelectorBundle.writeVarInt(out, value);
+        }
+
+        static int zigZag(int value) {
+            return (value << 1) ^ (value >> 31);
+        }
+
+    }
+
+    /**
+     * Selector bundle reader.
+     */
+    private static class Reader {
+
+        /** Input to read from. */
+        final DataInputStream in;
+
+        /** The string table. */
+        String[] strings;
+
+        /** The nesting depth of the simple selector being read. */
+        int depth = 0;
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        List<List<Selector>> readBundle() throws IOException {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a selector bundle");
+            }
+
+            int version = readVarInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported selector bundle version " + version);
+            }
+
+            // Nothing is allocated up front from a count, the stream ends before a bogus count is reached.
+            int stringCount = readCount();
+            ArrayList<String> strings = new ArrayList<>();
+            for (int i = 0; i < stringCount; ++i) {
+                strings.add(new String(readBytes(readCount()), StandardCharsets.UTF_8));
+            }
+
+            this.strings = strings.toArray(new String[strings.size()]);
+            int count = readCount();
+            ArrayList<List<Selector>> selectorLists = new ArrayList<>();
+            for (int i = 0; i < count; ++i) {
+                selectorLists.add(readSelectors());
+            }
+
+            return selectorLists;
+        }
+
+        List<Selector> readSelectors() throws IOException {
+            int count = readCount();
+            ArrayList<Selector> selectors = new ArrayList<>();
+            for (int i = 0; i < count; ++i) {
+                selectors.add(readSelector());
+            }
+
+            return selectors;
+        }
+
+        Selector readSelector() throws IOException {
+            int compoundCount = readCount();
+            CompoundSelector compoundSelector = null;
+            for (int j = 0; j < compoundCount; ++j) {
+                Combinator combinator = null;
+                if (j > 0) {
+                    combinator = readEnum(Combinator.values());
+                }
+
+                int simpleCount = readCount();
+                ArrayList<SimpleSelector> simpleSelectors = new ArrayList<>();
+                for (int k = 0; k < simpleCount; ++k) {
+                    simpleSelectors.add(readSimpleSelector());
+                }
+
+                if (compoundSelector == null) {
+                    compoundSelector = CompoundSelector.of(simpleSelectors);
+                } else {
+                    compoundSelector = new CompoundSelector(simpleSelectors,
+                            new Pair<>(combinator, compoundSelector));
+                }
+            }
+
+            if (compoundSelector == null) {
+                throw new IOException("Selector without compound selectors");
+            }
+
+            PseudoElementSelector pseudoElement = null;
+            if (in.readByte() != 0) {
+                pseudoElement = new PseudoElementSelector(readString());
+            }
+
+            return new Selector(compoundSelector, pseudoElement);
+        }
+
+        SimpleSelector readSimpleSelector() throws IOException {
+            if (depth == MAX_DEPTH) {
+                throw new IOException("Simple selectors nested deeper than " + MAX_DEPTH + " levels");
+            }
+
+            ++depth;
+            try {
+                return readSimpleSelectorBody();
+            } finally {
+                --depth;
+            }
+        }
+
+        SimpleSelector readSimpleSelectorBody() throws IOException {
+            switch (readEnum(SimpleSelectorType.values())) {
+            case ATTRIBUTE:
+                AttributeSelector.Match match = readEnum(AttributeSelector.Match.values());
+                return new AttributeSelector(match, readString(), readString());
+            case LOCAL_NAME:
+                return new LocalNameSelector(readString());
+            case PSEUDO_CLASS:
+                return new PseudoClassSelector(readString());
+            case PSEUDO_ELEMENT:
+                return new PseudoElementSelector(readString());
+            case PSEUDO_NTH:
+                String name = readString();
+                int a = unZigZag(readVarInt());
+                int b = unZigZag(readVarInt());
+                List<Selector> of = null;
+                if (in.readByte() != 0) {
+                    of = readSelectors();
+                }
+
+                return new PseudoNthSelector(name, a, b, of);
+            case PSEUDO_NEGATION:
+                return new PseudoNegationSelector(readSimpleSelector());
+            case PSEUDO_FUNCTION:
+                return new PseudoFunctionSelector(readString(), readString());
+            case PSEUDO_HAS:
+                int count = readCount();
+                ArrayList<Pair<Combinator, Selector>> selectors = new ArrayList<>();
+                for (int i = 0; i < count; ++i) {
+                    Combinator combinator = readEnum(Combinator.values());
+                    selectors.add(new Pair<>(combinator, readSelector()));
+                }
+
+                return new PseudoHasSelector(selectors);
+            case PSEUDO_IS:
+                return new PseudoIsSelector(readString(), readSelectors());
+            default:
+                throw new IOException("Unsupported simple selector type");
+            }
+        }
+
+        String readString() throws IOException {
+            int index = readVarInt();
+            if (index < 0 || index >= strings.length) {
+                throw new IOException("Invalid string index " + index);
+            }
+
+            return strings[index];
+        }
+
+        int readCount() throws IOException {
+            int count = readVarInt();
+            if (count < 0) {
+                throw new IOException("Invalid count " + count);
+            }
+
+            return count;
+        }
+
+        byte[] readBytes(int length) throws IOException {
+            if (length <= CHUNK_SIZE) {
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                return bytes;
+            }
+
+            // A long string is read in chunks so that a bogus length fails at the end of the stream.
+            ByteArrayOutputStream out = new ByteArrayOutputStream(CHUNK_SIZE);
+            byte[] chunk = new byte[CHUNK_SIZE];
+            for (int remaining = length; remaining > 0; remaining -= CHUNK_SIZE) {
+                int size = Math.min(remaining, CHUNK_SIZE);
+                in.readFully(chunk, 0, size);
+                out.write(chunk, 0, size);
+            }
+
+            return out.toByteArray();
+        }
+
+        <E extends Enum<E>> E readEnum(E[] values) throws IOException {
+            int ordinal = in.readUnsignedByte();
+            if (ordinal >= values.length) {
+                throw new IOException("Invalid " + values.getClass().getComponentType().getSimpleName() +
+                        " ordinal " + ordinal);
+            }
+
+            return values[ordinal];
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IOException("Malformed variable length quantity");
+        }
+
+        static int unZigZag(int value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+    }
+
+}
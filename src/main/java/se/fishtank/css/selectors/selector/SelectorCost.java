@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.selector;
+
+import java.util.List;
+
+import se.fishtank.css.selectors.util.Pair;
+
+/**
+ * Static cost estimates for selectors.
+ * <p/>
+ * A cost is the estimated number of units of work needed to match a selector against a single element,
+ * where comparing a local name is one unit. Selectors are matched from right to left, so the estimate of a
+ * compound selector is the cost of its own simple selectors, evaluated in order until one fails, plus the
+ * cost of the compound selectors preceding it weighted by the estimated selectivity of the compound
+ * selector and the number of nodes the combinator steps over. Descendant and later sibling combinators are
+ * assumed to step over {@link #AVERAGE_DEPTH} ancestors and {@link #AVERAGE_SIBLINGS} siblings. The
+ * results of {@code :has()} are cached per element during a query, so a relative selector is assumed to
+ * be matched against the children or the next sibling of an element only.
+ * <p/>
+ * The estimates are only meant for comparing selectors with each other.
+ *
+ * @author Christer Sandberg
+ */
+public class SelectorCost {
+
+    /** The assumed number of ancestors of an element. */
+    public static final int AVERAGE_DEPTH = 8;
+
+    /** The assumed number of preceding siblings of an element. */
+    public static final int AVERAGE_SIBLINGS = 4;
+
+    private SelectorCost() {
+    }
+
+    /**
+     * Returns the estimated cost of matching any of the given selectors.
+     *
+     * @param selectors The selectors.
+     * @return The estimated cost per element.
+     */
+    public static double of(List<Selector> selectors) {
+        double cost = 0;
+        for (Selector selector : selectors) {
+            cost += of(selector);
+        }
+
+        return cost;
+    }
+
+    /**
+     * Returns the estimated cost of matching the given selector.
+     *
+     * @param selector The selector.
+     * @return The estimated cost per element.
+     */
+    public static double of(Selector selector) {
+        return of(selector.compoundSelector);
+    }
+
+    /**
+     * Returns the estimated cost of matching the given compound selector and the compound selectors
+     * preceding it.
+     *
+     * @param selector The compound selector.
+     * @return The estimated cost per element.
+     */
+    public static double of(CompoundSelector selector) {
+        double cost = 0;
+        double selectivity = 1;
+        for (SimpleSelector simpleSelector : selector.simpleSelectors) {
+            cost += selectivity * of(simpleSelector);
+            selectivity *= selectivity(simpleSelector);
+        }
+
+        if (selector.previous != null) {
+            cost += selectivity * steps(selector.previous.first) * of(selector.previous.second);
+        }
+
+        return cost;
+    }
+
+    /**
+     * Returns the estimated cost of matching the given simple selector.
+     *
+     * @param selector The simple selector.
+     * @return The estimated cost.
+     */
+    public static double of(SimpleSelector selector) {
+        switch (selector.getType()) {
+        case LOCAL_NAME:
+            return 1;
+        case ATTRIBUTE:
+            return ((AttributeSelector) selector).match == AttributeSelector.Match.INCLUDES ? 4 : 2;
+        case PSEUDO_CLASS:
+            switch (((PseudoClassSelector) selector).value) {
+            case "first-of-type":
+            case "last-of-type":
+                return AVERAGE_SIBLINGS;
+            case "only-of-type":
+                return 2 * AVERAGE_SIBLINGS;
+            default:
+                return 2;
+            }
+        case PSEUDO_NTH:
+            // The indexes among the siblings matching "of S" are computed once per parent.
+            List<Selector> selectors = ((PseudoNthSelector) selector).selectors;
+            return selectors == null ? AVERAGE_SIBLINGS : AVERAGE_SIBLINGS + of(selectors);
+        case PSEUDO_NEGATION:
+            return of(((PseudoNegationSelector) selector).selector);
+        case PSEUDO_ELEMENT:
+            return 0;
+        case PSEUDO_HAS:
+            double cost = 0;
+            for (Pair<Combinator, Selector> relative : ((PseudoHasSelector) selector).selectors) {
+                int steps = relative.first == Combinator.CHILD || relative.first == Combinator.DESCENDANT
+                        ? AVERAGE_SIBLINGS : 1;
+                cost += steps * of(relative.second);
+            }
+
+            return cost;
+        case PSEUDO_IS:
+            // The selectors are looked up by the id, class or local name of their rightmost compound.
+            cost = 2;
+            for (Selector s : ((PseudoIsSelector) selector).selectors) {
+                cost += selectivity(s.compoundSelector) * of(s);
+            }
+
+            return cost;
+        default:
+            return 4;
+        }
+    }
+
+    /**
+     * Returns the estimated fraction of elements matched by the given simple selector.
+     *
+     * @param selector The simple selector.
+     * @return The estimated selectivity between {@code 0} and {@code 1}
+     */
+    public static double selectivity(SimpleSelector selector) {
+        switch (selector.getType()) {
+        case LOCAL_NAME:
+            return "*".equals(((LocalNameSelector) selector).name) ? 1 : 0.2;
+        case ATTRIBUTE:
+            AttributeSelector attributeSelector = (AttributeSelector) selector;
+            if (attributeSelector.match == AttributeSelector.Match.EQUALS && attributeSelector.name.equals("id")) {
+                return 0.01;
+            }
+
+            if (attributeSelector.match == AttributeSelector.Match.INCLUDES &&
+                    attributeSelector.name.equals("class")) {
+                return 0.1;
+            }
+
+            return 0.3;
+        case PSEUDO_NEGATION:
+            return 1 - selectivity(((PseudoNegationSelector) selector).selector);
+        case PSEUDO_ELEMENT:
+            return 1;
+        case PSEUDO_IS:
+            double none = 1;
+            for (Selector s : ((PseudoIsSelector) selector).selectors) {
+                none *= 1 - selectivity(s.compoundSelector);
+            }
+
+            return 1 - none;
+        default:
+            return 0.5;
+        }
+    }
+
+    /**
+     * Returns the estimated selectivity of the simple selectors of the given compound selector.
+     *
+     * @param selector The compound selector.
+     * @return The estimated selectivity between {@code 0} and {@code 1}
+     */
+    public static double selectivity(CompoundSelector selector) {
+        double selectivity = 1;
+        for (SimpleSelector simpleSelector : selector.simpleSelectors) {
+            selectivity *= selectivity(simpleSelector);
+        }
+
+        return selectivity;
+    }
+
+    /**
+     * Returns the estimated number of nodes stepped over by the given combinator.
+     *
+     * @param combinator The combinator.
+     * @return The estimated number of steps.
+     */
+    public static int steps(Combinator combinator) {
+        switch (combinator) {
+        case DESCENDANT:
+            return AVERAGE_DEPTH;
+        case LATER_SIBLING:
+            return AVERAGE_SIBLINGS;
+        default:
+            return 1;
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.selector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import se.fishtank.css.selectors.util.Pair;
+
+/**
+ * Interning factory sharing structurally equal selectors.
+ * <p/>
+ * Every selector, compound selector, simple selector and string passed through an interner is replaced
+ * by a canonical instance, so selectors parsed from different rules share their common parts. Since the
+ * selectors cache their hash codes and compare identity first, equality checks and deduplication of
+ * interned selectors are cheap.
+ * <p/>
+ * Simple selectors of other implementations than the ones in this package are interned as is.
+ * <p/>
+ * An interner is not thread safe and holds on to every canonical instance for as long as it is reachable.
+ *
+ * @author Christer Sandberg
+ */
+public class SelectorInterner {
+
+    /** Canonical strings. */
+    private final HashMap<String, String> strings = new HashMap<>();
+
+    /** Canonical simple selectors. */
+    private final HashMap<SimpleSelector, SimpleSelector> simpleSelectors = new HashMap<>();
+
+    /** Canonical compound selectors. */
+    private final HashMap<CompoundSelector, CompoundSelector> compoundSelectors = new HashMap<>();
+
+    /** Canonical selectors. */
+    private final HashMap<Selector, Selector> selectors = new HashMap<>();
+
+    /** Canonical selector lists. */
+    private final HashMap<List<Selector>, List<Selector>> selectorLists = new HashMap<>();
+
+    /**
+     * Interns a selector list.
+     *
+     * @param selectors The selectors to intern.
+     * @return The canonical immutable selector list.
+     */
+    public List<Selector> intern(List<Selector> selectors) {
+        List<Selector> canonical = selectorLists.get(selectors);
+        if (canonical != null) {
+            return canonical;
+        }
+
+        Selector[] array = new Selector[selectors.size()];
+        int i = 0;
+        for (Selector selector : selectors) {
+            array[i++] = intern(selector);
+        }
+
+        canonical = Collections.unmodifiableList(Arrays.asList(array));
+        selectorLists.put(canonical, canonical);
+        return canonical;
+    }
+
+    /**
+     * Interns a selector.
+     *
+     * @param selector The selector to intern.
+     * @return The canonical selector.
+     */
+    public Selector intern(Selector selector) {
+        Selector canonical = selectors.get(selector);
+        if (canonical != null) {
+            return canonical;
+        }
+
+        PseudoElementSelector pseudoElement = selector.pseudoElement;
+        if (pseudoElement != null) {
+            pseudoElement = (PseudoElementSelector) intern(pseudoElement);
+        }
+
+        canonical = new Selector(intern(selector.compoundSelector), pseudoElement);
+        selectors.put(canonical, canonical);
+        return canonical;
+    }
+
+    /**
+     * Interns a compound selector and the compound selectors preceding it.
+     *
+     * @param compoundSelector The compound selector to intern.
+     * @return The canonical compound selector.
+     */
+    public CompoundSelector intern(CompoundSelector compoundSelector) {
+        CompoundSelector canonical = compoundSelectors.get(compoundSelector);
+        if (canonical != null) {
+            return canonical;
+        }
+
+        ArrayList<SimpleSelector> list = new ArrayList<>(compoundSelector.simpleSelectors.size());
+        for (SimpleSelector simpleSelector : compoundSelector.simpleSelectors) {
+            list.add(intern(simpleSelector));
+        }
+
+        Pair<Combinator, CompoundSelector> previous = compoundSelector.previous;
+        if (previous != null) {
+            previous = new Pair<>(previous.first, intern(previous.second));
+        }
+
+        canonical = new CompoundSelector(list, previous);
+        compoundSelectors.put(canonical, canonical);
+        return canonical;
+    }
+
+    /**
+     * Interns a simple selector.
+     *
+     * @param simpleSelector The simple selector to intern.
+     * @return The canonical simple selector.
+     */
+    public SimpleSelector intern(SimpleSelector simpleSelector) {
+        SimpleSelector canonical = simpleSelectors.get(simpleSelector);
+        if (canonical != null) {
+            return canonical;
+        }
+
+        Class<?> type = simpleSelector.getClass();
+        if (type == AttributeSelector.class) {
+            AttributeSelector attributeSelector = (AttributeSelector) simpleSelector;
+            canonical = new AttributeSelector(attributeSelector.match, intern(attributeSelector.name),
+                    intern(attributeSelector.value));
+        } else if (type == LocalNameSelector.class) {
+            canonical = new LocalNameSelector(intern(((LocalNameSelector) simpleSelector).name));
+        } else if (type == PseudoClassSelector.class) {
+            canonical = new PseudoClassSelector(intern(((PseudoClassSelector) simpleSelector).value));
+        } else if (type == PseudoElementSelector.class) {
+            canonical = new PseudoElementSelector(intern(((PseudoElementSelector) simpleSelector).value));
+        } else if (type == PseudoNthSelector.class) {
+            PseudoNthSelector nthSelector = (PseudoNthSelector) simpleSelector;
+            List<Selector> of = nthSelector.selectors == null ? null : intern(nthSelector.selectors);
+            canonical = new PseudoNthSelector(intern(nthSelector.name), nthSelector.a, nthSelector.b, of);
+        } else if (type == PseudoNegationSelector.class) {
+            canonical = new PseudoNegationSelector(intern(((PseudoNegationSelector) simpleSelector).selector));
+        } else if (type == PseudoFunctionSelector.class) {
+            PseudoFunctionSelector functionSelector = (PseudoFunctionSelector) simpleSelector;
+            canonical = new PseudoFunctionSelector(intern(functionSelector.name),
+                    intern(functionSelector.arguments));
+        } else if (type == PseudoHasSelector.class) {
+            List<Pair<Combinator, Selector>> relatives = ((PseudoHasSelector) simpleSelector).selectors;
+            ArrayList<Pair<Combinator, Selector>> list = new ArrayList<>(relatives.size());
+            for (Pair<Combinator, Selector> relative : relatives) {
+                list.add(new Pair<>(relative.first, intern(relative.second)));
+            }
+
+            canonical = new PseudoHasSelector(list);
+        } else if (type == PseudoIsSelector.class) {
+            PseudoIsSelector isSelector = (PseudoIsSelector) simpleSelector;
+            canonical = new PseudoIsSelector(intern(isSelector.name), intern(isSelector.selectors));
+        } else {
+            canonical = simpleSelector;
+        }
+
+        simpleSelectors.put(canonical, canonical);
+        return canonical;
+    }
+
+    /**
+     * Interns a string.
+     *
+     * @param str The string to intern or {@code null}
+     * @return The canonical string or {@code null}
+     */
+    public String intern(String str) {
+        if (str == null) {
+            return null;
+        }
+
+        String canonical = strings.get(str);
+        if (canonical == null) {
+            canonical = str;
+            strings.put(canonical, canonical);
+        }
+
+        return canonical;
+    }
+
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.selector;
+
+import se.fishtank.css.selectors.tokenizer.Tokenizer;
+
+/**
+ * Serialization of identifiers and strings used when serializing selectors.
+ * <p/>
+ * See <a href="http://www.w3.org/TR/cssom-1/#common-serializing-idioms">http://www.w3.org/TR/cssom-1/#common-serializing-idioms</a>
+ *
+ * @author Christer Sandberg
+ */
+final class Serialization {
+
+    private Serialization() {
+    }
+
+    /**
+     * Appends the given identifier, escaped as needed.
+     *
+     * @param sb The buffer to append to.
+     * @param ident The identifier.
+     * @return The given buffer.
+     */
+    static StringBuilder appendIdentifier(StringBuilder sb, String ident) {
+        int len = ident.length();
+        if (len == 1 && ident.charAt(0) == '-') {
+            return sb.append("\\-");
+        }
+
+        for (int i = 0; i < len; ++i) {
+            char c = ident.charAt(i);
+            if (c == 0) {
+                sb.append(Tokenizer.REPLACEMENT_CHAR);
+            } else if (c < 0x20 || c == 0x7F) {
+                appendCodePoint(sb, c);
+            } else if (c >= '0' && c <= '9' && (i == 0 || (i == 1 && ident.charAt(0) == '-'))) {
+                appendCodePoint(sb, c);
+            } else if (c >= 0x80 || c == '-' || c == '_' || (c >= '0' && c <= '9') ||
+                    (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                sb.append(c);
+            } else {
+                sb.append('\\').append(c);
+            }
+        }
+
+        return sb;
+    }
+
+    /**
+     * Appends the given string as a double quoted string.
+     *
+     * @param sb The buffer to append to.
+     * @param str The string.
+     * @return The given buffer.
+     */
+    static StringBuilder appendString(StringBuilder sb, String str) {
+        sb.append('"');
+        for (int i = 0; i < str.length(); ++i) {
+            char c = str.charAt(i);
+            if (c == 0) {
+                sb.append(Tokenizer.REPLACEMENT_CHAR);
+            } else if (c < 0x20 || c == 0x7F) {
+                appendCodePoint(sb, c);
+            } else if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else {
+                sb.append(c);
+            }
+        }
+
+        return sb.append('"');
+    }
+
+    /**
+     * Returns whether the given string can be serialized as an identifier without any escapes.
+     *
+     * @param str The string.
+     * @return {@code true} or {@code false}
+     */
+    static boolean isPlainIdentifier(String str) {
+        if (str.isEmpty() || str.equals("-")) {
+            return false;
+        }
+
+        for (int i = 0; i < str.length(); ++i) {
+            char c = str.charAt(i);
+            boolean digit = c >= '0' && c <= '9';
+            if (digit && (i == 0 || (i == 1 && str.charAt(0) == '-'))) {
+                return false;
+            }
+
+            if (!(digit || c >= 0x80 || c == '-' || c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z'))) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static void appendCodePoint(StringBuilder sb, char c) {
+        sb.append('\\').append(Integer.toHexString(c)).append(' ');
+    }
+
+}
@@ -10,6 +10,7 @@ package se.fishtank.css.selectors.selector;
  */
 public enum SimpleSelectorType {
 
-    ATTRIBUTE, LOCAL_NAME, PSEUDO_CLASS, PSEUDO_ELEMENT, PSEUDO_NTH, PSEUDO_NEGATION, PSEUDO_FUNCTION
+    ATTRIBUTE, LOCAL_NAME, PSEUDO_CLASS, PSEUDO_ELEMENT, PSEUDO_NTH, PSEUDO_NEGATION, PSEUDO_FUNCTION, PSEUDO_HAS,
+    PSEUDO_IS
 
 }
@@ -7,6 +7,14 @@ import java.util.regex.Pattern;
 
 /**
  * A CSS tokenizer according to <a href="http://www.w3.org/TR/css-syntax-3/">http://www.w3.org/TR/css-syntax-3/</a>
+ * <p/>
+ * The tokenizer operates directly on the given character sequence without copying it. Input preprocessing
+ * (see http://www.w3.org/TR/css-syntax-3/#input-preprocessing) is applied lazily as code points are consumed.
+ * <p/>
+ * Besides {@link #nextToken()}, which returns a {@link Token} object for each token, the tokenizer provides
+ * a pull API: {@link #advance()} moves to the next token without creating any objects and the current
+ * token is then described by its type, its offsets in the input and a few flags. String values are only
+ * created on demand by {@link #getTokenValue()} and {@link #getTokenUnit()}
  *
  * @author Christer Sandberg
  */
@@ -21,25 +29,105 @@ public class Tokenizer {
     /** End of file token. */
     public static final Token EOF_TOKEN = new Token(TokenType.EOF, EOF, "");
 
-    /** Regex used to preprocess the input (see http://www.w3.org/TR/css-syntax-3/#input-preprocessing). */
+    /**
+     * Regex used to preprocess the input (see http://www.w3.org/TR/css-syntax-3/#input-preprocessing).
+     *
+     * @deprecated The input is preprocessed as code points are consumed and this regex is no longer used.
+     */
+    @Deprecated
     public static final Pattern PREPROCESS_REGEX = Pattern.compile("\\f|\\r\\n?");
 
-    /** The input to tokenize. */
-    public final String input;
+    /**
+     * The input to tokenize.
+     * <p/>
+     * This is the character sequence given to the constructor, without any preprocessing applied. Before
+     * version 2.1 this was the preprocessed input as a {@code String}
+     */
+    public final CharSequence input;
+
+    /** The start offset in the input. */
+    private final int start;
+
+    /** The end offset (exclusive) in the input. */
+    private final int end;
 
     /** The current position. */
-    private int pos = 0;
+    private int pos;
 
     /** The current mark. */
-    private int mark = 0;
+    private int mark;
+
+    /** The type of the current token or {@code null} if no token has been scanned. */
+    private TokenType tokenType;
+
+    /** The start offset of the current token. */
+    private int tokenStart;
+
+    /** The end offset (exclusive) of the current token. */
+    private int tokenEnd;
+
+    /** The start offset of the value of the current token. */
+    private int valueStart;
+
+    /** The end offset (exclusive) of the value of the current token. */
+    private int valueEnd;
+
+    /** The <i>id</i> type flag of a hash token or the <i>integer</i> type flag of a numeric token. */
+    private boolean tokenFlag;
+
+    /** The code point of a delimiter token. */
+    private int tokenCodePoint;
+
+    /** The start of a Unicode range token. */
+    private int rangeStart;
+
+    /** The end of a Unicode range token. */
+    private int rangeEnd;
+
+    /** If the value of the current token differs from its raw input because of escapes or preprocessing. */
+    private boolean tokenEscaped;
+
+    /** The value of the current token if it has been created. */
+    private String tokenValue;
+
+    /** The unit of the current dimension token if it has been created. */
+    private String tokenUnit;
+
+    /** If the current token has been pushed back. */
+    private boolean pushedBack;
+
+    /** Buffer used when decoding token values. */
+    private final StringBuilder buffer = new StringBuilder();
 
     /**
      * Create a new tokenizer.
      *
      * @param input The input to tokenize.
      */
-    public Tokenizer(String input) {
-        this.input = PREPROCESS_REGEX.matcher(input).replaceAll("\n").replace('\u0000', REPLACEMENT_CHAR);
+    public Tokenizer(CharSequence input) {
+        this(input, 0, input.length());
+    }
+
+    /**
+     * Create a new tokenizer for a region of the given input.
+     * <p/>
+     * Token positions are offsets into {@code input} and not relative to {@code start}.
+     *
+     * @param input The input to tokenize.
+     * @param start The start offset in the input.
+     * @param end The end offset (exclusive) in the input.
+     */
+    public Tokenizer(CharSequence input, int start, int end) {
+        if (start < 0 || end > input.length() || start > end) {
+            throw new IndexOutOfBoundsException("Invalid region [" + start + ", " + end + ") of length " +
+                    input.length());
+        }
+
+        this.input = input;
+        this.start = start;
+        this.end = end;
+        this.pos = start;
+        this.mark = start;
     }
 
     /**
@@ -52,11 +140,22 @@ public class Tokenizer {
     }
 
     /**
-     * Resets the position to {@code 0}
+     * Returns the end offset (exclusive) of the input.
+     *
+     * @return The end offset.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * Resets the position to the start of the input.
      */
     public void reset() {
-        this.pos = 0;
-        this.mark = 0;
+        this.pos = this.start;
+        this.mark = this.start;
+        this.tokenType = null;
+        this.pushedBack = false;
     }
 
     /**
@@ -164,183 +263,558 @@ public class Tokenizer {
      * @return {@code true} or {@code false}
      */
     public boolean isEof() {
-        return this.pos >= this.input.length();
+        return this.pos >= this.end;
     }
 
+
     /**
      * Returns the next token.
      *
      * @return The next token.
      */
     public Token nextToken() {
-        if (isEof()) {
+        if (this.pushedBack) {
+            this.pushedBack = false;
+        } else {
+            this.buffer.setLength(0);
+            scan(this.buffer);
+            switch (this.tokenType) {
+            case AT_KEYWORD:
+            case BAD_URL:
+            case FUNCTION:
+            case HASH:
+            case IDENT:
+            case STRING:
+            case URL:
+                this.tokenValue = this.buffer.toString();
+                break;
+            case DIMENSION:
+                this.tokenUnit = this.buffer.toString();
+                break;
+            }
+        }
+
+        switch (this.tokenType) {
+        case EOF:
             return EOF_TOKEN;
+        case HASH:
+            return new Token.Hash(this.tokenStart, getTokenValue(), this.tokenFlag);
+        case NUMBER:
+            return Token.Number.number(this.tokenStart, getTokenValue(), this.tokenFlag);
+        case PERCENTAGE:
+            return Token.Number.percentage(this.tokenStart, getTokenValue(), this.tokenFlag);
+        case DIMENSION:
+            return new Token.Dimension(this.tokenStart, getTokenValue(), this.tokenFlag, getTokenUnit());
+        case UNICODE_RANGE:
+            return new Token.UnicodeRange(this.tokenStart, this.rangeStart, this.rangeEnd);
+        default:
+            return new Token(this.tokenType, this.tokenStart, getTokenValue());
         }
+    }
+
+    /**
+     * Advances to the next token without creating any objects.
+     *
+     * @return The type of the next token.
+     */
+    public TokenType advance() {
+        if (this.pushedBack) {
+            this.pushedBack = false;
+        } else {
+            scan(null);
+        }
+
+        return this.tokenType;
+    }
+
+    /**
+     * Pushes back the current token so that it's returned again by the next call
+     * to {@link #advance()} or {@link #nextToken()}
+     *
+     * @throws IllegalStateException If there is no current token or it has already been pushed back.
+     */
+    public void pushBack() {
+        if (this.tokenType == null || this.pushedBack) {
+            throw new IllegalStateException("No token to push back");
+        }
+
+        this.pushedBack = true;
+    }
+
+    /**
+     * Returns the type of the current token.
+     *
+     * @return The token type or {@code null} if no token has been scanned.
+     */
+    public TokenType getTokenType() {
+        return tokenType;
+    }
+
+    /**
+     * Returns the start offset of the current token in the input.
+     *
+     * @return The start offset.
+     */
+    public int getTokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * Returns the end offset (exclusive) of the current token in the input.
+     *
+     * @return The end offset.
+     */
+    public int getTokenEnd() {
+        return tokenEnd;
+    }
 
-        skipComments();
+    /**
+     * Returns the string value of the current token, i.e. the value of the
+     * corresponding {@link Token#value}
+     * <p/>
+     * The value is created on first request.
+     *
+     * @return The token value.
+     */
+    public String getTokenValue() {
+        if (this.tokenValue == null) {
+            this.tokenValue = decodeValue();
+        }
+
+        return this.tokenValue;
+    }
+
+    /**
+     * Returns whether the string value of the current token equals the given string ignoring case.
+     * <p/>
+     * Unless the value contains escapes no string will be created.
+     *
+     * @param str The string to compare with.
+     * @return {@code true} or {@code false}
+     */
+    public boolean tokenValueEqualsIgnoreCase(String str) {
+        if (this.tokenValue == null && hasRawValue()) {
+            return regionEqualsIgnoreCase(this.valueStart, this.valueEnd, str);
+        }
+
+        return getTokenValue().equalsIgnoreCase(str);
+    }
+
+    /**
+     * Returns the code point of the current {@linkplain TokenType#DELIM} token.
+     *
+     * @return The code point or {@link #EOF} if the current token isn't a delimiter.
+     */
+    public int getTokenDelimiter() {
+        return this.tokenType == TokenType.DELIM ? this.tokenCodePoint : EOF;
+    }
+
+    /**
+     * Returns whether the current {@linkplain TokenType#HASH} token has the type flag <i>id</i>
+     *
+     * @return {@code true} or {@code false}
+     */
+    public boolean isTokenId() {
+        return this.tokenType == TokenType.HASH && this.tokenFlag;
+    }
+
+    /**
+     * Returns whether the current numeric token has the type flag <i>integer</i>
+     *
+     * @return {@code true} or {@code false}
+     */
+    public boolean isTokenInteger() {
+        switch (this.tokenType) {
+        case NUMBER:
+        case PERCENTAGE:
+        case DIMENSION:
+            return this.tokenFlag;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Returns the unit of the current {@linkplain TokenType#DIMENSION} token.
+     * <p/>
+     * The unit is created on first request.
+     *
+     * @return The unit or {@code null} if the current token isn't a dimension.
+     */
+    public String getTokenUnit() {
+        if (this.tokenType != TokenType.DIMENSION) {
+            return null;
+        }
+
+        if (this.tokenUnit == null) {
+            if (this.tokenEscaped) {
+                this.tokenUnit = rescan();
+            } else {
+                this.tokenUnit = this.input.subSequence(this.valueEnd, this.tokenEnd).toString();
+            }
+        }
+
+        return this.tokenUnit;
+    }
+
+    /**
+     * Returns the start of the current {@linkplain TokenType#UNICODE_RANGE} token.
+     *
+     * @return The start of the range.
+     */
+    public int getTokenRangeStart() {
+        return rangeStart;
+    }
+
+    /**
+     * Returns the end of the current {@linkplain TokenType#UNICODE_RANGE} token.
+     *
+     * @return The end of the range.
+     */
+    public int getTokenRangeEnd() {
+        return rangeEnd;
+    }
+
+    /**
+     * Scans the next token.
+     *
+     * @param sb Buffer to append the decoded value to or {@code null}
+     */
+    private void scan(StringBuilder sb) {
+        this.tokenValue = null;
+        this.tokenUnit = null;
+        this.tokenEscaped = false;
+        this.tokenFlag = false;
+        if (!isEof()) {
+            skipComments();
+        }
+
+        this.tokenStart = this.pos;
+        scanToken(sb);
+        this.tokenEnd = this.pos;
+    }
+
+    /**
+     * Scans the token at the current position.
+     *
+     * @param sb Buffer to append the decoded value to or {@code null}
+     */
+    private void scanToken(StringBuilder sb) {
         if (isEof()) {
-            return EOF_TOKEN;
+            this.tokenType = TokenType.EOF;
+            return;
         }
 
-        int p = this.pos;
         int n = skipSpace();
         if (n > 0) {
-            return new Token(TokenType.WHITESPACE, p, "");
+            this.tokenType = TokenType.WHITESPACE;
+            return;
         }
 
         mark();
         int c = next();
         switch (c) {
         case '"':
+        case '\'':
             setPositionToMark();
-            return consumeStringToken(false);
+            consumeStringToken(sb);
+            return;
         case '#':
             if (isIdentStart()) {
-                return new Token.Hash(p, consumeName(), true);
+                consumeHash(sb, true);
+                return;
             }
 
-            int[] d = peek2();
-            if (isName(d[0]) || isValidEscape(d[0], d[1])) {
-                return new Token.Hash(p, consumeName(), false);
+            if (isName(peek()) || isValidEscape(peek(0), peek(1))) {
+                consumeHash(sb, false);
+                return;
             }
 
-            return new Token(TokenType.DELIM, p, "#");
+            break;
         case '$':
-            if (peek() == '=') {
-                next();
-                return new Token(TokenType.SUFFIX_MATCH, p, "$=");
+            if (consumeMatch(TokenType.SUFFIX_MATCH)) {
+                return;
             }
 
-            return new Token(TokenType.DELIM, p, "$");
-        case '\'':
-            setPositionToMark();
-            return consumeStringToken(true);
+            break;
         case '(':
-            return new Token(TokenType.LEFT_PAREN, p, "(");
+            this.tokenType = TokenType.LEFT_PAREN;
+            return;
         case ')':
-            return new Token(TokenType.RIGHT_PAREN, p, ")");
+            this.tokenType = TokenType.RIGHT_PAREN;
+            return;
         case '*':
-            if (peek() == '=') {
-                next();
-                return new Token(TokenType.SUBSTRING_MATCH, p, "*=");
+            if (consumeMatch(TokenType.SUBSTRING_MATCH)) {
+                return;
             }
 
-            return new Token(TokenType.DELIM, p, "*");
+            break;
         case '+':
             setPositionToMark();
             if (isNumberStart()) {
-                return consumeNumericToken();
+                consumeNumericToken(sb);
+                return;
             }
 
             next();
-            return new Token(TokenType.DELIM, p, "+");
+            break;
         case ',':
-            return new Token(TokenType.COMMA, p, ",");
+            this.tokenType = TokenType.COMMA;
+            return;
         case '-':
             setPositionToMark();
             if (isNumberStart()) {
-                return consumeNumericToken();
+                consumeNumericToken(sb);
+                return;
             }
 
             if (isIdentStart()) {
-                return consumeIdentLikeToken();
+                consumeIdentLikeToken(sb);
+                return;
             }
 
             if (consume("-->")) {
-                return new Token(TokenType.CDC, p, "-->");
+                this.tokenType = TokenType.CDC;
+                return;
             }
 
             next();
-            return new Token(TokenType.DELIM, p, "-");
+            break;
         case '.':
             setPositionToMark();
             if (isNumberStart()) {
-                return consumeNumericToken();
+                consumeNumericToken(sb);
+                return;
             }
 
             next();
-            return new Token(TokenType.DELIM, p, ".");
+            break;
         case ':':
-            return new Token(TokenType.COLON, p, ":");
+            this.tokenType = TokenType.COLON;
+            return;
         case ';':
-            return new Token(TokenType.SEMICOLON, p, ";");
+            this.tokenType = TokenType.SEMICOLON;
+            return;
         case '<':
             if (consume("!--")) {
-                return new Token(TokenType.CDO, p, "<!--");
+                this.tokenType = TokenType.CDO;
+                return;
             }
 
-            return new Token(TokenType.DELIM, p, "<");
+            break;
         case '@':
             if (isIdentStart()) {
-                return new Token(TokenType.AT_KEYWORD, p, consumeName());
+                this.valueStart = this.pos;
+                consumeName(sb);
+                this.valueEnd = this.pos;
+                this.tokenType = TokenType.AT_KEYWORD;
+                return;
             }
 
-            return new Token(TokenType.DELIM, p, "@");
+            break;
         case '[':
-            return new Token(TokenType.LEFT_SQUARE_BRACKET, p, "[");
+            this.tokenType = TokenType.LEFT_SQUARE_BRACKET;
+            return;
         case ']':
-            return new Token(TokenType.RIGHT_SQUARE_BRACKET, p, "]");
+            this.tokenType = TokenType.RIGHT_SQUARE_BRACKET;
+            return;
         case '\\':
             if (isValidEscape('\\', peek())) {
                 setPositionToMark();
-                return consumeIdentLikeToken();
+                consumeIdentLikeToken(sb);
+                return;
             }
 
-            return new Token(TokenType.DELIM, p, "\\");
+            break;
         case '^':
-            if (peek() == '=') {
-                next();
-                return new Token(TokenType.PREFIX_MATCH, p, "^=");
+            if (consumeMatch(TokenType.PREFIX_MATCH)) {
+                return;
             }
 
-            return new Token(TokenType.DELIM, p, "^");
+            break;
         case '{':
-            return new Token(TokenType.LEFT_CURLY_BRACKET, p, "{");
+            this.tokenType = TokenType.LEFT_CURLY_BRACKET;
+            return;
         case '}':
-            return new Token(TokenType.RIGHT_CURLY_BRACKET, p, "}");
+            this.tokenType = TokenType.RIGHT_CURLY_BRACKET;
+            return;
         case '|':
             int x = peek();
             switch (x) {
             case '=':
                 next();
-                return new Token(TokenType.DASH_MATCH, p, "|=");
+                this.tokenType = TokenType.DASH_MATCH;
+                return;
             case '|':
                 next();
-                return new Token(TokenType.COLUMN, p, "||");
+                this.tokenType = TokenType.COLUMN;
+                return;
             }
 
-            return new Token(TokenType.DELIM, p, "|");
+            break;
         case '~':
-            if (peek() == '=') {
-                next();
-                return new Token(TokenType.INCLUDE_MATCH, p, "~=");
+            if (consumeMatch(TokenType.INCLUDE_MATCH)) {
+                return;
+            }
+
+            break;
+        default:
+            if (isDigit(c)) {
+                setPositionToMark();
+                consumeNumericToken(sb);
+                return;
             }
 
-            return new Token(TokenType.DELIM, p, "~");
+            if (c == 'U' || c == 'u') {
+                if (peek(0) == '+' && (peek(1) == '?' || isHexDigit(peek(1)))) {
+                    next(); // Consume the '+'
+                    consumeUnicodeRangeToken();
+                    return;
+                }
+
+                setPositionToMark();
+                consumeIdentLikeToken(sb);
+                return;
+            }
+
+            if (isNameStart(c)) {
+                setPositionToMark();
+                consumeIdentLikeToken(sb);
+                return;
+            }
         }
 
-        if (isDigit(c)) {
-            setPositionToMark();
-            return consumeNumericToken();
+        this.tokenType = TokenType.DELIM;
+        this.tokenCodePoint = c;
+    }
+
+    /**
+     * Returns whether the value of the current token is its raw input between
+     * {@link #valueStart} and {@link #valueEnd}
+     *
+     * @return {@code true} or {@code false}
+     */
+    private boolean hasRawValue() {
+        switch (this.tokenType) {
+        case AT_KEYWORD:
+        case BAD_URL:
+        case FUNCTION:
+        case HASH:
+        case IDENT:
+        case STRING:
+        case URL:
+            return !this.tokenEscaped;
+        case NUMBER:
+        case PERCENTAGE:
+        case DIMENSION:
+            return true;
+        default:
+            return false;
         }
+    }
 
-        if (c == 'U' || c == 'u') {
-            int[] e = peek2();
-            if (e[0] == '+' && (e[1] == '?' || isHexDigit(e[1]))) {
-                next(); // Consume the '+'
-                return consumeUnicodeRangeToken();
-            }
+    /**
+     * Creates the string value of the current token.
+     *
+     * @return The token value.
+     */
+    private String decodeValue() {
+        if (hasRawValue()) {
+            return this.input.subSequence(this.valueStart, this.valueEnd).toString();
+        }
 
-            setPositionToMark();
-            return consumeIdentLikeToken();
+        switch (this.tokenType) {
+        case AT_KEYWORD:
+        case BAD_URL:
+        case FUNCTION:
+        case HASH:
+        case IDENT:
+        case STRING:
+        case URL:
+            return rescan();
+        case CDC:
+            return "-->";
+        case CDO:
+            return "<!--";
+        case COLON:
+            return ":";
+        case COLUMN:
+            return "||";
+        case COMMA:
+            return ",";
+        case DASH_MATCH:
+            return "|=";
+        case DELIM:
+            return String.copyValueOf(Character.toChars(this.tokenCodePoint));
+        case INCLUDE_MATCH:
+            return "~=";
+        case LEFT_CURLY_BRACKET:
+            return "{";
+        case LEFT_PAREN:
+            return "(";
+        case LEFT_SQUARE_BRACKET:
+            return "[";
+        case PREFIX_MATCH:
+            return "^=";
+        case RIGHT_CURLY_BRACKET:
+            return "}";
+        case RIGHT_PAREN:
+            return ")";
+        case RIGHT_SQUARE_BRACKET:
+            return "]";
+        case SEMICOLON:
+            return ";";
+        case SUBSTRING_MATCH:
+            return "*=";
+        case SUFFIX_MATCH:
+            return "$=";
+        case UNICODE_RANGE:
+            return String.format("U+%04X-U+%04X", this.rangeStart, this.rangeEnd);
+        default:
+            return "";
         }
+    }
 
-        if (isNameStart(c)) {
-            setPositionToMark();
-            return consumeIdentLikeToken();
+    /**
+     * Scans the current token once more and returns its decoded value.
+     * <p/>
+     * For a dimension token the decoded value is its unit.
+     *
+     * @return The decoded value.
+     */
+    private String rescan() {
+        int p = this.pos;
+        this.pos = this.tokenStart;
+        this.buffer.setLength(0);
+        scanToken(this.buffer);
+        this.pos = p;
+        return this.buffer.toString();
+    }
+
+    /**
+     * Returns whether the input between {@code from} and {@code to} equals the given string ignoring case.
+     *
+     * @param from The start offset in the input.
+     * @param to The end offset (exclusive) in the input.
+     * @param str The string to compare with.
+     * @return {@code true} or {@code false}
+     */
+    private boolean regionEqualsIgnoreCase(int from, int to, String str) {
+        int len = str.length();
+        if (to - from != len) {
+            return false;
         }
 
-        return new Token(TokenType.DELIM, p, String.copyValueOf(Character.toChars(c)));
+        for (int i = 0; i < len; ++i) {
+            char a = this.input.charAt(from + i);
+            char b = str.charAt(i);
+            if (a != b && Character.toUpperCase(a) != Character.toUpperCase(b) &&
+                    Character.toLowerCase(a) != Character.toLowerCase(b)) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     /**
@@ -359,6 +833,9 @@ public class Tokenizer {
 
     /**
      * Consumes and returns the next code point in the input.
+     * <p/>
+     * A {@code CR}, {@code FF} or {@code CR LF} is returned as a single {@code LF} and a {@code NULL}
+     * as {@link #REPLACEMENT_CHAR}
      *
      * @return The next code point in the input.
      */
@@ -367,8 +844,29 @@ public class Tokenizer {
             return EOF;
         }
 
-        int c = this.input.codePointAt(this.pos);
-        this.pos += Character.charCount(c);
+        char c = this.input.charAt(this.pos++);
+        switch (c) {
+        case '\r':
+            if (this.pos < this.end && this.input.charAt(this.pos) == '\n') {
+                ++this.pos;
+            }
+
+            return '\n';
+        case '\f':
+            return '\n';
+        case '\u0000':
+            this.tokenEscaped = true;
+            return REPLACEMENT_CHAR;
+        }
+
+        if (Character.isHighSurrogate(c) && this.pos < this.end) {
+            char d = this.input.charAt(this.pos);
+            if (Character.isLowSurrogate(d)) {
+                ++this.pos;
+                return Character.toCodePoint(c, d);
+            }
+        }
+
         return c;
     }
 
@@ -385,25 +883,18 @@ public class Tokenizer {
     }
 
     /**
-     * Returns the next two code points in the input without consuming them.
+     * Returns the code point {@code n} code points ahead in the input without consuming anything.
      *
-     * @return The next two code points in the input.
+     * @param n The number of code points to skip, {@code 0} returns the next code point.
+     * @return The code point.
      */
-    private int[] peek2() {
+    private int peek(int n) {
         int p = this.pos;
-        int[] c = new int[] { next(), next() };
-        this.pos = p;
-        return c;
-    }
+        for (int i = 0; i < n; ++i) {
+            next();
+        }
 
-    /**
-     * Returns the next three code points in the input without consuming them.
-     *
-     * @return The next three code points in the input.
-     */
-    private int[] peek3() {
-        int p = this.pos;
-        int[] c = new int[] { next(), next(), next() };
+        int c = next();
         this.pos = p;
         return c;
     }
@@ -449,8 +940,31 @@ public class Tokenizer {
      * @return {@code true} on success consuming {@code str}
      */
     private boolean consume(String str) {
-        if (!isEof() && this.input.startsWith(str, this.pos)) {
-            this.pos += str.length();
+        int len = str.length();
+        if (this.end - this.pos < len) {
+            return false;
+        }
+
+        for (int i = 0; i < len; ++i) {
+            if (this.input.charAt(this.pos + i) != str.charAt(i)) {
+                return false;
+            }
+        }
+
+        this.pos += len;
+        return true;
+    }
+
+    /**
+     * Tries to consume the {@code =} of an attribute match token.
+     *
+     * @param type The type of the match token.
+     * @return {@code true} if a match token was consumed.
+     */
+    private boolean consumeMatch(TokenType type) {
+        if (peek() == '=') {
+            next();
+            this.tokenType = type;
             return true;
         }
 
@@ -469,9 +983,13 @@ public class Tokenizer {
             return false;
         }
 
-        int[] c = peek3();
-        return isNameStart(c[0]) || isValidEscape(c[0], c[1]) ||
-                (c[0] == '-' && (isNameStart(c[1]) || isValidEscape(c[1], c[2])));
+        int c0 = peek(0);
+        int c1 = peek(1);
+        if (isNameStart(c0) || isValidEscape(c0, c1)) {
+            return true;
+        }
+
+        return c0 == '-' && (isNameStart(c1) || isValidEscape(c1, peek(2)));
     }
 
     /**
@@ -486,17 +1004,18 @@ public class Tokenizer {
             return false;
         }
 
-        int[] c = peek3();
-        if (isDigit(c[0]) || (c[0] == '.' && isDigit(c[1]))) {
+        int c0 = peek(0);
+        int c1 = peek(1);
+        if (isDigit(c0) || (c0 == '.' && isDigit(c1))) {
             return true;
         }
 
-        if (c[0] == '+' || c[0] == '-') {
-            if (isDigit(c[1])) {
+        if (c0 == '+' || c0 == '-') {
+            if (isDigit(c1)) {
                 return true;
             }
 
-            if (c[1] == '.' && isDigit(c[2])) {
+            if (c1 == '.' && isDigit(peek(2))) {
                 return true;
             }
         }
@@ -543,6 +1062,7 @@ public class Tokenizer {
      * @return The consumed code point.
      */
     private int consumeEscape() {
+        this.tokenEscaped = true;
         if (isEof()) {
             return REPLACEMENT_CHAR;
         }
@@ -576,44 +1096,60 @@ public class Tokenizer {
      * <p/>
      * See http://www.w3.org/TR/css-syntax-3/#consume-a-name
      *
-     * @return The consumed name.
+     * @param sb Buffer to append the decoded name to or {@code null}
      */
-    private String consumeName() {
-        StringBuilder sb = new StringBuilder();
+    private void consumeName(StringBuilder sb) {
         while (true) {
             mark();
             int c = next();
             if (isName(c)) {
-                sb.appendCodePoint(c);
+                if (sb != null) {
+                    sb.appendCodePoint(c);
+                }
             } else if (isValidEscape(c, peek())) {
-                sb.appendCodePoint(consumeEscape());
+                int e = consumeEscape();
+                if (sb != null) {
+                    sb.appendCodePoint(e);
+                }
             } else {
                 setPositionToMark();
                 break;
             }
         }
+    }
 
-        return sb.toString();
+    /**
+     * Consume a hash token.
+     * <p/>
+     * It is assumed that the {@code #} has already been consumed.
+     *
+     * @param sb Buffer to append the decoded value to or {@code null}
+     * @param id If the type flag is of type <i>id</i>
+     */
+    private void consumeHash(StringBuilder sb, boolean id) {
+        this.valueStart = this.pos;
+        consumeName(sb);
+        this.valueEnd = this.pos;
+        this.tokenFlag = id;
+        this.tokenType = TokenType.HASH;
     }
 
     /**
      * Consume a number.
      * <p/>
      * It is assumed that the current position of the tokenizer represents a number token.
-     *
-     * @return The consumed number token.
+     * The representation of the number is the input between {@link #valueStart} and {@link #valueEnd}
      */
-    private Token.Number consumeNumber() {
-        StringBuilder sb = new StringBuilder();
+    private void consumeNumber() {
+        this.valueStart = this.pos;
 
-        int p = this.pos;
         int c = peek();
         if (c == '+' || c == '-') {
-            sb.appendCodePoint(next());
+            next();
         }
 
         while (isDigit(peek())) {
-            sb.appendCodePoint(next());
+            next();
         }
 
         mark();
@@ -621,9 +1157,8 @@ public class Tokenizer {
         int c1 = next();
         int c2 = next();
         if (c1 == '.' && isDigit(c2)) {
-            sb.appendCodePoint(c1).appendCodePoint(c2);
             while (isDigit(peek())) {
-                sb.appendCodePoint(next());
+                next();
             }
 
             integer = false;
@@ -633,13 +1168,15 @@ public class Tokenizer {
 
         if (isValidExponent()) {
             integer = false;
-            sb.appendCodePoint(next()).appendCodePoint(next());
+            next();
+            next();
             while (isDigit(peek())) {
-                sb.appendCodePoint(next());
+                next();
             }
         }
 
-        return Token.Number.number(p, sb.toString(), integer);
+        this.valueEnd = this.pos;
+        this.tokenFlag = integer;
     }
 
     /**
@@ -649,20 +1186,23 @@ public class Tokenizer {
      * <p/>
      * See http://www.w3.org/TR/css-syntax-3/#consume-a-numeric-token
      *
-     * @return The consumed numeric token.
+     * @param sb Buffer to append the decoded unit of a dimension to or {@code null}
      */
-    private Token consumeNumericToken() {
-        Token.Number token = consumeNumber();
+    private void consumeNumericToken(StringBuilder sb) {
+        consumeNumber();
         if (peek() == '%') {
             next();
-            return Token.Number.percentage(token.position, token.value, token.integer);
+            this.tokenType = TokenType.PERCENTAGE;
+            return;
         }
 
         if (isIdentStart()) {
-            return new Token.Dimension(token.position, token.value, token.integer, consumeName());
+            consumeName(sb);
+            this.tokenType = TokenType.DIMENSION;
+            return;
         }
 
-        return token;
+        this.tokenType = TokenType.NUMBER;
     }
 
     /**
@@ -670,64 +1210,97 @@ public class Tokenizer {
      * <p/>
      * See http://www.w3.org/TR/css-syntax-3/#consume-an-ident-like-token
      *
-     * @return The consumed token.
+     * @param sb Buffer to append the decoded value to or {@code null}
      */
-    private Token consumeIdentLikeToken() {
-        int p = this.pos;
-        String name = consumeName();
-        TokenType type = TokenType.IDENT;
+    private void consumeIdentLikeToken(StringBuilder sb) {
+        this.valueStart = this.pos;
+        consumeName(sb);
+        this.valueEnd = this.pos;
         if (peek() == '(') {
             next(); // Consume the '('
-            if ("url".equalsIgnoreCase(name)) {
-                return consumeUrlToken();
+
+            boolean url;
+            if (!this.tokenEscaped) {
+                url = regionEqualsIgnoreCase(this.valueStart, this.valueEnd, "url");
+            } else if (sb != null) {
+                url = "url".equalsIgnoreCase(sb.toString());
             } else {
-                type = TokenType.FUNCTION;
+                int p = this.pos;
+                this.pos = this.valueStart;
+                StringBuilder name = new StringBuilder();
+                consumeName(name);
+                this.pos = p;
+                url = "url".equalsIgnoreCase(name.toString());
             }
+
+            if (url) {
+                if (sb != null) {
+                    sb.setLength(0);
+                }
+
+                this.tokenEscaped = false;
+                consumeUrlToken(sb);
+            } else {
+                this.tokenType = TokenType.FUNCTION;
+            }
+
+            return;
         }
 
-        return new Token(type, p, name);
+        this.tokenType = TokenType.IDENT;
     }
 
     /**
      * Consume a string token.
      * <p/>
+     * It is assumed that the current position of the tokenizer is at the opening quote.
+     * <p/>
      * See http://www.w3.org/TR/css-syntax-3/#consume-a-string-token
      *
-     * @param apostrophe If the string contents is surrounded by apostrophes.
-     * @return The consumed string token.
+     * @param sb Buffer to append the decoded value to or {@code null}
      */
-    private Token consumeStringToken(boolean apostrophe) {
-        StringBuilder sb = new StringBuilder();
-
-        int p = this.pos;
-        next(); // Consume the quote
+    private void consumeStringToken(StringBuilder sb) {
+        int quote = next(); // Consume the quote
+        this.valueStart = this.pos;
         while (true) {
             mark();
             int c = next();
-            if (c == EOF || (c == '\'' && apostrophe) || (c == '"' && !apostrophe)) {
+            if (c == EOF) {
+                this.valueEnd = this.pos;
+                break;
+            }
+
+            if (c == quote) {
+                this.valueEnd = this.mark;
                 break;
             }
 
             if (c == '\n') {
                 setPositionToMark();
-                return new Token(TokenType.BAD_STRING, p, "");
+                setEmptyValue(sb);
+                this.tokenType = TokenType.BAD_STRING;
+                return;
             }
 
             if (c == '\\') {
+                this.tokenEscaped = true;
                 int d = peek();
                 if (d != EOF) {
                     if (d == '\n') {
                         next(); // Consume the newline
                     } else {
-                        sb.appendCodePoint(consumeEscape());
+                        int e = consumeEscape();
+                        if (sb != null) {
+                            sb.appendCodePoint(e);
+                        }
                     }
                 }
-            } else {
+            } else if (sb != null) {
                 sb.appendCodePoint(c);
             }
         }
 
-        return new Token(TokenType.STRING, p, sb.toString());
+        this.tokenType = TokenType.STRING;
     }
 
     /**
@@ -737,74 +1310,90 @@ public class Tokenizer {
      * <p/>
      * See http://www.w3.org/TR/css-syntax-3/#consume-a-url-token
      *
-     * @return The consumed URL token.
+     * @param sb Buffer to append the decoded value to or {@code null}
      */
-    private Token consumeUrlToken() {
+    private void consumeUrlToken(StringBuilder sb) {
         skipSpace();
-        int p = this.pos;
         if (isEof()) {
-            return new Token(TokenType.URL, p, "");
+            setEmptyValue(sb);
+            this.tokenType = TokenType.URL;
+            return;
         }
 
         int c = peek();
         if (c == '\'' || c == '"') {
-            Token token = consumeStringToken(c != '"');
-            if (token.type == TokenType.BAD_STRING) {
-                p = this.pos;
+            consumeStringToken(sb);
+            if (this.tokenType == TokenType.BAD_STRING) {
                 consumeBadUrl();
-                return new Token(TokenType.BAD_URL, p, token.value);
-            } else {
-                skipSpace();
-                c = peek();
-                if (c == ')' || c == EOF) {
-                    if (c == ')') {
-                        next(); // Consume the ')'
-                    }
+                this.tokenType = TokenType.BAD_URL;
+                return;
+            }
 
-                    return new Token(TokenType.URL, p, token.value);
+            skipSpace();
+            c = peek();
+            if (c == ')' || c == EOF) {
+                if (c == ')') {
+                    next(); // Consume the ')'
                 }
 
-                p = this.pos;
-                consumeBadUrl();
-                return new Token(TokenType.BAD_URL, p, token.value);
+                this.tokenType = TokenType.URL;
+                return;
             }
+
+            // The value of the bad URL is the value of the string.
+            boolean escaped = this.tokenEscaped;
+            consumeBadUrl();
+            this.tokenEscaped = escaped;
+            this.tokenType = TokenType.BAD_URL;
+            return;
         }
 
-        StringBuilder sb = new StringBuilder();
+        this.valueStart = this.pos;
+        this.valueEnd = -1;
         boolean spaceSeen = false;
         while (true) {
+            int p = this.pos;
             c = next();
             if (c == ')' || c == EOF) {
-                return new Token(TokenType.URL, p, sb.toString());
+                if (this.valueEnd == -1) {
+                    this.valueEnd = p;
+                }
+
+                this.tokenType = TokenType.URL;
+                return;
             }
 
             if (isSpace(c)) {
+                if (!spaceSeen) {
+                    this.valueEnd = p;
+                }
+
                 spaceSeen = true;
                 skipSpace();
                 continue;
             }
 
             if (spaceSeen) {
-                p = this.pos;
-                consumeBadUrl();
-                return new Token(TokenType.BAD_URL, p, "");
+                setBadUrl(sb);
+                return;
             }
 
             if (c == '\'' || c == '"' || c == '(' || isNonPrintable(c)) {
-                p = this.pos;
-                consumeBadUrl();
-                return new Token(TokenType.BAD_URL, p, "");
+                setBadUrl(sb);
+                return;
             }
 
             if (c == '\\') {
                 if (isValidEscape(c, peek())) {
-                    sb.appendCodePoint(consumeEscape());
+                    int e = consumeEscape();
+                    if (sb != null) {
+                        sb.appendCodePoint(e);
+                    }
                 } else {
-                    p = this.pos;
-                    consumeBadUrl();
-                    return new Token(TokenType.BAD_URL, p, "");
+                    setBadUrl(sb);
+                    return;
                 }
-            } else {
+            } else if (sb != null) {
                 sb.appendCodePoint(c);
             }
         }
@@ -815,11 +1404,10 @@ public class Tokenizer {
      * <p/>
      * Is is assumed that the initial {@code u+} has already been consumed and that
      * the next input code point has been verified to be a hex digit or a {@code ?}.
-     *
-     * @return The consumed Unicode range token.
      */
-    private Token.UnicodeRange consumeUnicodeRangeToken() {
-        int p = this.pos;
+    private void consumeUnicodeRangeToken() {
+        this.tokenType = TokenType.UNICODE_RANGE;
+
         int start = 0;
         int length = 0;
         while (isHexDigit(peek()) && length < 6) {
@@ -843,12 +1431,13 @@ public class Tokenizer {
                 end = (end << 4) + 15;
             }
 
-            return new Token.UnicodeRange(p, start, end);
+            this.rangeStart = start;
+            this.rangeEnd = end;
+            return;
         }
 
         int end = 0;
-        int[] c = peek2();
-        if (c[0] == '-' && isHexDigit(c[1])) {
+        if (peek(0) == '-' && isHexDigit(peek(1))) {
             next(); // Consume the '-'
             length = 0;
             while (isHexDigit(peek()) && length < 6) {
@@ -859,7 +1448,20 @@ public class Tokenizer {
             end = start;
         }
 
-        return new Token.UnicodeRange(p, start, end);
+        this.rangeStart = start;
+        this.rangeEnd = end;
+    }
+
+    /**
+     * Consume the remnants of a bad URL and make the current token a {@linkplain TokenType#BAD_URL}
+     * with an empty value.
+     *
+     * @param sb Buffer holding the decoded value or {@code null}
+     */
+    private void setBadUrl(StringBuilder sb) {
+        consumeBadUrl();
+        setEmptyValue(sb);
+        this.tokenType = TokenType.BAD_URL;
     }
 
     /**
@@ -880,4 +1482,19 @@ public class Tokenizer {
         }
     }
 
+    /**
+     * Makes the value of the current token empty.
+     *
+     * @param sb Buffer holding the decoded value or {@code null}
+     */
+    private void setEmptyValue(StringBuilder sb) {
+        if (sb != null) {
+            sb.setLength(0);
+        }
+
+        this.valueStart = this.pos;
+        this.valueEnd = this.pos;
+        this.tokenEscaped = false;
+    }
+
 }
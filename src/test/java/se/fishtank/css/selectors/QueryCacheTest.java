@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+import se.fishtank.css.selectors.dom.W3CNode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.QueryCache}
+ *
+ * @author Christer Sandberg
+ */
+public class QueryCacheTest {
+
+    private final W3CNode root = Support.getTestDocument();
+
+    @Test
+    public void testCachedPerVersion() {
+        VersionedDocument<Node, W3CNode> document = new VersionedDocument<>(root);
+        QueryCache<Node, W3CNode> cache = new QueryCache<>(16);
+
+        List<Node> result = cache.querySelectorAll(document, "div.dialog > div");
+        assertEquals(new Selectors<>(root).querySelectorAll("div.dialog > div"), result);
+        assertSame(result, cache.querySelectorAll(document, "div.dialog > div"));
+        assertSame(result, cache.querySelectorAll(document, "div.dialog  >  div"));
+        assertSame(result, cache.querySelectorAll(document, Selectors.parse("div.dialog   >   div")));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(3, cache.getHitCount());
+
+        document.changed();
+        List<Node> changed = cache.querySelectorAll(document, "div.dialog > div");
+        assertNotSame(result, changed);
+        assertEquals(result, changed);
+        assertEquals(2, cache.getMissCount());
+
+        VersionedDocument<Node, W3CNode> other = new VersionedDocument<>(root);
+        assertNotSame(changed, cache.querySelectorAll(other, "div.dialog > div"));
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    public void testEviction() {
+        VersionedDocument<Node, W3CNode> document = new VersionedDocument<>(root);
+        QueryCache<Node, W3CNode> cache = new QueryCache<>(2);
+        List<Node> divs = cache.querySelectorAll(document, Selectors.parse("div"));
+        cache.querySelectorAll(document, Selectors.parse("p"));
+        assertSame(divs, cache.querySelectorAll(document, Selectors.parse("div")));
+        cache.querySelectorAll(document, Selectors.parse("h3"));
+        assertEquals(2, cache.size());
+
+        // The least recently used result was evicted.
+        assertSame(divs, cache.querySelectorAll(document, Selectors.parse("div")));
+        cache.querySelectorAll(document, Selectors.parse("p"));
+        assertEquals(4, cache.getMissCount());
+    }
+
+    @Test
+    public void testStringQueriesCountOnce() {
+        VersionedDocument<Node, W3CNode> document = new VersionedDocument<>(root);
+        QueryCache<Node, W3CNode> cache = new QueryCache<>(2);
+        List<Node> divs = cache.querySelectorAll(document, " div ");
+        List<Node> paragraphs = cache.querySelectorAll(document, " p ");
+        assertEquals(2, cache.size());
+
+        // Each query string takes up a single result, so both are still cached.
+        assertSame(divs, cache.querySelectorAll(document, " div "));
+        assertSame(paragraphs, cache.querySelectorAll(document, " p "));
+        assertSame(divs, cache.querySelectorAll(document, "div"));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testImmutable() {
+        new QueryCache<Node, W3CNode>(1).querySelectorAll(new VersionedDocument<>(root), "div").clear();
+    }
+
+}
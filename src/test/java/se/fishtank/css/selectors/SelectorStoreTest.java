@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+import se.fishtank.css.selectors.dom.W3CNode;
+import se.fishtank.css.selectors.matching.SelectorMatcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.SelectorStore}
+ *
+ * @author Christer Sandberg
+ */
+public class SelectorStoreTest {
+
+    private final W3CNode document = Support.getTestDocument();
+
+    private static final String[] RULES = {
+            "div.dialog > div",
+            "#speech5, #title",
+            "head > :not(meta)",
+            "div[class=character]:first-child",
+            "body div.scene div:is(.dialog, #x) + div",
+            "DIV.character ~ div",
+            "p::before",
+            "div:has(> h3)",
+            "div:not(#scene1) .dialog",
+            "a[href=\"x, y\"], span"
+    };
+
+    @Test
+    public void testSameAsSelectors() {
+        SelectorStore store = new SelectorStore();
+        for (String rule : RULES) {
+            store.add(rule);
+        }
+
+        StringBuilder group = new StringBuilder();
+        for (String rule : RULES) {
+            group.append(group.length() == 0 ? "" : ", ").append(rule);
+        }
+
+        List<Node> expected = new Selectors<>(document).querySelectorAll(group.toString());
+        assertTrue(expected.size() > 0);
+        assertEquals(expected, store.querySelectorAll(document, null));
+    }
+
+    @Test
+    public void testLazyParsing() {
+        SelectorStore store = new SelectorStore();
+        for (int i = 0; i < 1000; ++i) {
+            store.add("div#unused" + i + " > p, .unused" + i);
+        }
+
+        store.add("h3");
+        store.add("div + div, invalid[");
+        assertEquals(1002, store.size());
+        assertEquals(0, store.getParsedCount());
+
+        List<Node> result = store.querySelectorAll(document, null);
+        assertEquals(new Selectors<>(document).querySelectorAll("h3, div + div"), result);
+        assertEquals(2, store.getParsedCount());
+    }
+
+    @Test
+    public void testMatchingRules() {
+        SelectorStore store = new SelectorStore();
+        store.add("div");
+        store.add("#speech5");
+        store.add("div.dialog, #speech5");
+        store.add("p");
+
+        W3CNode node = new W3CNode(new Selectors<>(document).querySelector("#speech5"));
+        SelectorMatcher<W3CNode> matcher = new SelectorMatcher<>();
+        assertEquals(Arrays.asList(0, 1, 2), store.matchingRules(matcher, node));
+        assertEquals("div.dialog, #speech5", store.getRule(2));
+        assertTrue(store.matchesAny(matcher, node));
+    }
+
+}
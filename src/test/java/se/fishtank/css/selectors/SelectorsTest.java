@@ -10,6 +10,7 @@ import org.w3c.dom.Attr;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import se.fishtank.css.selectors.dom.W3CNode;
+import se.fishtank.css.selectors.selector.Combinator;
 import se.fishtank.css.selectors.selector.Selector;
 
 import static org.junit.Assert.*;
@@ -49,4 +50,31 @@ public class SelectorsTest {
         }
     }
 
+    @Test
+    public void testExplain() {
+        QueryPlan plan = new Selectors<>(document).explain("div.dialog > div, p");
+        assertFalse(plan.analyzed);
+        assertEquals(2, plan.selectors.size());
+
+        QueryPlan.SelectorPlan selectorPlan = plan.selectors.get(0);
+        assertEquals("div.dialog > div", selectorPlan.selector.toString());
+        assertEquals(2, selectorPlan.compounds.size());
+        assertNull(selectorPlan.compounds.get(0).combinator);
+        assertEquals(Combinator.CHILD, selectorPlan.compounds.get(1).combinator);
+        assertEquals(-1, selectorPlan.compounds.get(0).candidates);
+        assertTrue(selectorPlan.estimatedCost > plan.selectors.get(1).estimatedCost);
+    }
+
+    @Test
+    public void testAnalyze() {
+        QueryPlan plan = new Selectors<>(document).analyze(selectors);
+        assertTrue(plan.analyzed);
+        assertEquals(2, plan.matches);
+
+        QueryPlan.CompoundPlan rightmost = plan.selectors.get(0).compounds.get(0);
+        assertEquals(plan.elements, rightmost.candidates);
+        assertEquals(2, rightmost.matches);
+        assertTrue(plan.toString().contains("candidates: " + plan.elements));
+    }
+
 }
@@ -4,8 +4,10 @@
 package se.fishtank.css.selectors;
 
 import java.io.InputStream;
+import java.io.StringReader;
 import javax.xml.parsers.DocumentBuilderFactory;
 
+import org.xml.sax.InputSource;
 import se.fishtank.css.selectors.dom.W3CNode;
 
 /**
@@ -24,4 +26,13 @@ public class Support {
         }
     }
 
+    public static W3CNode parse(String xml) {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        try {
+            return new W3CNode(factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml))));
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 }
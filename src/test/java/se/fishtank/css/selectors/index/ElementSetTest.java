@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+import se.fishtank.css.selectors.Selectors;
+import se.fishtank.css.selectors.Support;
+import se.fishtank.css.selectors.dom.W3CNode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.index.ElementSet}
+ *
+ * @author Christer Sandberg
+ */
+public class ElementSetTest {
+
+    private final W3CNode document = Support.getTestDocument();
+
+    private final IndexedDocument<Node, W3CNode> index = new IndexedDocument<>(document);
+
+    private final Selectors<Node, W3CNode> selectors = new Selectors<>(document);
+
+    @Test
+    public void testSetAlgebra() {
+        ElementSet<Node, W3CNode> divs = index.querySet("div");
+        ElementSet<Node, W3CNode> dialogs = index.querySet(".dialog");
+        ElementSet<Node, W3CNode> scene = index.querySet("#scene1, #scene1 *");
+
+        assertEquals(selectors.querySelectorAll("div, .dialog"), divs.union(dialogs).toList());
+        assertEquals(selectors.querySelectorAll("div.dialog"), divs.intersection(dialogs).toList());
+        assertEquals(selectors.querySelectorAll("div:not(.dialog)"), divs.difference(dialogs).toList());
+        assertEquals(selectors.querySelectorAll("#scene1 div.dialog"),
+                divs.intersection(dialogs).intersection(scene).difference(index.querySet("#scene1")).toList());
+
+        assertEquals(selectors.querySelectorAll("div").size(), divs.cardinality());
+        assertTrue(index.querySet("nonexistent").isEmpty());
+        assertEquals(index.size(), index.all().cardinality());
+        assertEquals(divs, index.querySet("div").union(index.querySet("div.dialog")));
+    }
+
+    @Test
+    public void testIteration() {
+        ElementSet<Node, W3CNode> set = index.querySet("h3, p");
+        List<Node> nodes = new ArrayList<>();
+        for (Node node : set) {
+            nodes.add(node);
+        }
+
+        assertEquals(selectors.querySelectorAll("h3, p"), nodes);
+        int[] numbers = set.toArray();
+        assertEquals(nodes.size(), numbers.length);
+        for (int i = 0; i < numbers.length; ++i) {
+            assertEquals(nodes.get(i), index.getNode(numbers[i]).getUnderlying());
+            assertTrue(set.contains(index.getNode(numbers[i])));
+        }
+
+        assertFalse(set.contains(-1));
+    }
+
+    @Test
+    public void testFind() {
+        // The dialogs are nested, each descendant is only returned once.
+        ElementSet<Node, W3CNode> dialogs = index.querySet(".dialog");
+        assertEquals(selectors.querySelectorAll(".dialog div"), dialogs.find("div").toList());
+        assertEquals(selectors.querySelectorAll(".dialog :first-child"), dialogs.find(":first-child").toList());
+        assertEquals(selectors.querySelectorAll(".dialog *"), dialogs.find("*").toList());
+        assertEquals(index.querySet("#scene1 > div, div.character").intersection(index.querySet(".dialog *")),
+                dialogs.find("#scene1 > div, div.character, p::before"));
+
+        ElementSet<Node, W3CNode> characters = index.querySet(".character");
+        assertEquals(selectors.querySelectorAll(".character *"), characters.find("*").toList());
+        assertTrue(index.querySet("nonexistent").find("div").isEmpty());
+        assertEquals(index.querySet("div div"), index.querySet("div").find("div"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentDocuments() {
+        index.querySet("div").union(new IndexedDocument<Node, W3CNode>(document).querySet("div"));
+    }
+
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.index;
+
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import se.fishtank.css.selectors.Selectors;
+import se.fishtank.css.selectors.Support;
+import se.fishtank.css.selectors.dom.W3CNode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.index.IndexedDocument}
+ *
+ * @author Christer Sandberg
+ */
+public class IndexedDocumentTest {
+
+    private final W3CNode document = Support.getTestDocument();
+
+    private static final String[] SELECTORS = {
+            "*",
+            "div",
+            "body div",
+            "div p",
+            "div > p",
+            "div.dialog > div",
+            "div.dialog div",
+            "#scene1 div",
+            "div#scene1 .dialog ~ div",
+            "div.character + div",
+            "h2 ~ *",
+            "html > body div.scene > div",
+            "div p, div > p, p:first-child",
+            "body > div:not(.scene) p",
+            "div:has(> h3) div.dialog",
+            ":is(.scene, .character) > *",
+            "p::before",
+            "nonexistent div",
+            "#title, #speech5"
+    };
+
+    @Test
+    public void testSameAsSelectors() {
+        IndexedDocument<Node, W3CNode> index = new IndexedDocument<>(document);
+        Selectors<Node, W3CNode> selectors = new Selectors<>(document);
+        for (String selector : SELECTORS) {
+            List<Node> expected = selectors.querySelectorAll(selector);
+            assertEquals(selector, expected, index.querySelectorAll(selector));
+        }
+    }
+
+    @Test
+    public void testLabels() {
+        IndexedDocument<Node, W3CNode> index = new IndexedDocument<>(document);
+        assertEquals(0, index.getDepth(0));
+        assertEquals(-1, index.getParent(0));
+        assertEquals(index.size(), index.getEnd(0));
+        for (int number = 1; number < index.size(); ++number) {
+            int parent = index.getParent(number);
+            assertTrue(index.isAncestor(parent, number));
+            assertFalse(index.isAncestor(number, parent));
+            assertEquals(index.getDepth(parent) + 1, index.getDepth(number));
+            assertEquals(number, index.indexOf(index.getNode(number)));
+
+            W3CNode node = index.getNode(number);
+            int previous = index.getPreviousSibling(number);
+            assertEquals(node.getParentNode(), index.getNode(parent));
+            if (previous >= 0) {
+                assertEquals(parent, index.getParent(previous));
+                assertTrue(index.getEnd(previous) <= number);
+            }
+        }
+
+        int[] divs = index.getElementsByLocalName("DIV");
+        assertEquals(new Selectors<>(document).querySelectorAll("div").size(), divs.length);
+        for (int i = 1; i < divs.length; ++i) {
+            assertTrue(divs[i - 1] < divs[i]);
+        }
+    }
+
+    @Test
+    public void testDeepDocument() throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element parent = doc.createElement("section");
+        doc.appendChild(parent);
+        for (int i = 0; i < 20000; ++i) {
+            Element div = doc.createElement("div");
+            parent.appendChild(div);
+            parent = div;
+        }
+
+        parent.appendChild(doc.createElement("span"));
+        parent.appendChild(doc.createElement("span"));
+
+        IndexedDocument<Node, W3CNode> index = new IndexedDocument<>(new W3CNode(doc));
+        assertEquals(20003, index.size());
+        assertEquals(20001, index.getDepth(20002));
+        assertEquals(20001, index.getPreviousSibling(20002));
+        assertEquals(20003, index.getEnd(0));
+        assertEquals(2, index.querySelectorAll("section div > span").size());
+        assertEquals(19999, index.querySelectorAll("div div").size());
+        assertEquals(1, index.querySelectorAll("section > div").size());
+        assertEquals(1, index.querySelectorAll("span + span").size());
+    }
+
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.jfr;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import se.fishtank.css.selectors.selector.Selector;
+
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.jfr.Events}
+ *
+ * @author Christer Sandberg
+ */
+public class EventsTest {
+
+    @Test
+    public void testDisabledWithoutRecording() {
+        assertNull(Events.beginParse());
+        assertNull(Events.beginQuery());
+
+        Events.endParse(null, "div", 0, 3, 1);
+        Events.endQuery(null, "querySelectorAll", Collections.<Selector>emptyList(), 0, 0);
+    }
+
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+import se.fishtank.css.selectors.Selectors;
+import se.fishtank.css.selectors.Support;
+import se.fishtank.css.selectors.dom.W3CNode;
+import se.fishtank.css.selectors.selector.SimpleSelectorType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.matching.CompiledSelectorList}
+ *
+ * @author Christer Sandberg
+ */
+public class CompiledSelectorListTest {
+
+    private static final W3CNode ROOT = Support.getTestDocument();
+
+    @Test
+    public void testSameAsSelectorGroup() {
+        String[][] equivalents = {
+                {":is(div, p) > div", "div > div, p > div"},
+                {":where(div.dialog, #scene1) div", "div.dialog div, #scene1 div"},
+                {"div :is(h1, h2, h3, h2, [title])", "div h1, div h2, div h3, div [title]"},
+                {":is(div:first-child, *:nth-child(2), #title)", "div:first-child, *:nth-child(2), #title"},
+                {":is(.header, div .note):not(p)", ".header:not(p), div .note:not(p)"},
+                {":is(:is(p, div) > span, li)", "p > span, div > span, li"}
+        };
+
+        Selectors<Node, W3CNode> selectors = new Selectors<>(ROOT);
+        for (String[] pair : equivalents) {
+            List<Node> expected = selectors.querySelectorAll(pair[1]);
+            assertEquals(pair[0], expected, selectors.querySelectorAll(pair[0]));
+        }
+    }
+
+    @Test
+    public void testClassKeys() {
+        String[][] equivalents = {
+                {":is(.thirdClass, .scene, .missing)", ".thirdClass, .scene, .missing"},
+                {":is(.dialog.scene, .character, .direction) > div",
+                        ".dialog.scene > div, .character > div, .direction > div"},
+                {"div :is(.scene div, .dialog)", "div .scene div, div .dialog"}
+        };
+
+        Selectors<Node, W3CNode> selectors = new Selectors<>(ROOT);
+        for (String[] pair : equivalents) {
+            List<Node> expected = selectors.querySelectorAll(pair[1]);
+            assertEquals(pair[0], expected, selectors.querySelectorAll(pair[0]));
+        }
+
+        assertEquals(1, selectors.querySelectorAll(":is(.thirdClass, .scene)").size());
+    }
+
+    @Test
+    public void testKeysCheckedFirst() {
+        long headings = new Selectors<>(ROOT).querySelectorAll("h1, h2, h3, h4, h5, h6").size();
+        assertTrue(headings > 0);
+
+        // Only elements with one of the local names are matched against a local name selector.
+        MatchProfiler<W3CNode> profiler = new MatchProfiler<>();
+        Selectors<Node, W3CNode> selectors = new Selectors<>(ROOT, null, profiler);
+        assertEquals(headings, selectors.querySelectorAll(":is(h1, h2, h3, h4, h5, h6)").size());
+        assertEquals(headings, profiler.getEvaluations(SimpleSelectorType.LOCAL_NAME));
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import se.fishtank.css.selectors.Selectors;
+import se.fishtank.css.selectors.Support;
+import se.fishtank.css.selectors.dom.W3CNode;
+import se.fishtank.css.selectors.selector.SimpleSelectorType;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.matching.HasMatcher}
+ *
+ * @author Christer Sandberg
+ */
+public class HasMatcherTest {
+
+    private static final String DOCUMENT = "<root>" +
+            "<ul><li><a class='active'/></li><li><span><a class='active'/></span></li><li><a/></li></ul>" +
+            "<div><p/><img/></div>" +
+            "<div><section><p><span/></p></section></div>" +
+            "<div><span/><p/></div>" +
+            "<div><h2/><p/><em/><span/></div>" +
+            "</root>";
+
+    @Test
+    public void testHas() {
+        LinkedHashMap<String, Integer> map = new LinkedHashMap<>();
+        map.put("li:has(> a.active)", 1);
+        map.put("li:has(a.active)", 2);
+        map.put("div:has(img)", 1);
+        map.put("div:has(p span)", 1);
+        map.put("div:has(> p > span)", 0);
+        map.put("section:has(> p > span)", 1);
+        map.put("h2:has(~ span)", 1);
+        map.put("h2:has(+ p)", 1);
+        map.put("h2:has(+ em)", 0);
+        map.put("p:has(+ img)", 1);
+        map.put("div:has(h2 + p)", 1);
+        map.put("ul:has(~ div > img)", 1);
+        map.put("div:has(~ div > img)", 0);
+        map.put(":has(span)", 8);
+        map.put(":not(:has(*))", 12);
+        map.put("div:has(p, img)", 4);
+
+        Selectors<Node, W3CNode> selectors = new Selectors<>(Support.parse(DOCUMENT));
+        for (Map.Entry<String, Integer> entry : map.entrySet()) {
+            assertEquals(entry.getKey(), (int) entry.getValue(), selectors.querySelectorAll(entry.getKey()).size());
+        }
+    }
+
+    @Test
+    public void testDeepDocument() throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element parent = doc.createElement("section");
+        doc.appendChild(parent);
+        for (int i = 0; i < 20000; ++i) {
+            Element div = doc.createElement("div");
+            parent.appendChild(div);
+            parent = div;
+        }
+
+        parent.appendChild(doc.createElement("span"));
+
+        Selectors<Node, W3CNode> selectors = new Selectors<>(new W3CNode(doc));
+        assertEquals(1, selectors.querySelectorAll("section:has(span)").size());
+        assertEquals(1, selectors.querySelectorAll("section:has(div > span)").size());
+        assertEquals(0, selectors.querySelectorAll("section:has(p)").size());
+        assertEquals(1, selectors.querySelectorAll("div:has(> span)").size());
+    }
+
+    @Test
+    public void testCachedPerElement() {
+        MatchProfiler<W3CNode> profiler = new MatchProfiler<>();
+        Selectors<Node, W3CNode> selectors = new Selectors<>(Support.parse(DOCUMENT), null, profiler);
+        assertEquals(8, selectors.querySelectorAll(":has(span)").size());
+        assertEquals(24, profiler.getElementsVisited());
+        // Every element but the root is matched against "span" at most once.
+        assertTrue(profiler.getEvaluations(SimpleSelectorType.LOCAL_NAME) <= 23);
+    }
+
+}
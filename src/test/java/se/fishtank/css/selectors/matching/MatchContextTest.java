@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import se.fishtank.css.selectors.Selectors;
+import se.fishtank.css.selectors.dom.W3CNode;
+import se.fishtank.css.selectors.selector.Selector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.matching.MatchContext}
+ *
+ * @author Christer Sandberg
+ */
+public class MatchContextTest {
+
+    @Test
+    public void testHasClass() throws Exception {
+        MatchContext<W3CNode> context = new MatchContext<>();
+        W3CNode node = element("div", " a\tbb  c\nd-e ccc ");
+        assertTrue(context.hasClass(node, "a"));
+        assertTrue(context.hasClass(node, "bb"));
+        assertTrue(context.hasClass(node, "c"));
+        assertTrue(context.hasClass(node, "d-e"));
+        assertTrue(context.hasClass(node, "ccc"));
+        assertFalse(context.hasClass(node, "b"));
+        assertFalse(context.hasClass(node, "cc"));
+        assertFalse(context.hasClass(node, "d"));
+        assertFalse(context.hasClass(node, ""));
+
+        StringBuilder many = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            many.append("class").append(i).append(' ');
+        }
+
+        W3CNode other = element("div", many.toString());
+        assertTrue(context.hasClass(other, "class0"));
+        assertTrue(context.hasClass(other, "class99"));
+        assertFalse(context.hasClass(other, "class100"));
+        assertFalse(context.hasClass(other, "a"));
+        assertTrue(context.hasClass(node, "a"));
+        assertFalse(context.hasClass(element("div", null), "a"));
+    }
+
+    @Test
+    public void testClassTokens() throws Exception {
+        MatchContext<W3CNode> context = new MatchContext<>();
+        W3CNode node = element("div", " a\tbb  a ");
+        assertEquals(3, context.getClassCount(node));
+        assertEquals("a".hashCode(), context.getClassHash(0));
+        assertEquals("bb".hashCode(), context.getClassHash(1));
+        assertTrue(context.isClass(1, "bb"));
+        assertFalse(context.isClass(1, "b"));
+        assertTrue(context.isClass(2, "a"));
+        assertEquals(0, context.getClassCount(element("div", null)));
+    }
+
+    @Test
+    public void testIncludes() {
+        assertTrue(MatchContext.includes("a b", "b"));
+        assertTrue(MatchContext.includes("  b  ", "b"));
+        assertFalse(MatchContext.includes("ab", "b"));
+        assertFalse(MatchContext.includes("a b", ""));
+        assertFalse(MatchContext.includes("", "b"));
+    }
+
+    @Test
+    public void testAttributesFetchedOnce() throws Exception {
+        final int[] fetched = new int[1];
+        W3CNode node = new W3CNode(element("div", "a b c").getUnderlying()) {
+            @Override
+            public Map<String, String> getAttributes() {
+                ++fetched[0];
+                return super.getAttributes();
+            }
+        };
+
+        Selector selector = Selectors.parse("div.a.b:not(.x)[title][class~=c][class^=a]").get(0);
+        SelectorMatcher<W3CNode> matcher = new SelectorMatcher<>();
+        assertTrue(matcher.matchesSelector(selector, node));
+        assertTrue(matcher.matchesSelector(selector, node));
+        assertEquals(1, fetched[0]);
+
+        matcher.reset();
+        assertTrue(matcher.matchesSelector(selector, node));
+        assertEquals(2, fetched[0]);
+    }
+
+    private static W3CNode element(String name, String classNames) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element element = document.createElement(name);
+        element.setAttribute("title", "");
+        if (classNames != null) {
+            element.setAttribute("class", classNames);
+        }
+
+        document.appendChild(element);
+        return new W3CNode(element);
+    }
+
+}
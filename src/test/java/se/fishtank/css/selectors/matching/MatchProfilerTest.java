@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+import se.fishtank.css.selectors.Selectors;
+import se.fishtank.css.selectors.Support;
+import se.fishtank.css.selectors.dom.W3CNode;
+import se.fishtank.css.selectors.selector.SimpleSelector;
+import se.fishtank.css.selectors.selector.SimpleSelectorType;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.matching.MatchProfiler}
+ *
+ * @author Christer Sandberg
+ */
+public class MatchProfilerTest {
+
+    private static final String DOCUMENT = "<html><body><p/><div><p/><em/><span/></div></body></html>";
+
+    @Test
+    public void testCounters() {
+        MatchProfiler<W3CNode> profiler = new MatchProfiler<>();
+        Selectors<Node, W3CNode> selectors = new Selectors<>(Support.parse(DOCUMENT), null, profiler);
+
+        List<Node> result = selectors.querySelectorAll("p + span, div > span");
+        assertEquals(1, result.size());
+        assertEquals(7, profiler.getElementsVisited());
+        assertEquals(16, profiler.getEvaluations(SimpleSelectorType.LOCAL_NAME));
+        assertEquals(3, profiler.getMatches(SimpleSelectorType.LOCAL_NAME));
+        assertEquals(1, profiler.getAncestorSteps());
+        assertEquals(1, profiler.getSiblingSteps());
+        assertEquals(1, profiler.getLaterSiblingRestarts());
+        assertEquals(0, profiler.getDescendantRestarts());
+        assertEquals(0, profiler.getCustomMatcherInvocations());
+
+        profiler.reset();
+        assertEquals(0, profiler.getEvaluations());
+    }
+
+    @Test
+    public void testCustomMatcherInvocations() {
+        SimpleSelectorMatcher<W3CNode> matcher = new SimpleSelectorMatcher<W3CNode>() {
+            @Override
+            public boolean matches(SimpleSelector simpleSelector, W3CNode node) {
+                return true;
+            }
+        };
+
+        MatchProfiler<W3CNode> profiler = new MatchProfiler<>();
+        Selectors<Node, W3CNode> selectors = new Selectors<>(Support.parse(DOCUMENT), matcher, profiler);
+        assertEquals(1, selectors.querySelectorAll("em:custom").size());
+        assertEquals(1, profiler.getCustomMatcherInvocations());
+        assertEquals(1, profiler.getEvaluations(SimpleSelectorType.PSEUDO_CLASS));
+    }
+
+}
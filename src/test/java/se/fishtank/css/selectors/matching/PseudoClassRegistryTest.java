@@ -0,0 +1,132 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+import se.fishtank.css.selectors.Selectors;
+import se.fishtank.css.selectors.Support;
+import se.fishtank.css.selectors.dom.W3CNode;
+import se.fishtank.css.selectors.selector.PseudoClassSelector;
+import se.fishtank.css.selectors.selector.PseudoFunctionSelector;
+import se.fishtank.css.selectors.selector.SimpleSelector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.matching.PseudoClassRegistry}
+ *
+ * @author Christer Sandberg
+ */
+public class PseudoClassRegistryTest {
+
+    private final W3CNode document = Support.getTestDocument();
+
+    @Test
+    public void testDispatchByName() {
+        final int[] invocations = new int[2];
+        PseudoClassRegistry<W3CNode> registry = new PseudoClassRegistry<W3CNode>()
+                .register("any", new SimpleSelectorMatcher<W3CNode>() {
+                    @Override
+                    public boolean matches(SimpleSelector simpleSelector, W3CNode node) {
+                        ++invocations[0];
+                        return true;
+                    }
+                })
+                .registerFunction("contains", new SimpleSelectorMatcher<W3CNode>() {
+                    @Override
+                    public boolean matches(SimpleSelector simpleSelector, W3CNode node) {
+                        ++invocations[1];
+                        String text = node.getUnderlying().getTextContent();
+                        return text.contains(((PseudoFunctionSelector) simpleSelector).arguments);
+                    }
+                });
+
+        Selectors<Node, W3CNode> selectors = new Selectors<>(document, registry);
+        Selectors<Node, W3CNode> plain = new Selectors<>(document);
+        assertEquals(plain.querySelectorAll("div:first-child").size(),
+                selectors.querySelectorAll("div:first-child:any").size());
+
+        // The custom matcher is only invoked when the built in pseudo class has matched.
+        assertEquals(plain.querySelectorAll("div:first-child").size(), invocations[0]);
+        assertEquals(0, invocations[1]);
+
+        assertEquals(1, selectors.querySelectorAll("h3:contains('palace')").size());
+        assertEquals(plain.querySelectorAll("h3").size(), invocations[1]);
+        assertEquals(0, selectors.querySelectorAll(":unknown, :unknown(x)").size());
+    }
+
+    @Test
+    public void testResolve() {
+        SimpleSelectorMatcher<W3CNode> matcher = new SimpleSelectorMatcher<W3CNode>() {
+            @Override
+            public boolean matches(SimpleSelector simpleSelector, W3CNode node) {
+                return true;
+            }
+        };
+
+        PseudoClassRegistry<W3CNode> registry = new PseudoClassRegistry<W3CNode>().register("x", matcher);
+        assertNotNull(registry.resolve(new PseudoClassSelector("x")));
+        assertNull(registry.resolve(new PseudoClassSelector("y")));
+        assertNull(registry.resolve(new PseudoFunctionSelector("x", "1")));
+    }
+
+    @Test
+    public void testPureResultsCached() {
+        final int[] invocations = new int[1];
+        PseudoClassRegistry<W3CNode> registry = new PseudoClassRegistry<W3CNode>()
+                .register("visible", new CacheableSimpleSelectorMatcher<W3CNode>() {
+                    @Override
+                    public boolean isPure(SimpleSelector simpleSelector) {
+                        return true;
+                    }
+
+                    @Override
+                    public boolean matches(SimpleSelector simpleSelector, W3CNode node) {
+                        ++invocations[0];
+                        return true;
+                    }
+                });
+
+        String query = "div:visible, div:visible div, div:visible > div, div:visible ~ div";
+        int divs = new Selectors<>(document).querySelectorAll("div").size();
+        assertEquals(divs, new Selectors<>(document, registry).querySelectorAll(query).size());
+        assertEquals(divs, invocations[0]);
+
+        // The results are cached per query.
+        invocations[0] = 0;
+        new Selectors<>(document, registry).querySelectorAll(query);
+        assertEquals(divs, invocations[0]);
+    }
+
+    @Test
+    public void testResolvedOnce() {
+        final int[] resolutions = new int[1];
+        PseudoClassRegistry<W3CNode> registry = new PseudoClassRegistry<W3CNode>() {
+            @Override
+            public SimpleSelectorMatcher<W3CNode> resolve(SimpleSelector simpleSelector) {
+                ++resolutions[0];
+                return super.resolve(simpleSelector);
+            }
+        }.register("any", new SimpleSelectorMatcher<W3CNode>() {
+            @Override
+            public boolean matches(SimpleSelector simpleSelector, W3CNode node) {
+                return true;
+            }
+        });
+
+        // Each selector is resolved once, however many elements it's matched against.
+        int divs = new Selectors<>(document).querySelectorAll("div").size();
+        assertEquals(divs, new Selectors<>(document, registry).querySelectorAll("div:any").size());
+        assertEquals(1, resolutions[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuiltIn() {
+        new PseudoClassRegistry<W3CNode>().register("first-child", null);
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.w3c.dom.Node;
+import se.fishtank.css.selectors.Selectors;
+import se.fishtank.css.selectors.Support;
+import se.fishtank.css.selectors.dom.W3CNode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.matching.QueryBudget}
+ *
+ * @author Christer Sandberg
+ */
+public class QueryBudgetTest {
+
+    private static final String DOCUMENT = "<html><body><p/><div><p/><em/><span/></div><p/></body></html>";
+
+    @Test
+    public void testWithinBudget() {
+        Selectors<Node, W3CNode> selectors = new Selectors<>(Support.parse(DOCUMENT));
+        assertEquals(3, selectors.querySelectorAll("p", QueryBudget.elements(8)).size());
+        assertEquals("em", selectors.querySelector("em", QueryBudget.steps(100)).getNodeName());
+    }
+
+    @Test
+    public void testMaxElements() {
+        Selectors<Node, W3CNode> selectors = new Selectors<>(Support.parse(DOCUMENT));
+        try {
+            selectors.querySelectorAll("p", QueryBudget.elements(5));
+            fail("Expected a QueryBudgetExceededException");
+        } catch (QueryBudgetExceededException e) {
+            assertEquals(QueryBudgetExceededException.Reason.ELEMENTS, e.reason);
+            List<?> partialResult = e.getPartialResult();
+            assertEquals(2, partialResult.size());
+        }
+    }
+
+    @Test
+    public void testMaxSteps() {
+        Selectors<Node, W3CNode> selectors = new Selectors<>(Support.parse(DOCUMENT));
+        try {
+            selectors.querySelectorAll("html p", QueryBudget.steps(3));
+            fail("Expected a QueryBudgetExceededException");
+        } catch (QueryBudgetExceededException e) {
+            assertEquals(QueryBudgetExceededException.Reason.STEPS, e.reason);
+        }
+    }
+
+    @Test
+    public void testCancelled() {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        Selectors<Node, W3CNode> selectors = new Selectors<>(Support.parse(DOCUMENT));
+        try {
+            selectors.querySelector("span", QueryBudget.cancellable(token));
+            fail("Expected a QueryBudgetExceededException");
+        } catch (QueryBudgetExceededException e) {
+            assertEquals(QueryBudgetExceededException.Reason.CANCELLED, e.reason);
+            assertEquals(0, e.getPartialResult().size());
+        }
+    }
+
+    @Test
+    public void testDeadline() {
+        Selectors<Node, W3CNode> selectors = new Selectors<>(Support.parse(DOCUMENT));
+        try {
+            selectors.querySelectorAll("p", QueryBudget.timeout(0, TimeUnit.NANOSECONDS));
+            fail("Expected a QueryBudgetExceededException");
+        } catch (QueryBudgetExceededException e) {
+            assertEquals(QueryBudgetExceededException.Reason.DEADLINE, e.reason);
+        }
+    }
+
+    @Test
+    public void testDelegatesToListener() {
+        MatchProfiler<W3CNode> profiler = new MatchProfiler<>();
+        Selectors<Node, W3CNode> selectors = new Selectors<>(Support.parse(DOCUMENT), null, profiler);
+        selectors.querySelectorAll("p", QueryBudget.steps(100));
+        assertEquals(8, profiler.getElementsVisited());
+    }
+
+}
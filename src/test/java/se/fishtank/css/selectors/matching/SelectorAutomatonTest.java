@@ -0,0 +1,160 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.matching;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import se.fishtank.css.selectors.Selectors;
+import se.fishtank.css.selectors.Support;
+import se.fishtank.css.selectors.dom.W3CNode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.matching.SelectorAutomaton}
+ *
+ * @author Christer Sandberg
+ */
+public class SelectorAutomatonTest {
+
+    private final W3CNode document = Support.getTestDocument();
+
+    private static final String[] SELECTORS = {
+            "*",
+            "div",
+            "body div",
+            "div p",
+            "div > p",
+            "div.dialog > div",
+            "html > body div.scene > div",
+            "body > div:not(.scene) p",
+            "div p, div > p, p:first-child",
+            "div:has(> h3) div.dialog",
+            ":is(.scene, .character) > *",
+            "div#scene1 .dialog ~ div",
+            "div.character + div",
+            "h2 ~ *",
+            "div.dialog + div ~ div",
+            "div ~ div > p",
+            "body > div div ~ div + div",
+            "div:first-child + div, h1 ~ div.scene",
+            "p::before",
+            "#title, #speech5"
+    };
+
+    @Test
+    public void testSameAsSelectors() {
+        Selectors<Node, W3CNode> selectors = new Selectors<>(document);
+        for (String selector : SELECTORS) {
+            SelectorAutomaton<W3CNode> automaton = new SelectorAutomaton<>(Selectors.parse(selector));
+            assertEquals(selector, selectors.querySelectorAll(selector), underlying(automaton.matchAll(document)));
+        }
+    }
+
+    @Test
+    public void testElementRoot() {
+        Document doc = (Document) document.getUnderlying();
+        Node[] roots = {
+                doc.getElementsByTagName("body").item(0),
+                byId(doc, "scene1"),
+                byId(doc, "speech5")
+        };
+
+        for (Node root : roots) {
+            Selectors<Node, W3CNode> selectors = new Selectors<>(new W3CNode(root));
+            SelectorAutomaton<W3CNode> automaton = null;
+            for (String selector : SELECTORS) {
+                automaton = new SelectorAutomaton<>(Selectors.parse(selector));
+                assertEquals(selector, selectors.querySelectorAll(selector),
+                        underlying(automaton.matchAll(new W3CNode(root))));
+            }
+
+            // The states left by a walk from an element root don't leak into the next walk.
+            assertEquals(selectors.querySelectorAll(SELECTORS[SELECTORS.length - 1]),
+                    underlying(automaton.matchAll(new W3CNode(root))));
+        }
+
+        SelectorAutomaton<W3CNode> automaton = new SelectorAutomaton<>(Selectors.parse("html div"));
+        assertEquals(243, automaton.matchAll(new W3CNode(roots[0])).size());
+    }
+
+    @Test
+    public void testStates() {
+        SelectorAutomaton<W3CNode> automaton = new SelectorAutomaton<>(Selectors.parse("a b > c, d, e + f"));
+        assertEquals(6, automaton.getStateCount());
+    }
+
+    @Test
+    public void testLongSiblingList() throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element dl = doc.createElement("dl");
+        doc.appendChild(dl);
+        dl.appendChild(doc.createElement("h2"));
+        int count = 20000;
+        for (int i = 0; i < count; ++i) {
+            dl.appendChild(doc.createElement("dt"));
+            dl.appendChild(doc.createElement(i % 2 == 0 ? "dd" : "p"));
+        }
+
+        W3CNode root = new W3CNode(doc);
+        MatchProfiler<W3CNode> profiler = new MatchProfiler<>();
+        SelectorAutomaton<W3CNode> automaton =
+                new SelectorAutomaton<>(Selectors.parse("h2 ~ p, dt + dd"), null, profiler);
+        assertEquals(count, automaton.matchAll(root).size());
+
+        // Every element is matched against the start states and at most the two sibling states.
+        long elements = profiler.getElementsVisited();
+        assertEquals(2 * count + 2, elements);
+        assertTrue(profiler.getEvaluations() <= 4 * elements);
+        assertEquals(0, profiler.getSiblingSteps());
+    }
+
+    @Test
+    public void testDeepDocument() throws Exception {
+        Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element parent = doc.createElement("section");
+        doc.appendChild(parent);
+        for (int i = 0; i < 20000; ++i) {
+            Element div = doc.createElement("div");
+            parent.appendChild(div);
+            parent = div;
+        }
+
+        parent.appendChild(doc.createElement("span"));
+
+        W3CNode root = new W3CNode(doc);
+        assertEquals(1, new SelectorAutomaton<W3CNode>(Selectors.parse("section div > span")).matchAll(root).size());
+        assertEquals(19999, new SelectorAutomaton<W3CNode>(Selectors.parse("div div")).matchAll(root).size());
+        assertEquals(1, new SelectorAutomaton<W3CNode>(Selectors.parse("section > div")).matchAll(root).size());
+    }
+
+    private static Node byId(Document doc, String id) {
+        NodeList elements = doc.getElementsByTagName("*");
+        for (int i = 0; i < elements.getLength(); ++i) {
+            if (id.equals(((Element) elements.item(i)).getAttribute("id"))) {
+                return elements.item(i);
+            }
+        }
+
+        return null;
+    }
+
+    private static List<Node> underlying(List<W3CNode> nodes) {
+        List<Node> result = new ArrayList<>(nodes.size());
+        for (W3CNode node : nodes) {
+            result.add(node.getUnderlying());
+        }
+
+        return result;
+    }
+
+}
@@ -3,12 +3,20 @@
  */
 package se.fishtank.css.selectors.matching;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import se.fishtank.css.selectors.Selectors;
 import se.fishtank.css.selectors.Support;
+import se.fishtank.css.selectors.dom.DOMNode;
 import se.fishtank.css.selectors.dom.W3CNode;
 import se.fishtank.css.selectors.dom.Traversal;
 import se.fishtank.css.selectors.dom.Visitor;
@@ -28,6 +36,12 @@ public class SelectorMatcherTest {
 
     private static final W3CNode ROOT = Support.getTestDocument();
 
+    private static final String SIBLINGS = "<root>" +
+            "<div><p id='a1'/><p id='a2' class='dialog'/><p id='a3' class='dialog'/><p id='a4' class='x'/></div>" +
+            "<div><p id='b1' class='dialog'/><p id='b2'/></div>" +
+            "<div><p id='c1'/></div>" +
+            "</root>";
+
     @Test
     public void testSelectorMatching() {
         final SelectorMatcher<W3CNode> selectorMatcher = new SelectorMatcher<>();
@@ -55,6 +69,63 @@ public class SelectorMatcherTest {
         assertEquals(0, visitor2.count);
     }
 
+    @Test
+    public void testNthChildOf() {
+        String[][] equivalents = {
+                {":nth-child(n of div)", "div:nth-of-type(n)"},
+                {":nth-child(2 of div)", "div:nth-of-type(2)"},
+                {":nth-child(2n+1 of div)", "div:nth-of-type(odd)"},
+                {":nth-last-child(-n+2 of div)", "div:nth-last-of-type(-n+2)"},
+                {":nth-child(1 of .dialog, .character)", ".dialog:nth-child(1 of .character, .dialog), " +
+                        ".character:nth-child(1 of .dialog, .character)"}
+        };
+
+        for (String[] pair : equivalents) {
+            CountingVisitor expected = new CountingVisitor(new SelectorMatcher<W3CNode>(),
+                    SelectorParser.parse(pair[1]));
+            Traversal.traverseElements(ROOT, expected);
+
+            CountingVisitor actual = new CountingVisitor(new SelectorMatcher<W3CNode>(),
+                    SelectorParser.parse(pair[0]));
+            Traversal.traverseElements(ROOT, actual);
+            assertEquals(pair[0], expected.count, actual.count);
+        }
+    }
+
+    @Test
+    public void testNthChildOfMatchedNodes() {
+        Selectors<Node, W3CNode> selectors = new Selectors<>(Support.parse(SIBLINGS));
+        assertEquals(Arrays.asList("a2", "b1"), ids(selectors.querySelectorAll(":nth-child(1 of .dialog)")));
+        assertEquals(Arrays.asList("a3", "b1"), ids(selectors.querySelectorAll(":nth-last-child(1 of .dialog)")));
+        assertEquals(Arrays.asList("a3"), ids(selectors.querySelectorAll("p:nth-child(2 of .dialog)")));
+        assertEquals(Arrays.asList("a1", "a2", "b1", "b2", "c1"),
+                ids(selectors.querySelectorAll(":nth-child(-n+2 of p:not(.x))")));
+    }
+
+    @Test
+    public void testNthChildOfWithoutNodeEquality() {
+        NodeList paragraphs = ((Document) Support.parse(SIBLINGS).getUnderlying()).getElementsByTagName("p");
+        Selector selector = SelectorParser.parse(":nth-child(2 of .dialog)").get(0);
+        SelectorMatcher<IdentityNode> selectorMatcher = new SelectorMatcher<>();
+        ArrayList<String> matched = new ArrayList<>();
+        for (Node n : Arrays.asList(paragraphs.item(2), paragraphs.item(4))) {
+            if (selectorMatcher.matchesSelector(selector, new IdentityNode(n))) {
+                matched.add(((Element) n).getAttribute("id"));
+            }
+        }
+
+        assertEquals(Arrays.asList("a3"), matched);
+    }
+
+    private static List<String> ids(List<Node> nodes) {
+        ArrayList<String> ids = new ArrayList<>();
+        for (Node node : nodes) {
+            ids.add(((Element) node).getAttribute("id"));
+        }
+
+        return ids;
+    }
+
     private static LinkedHashMap<String, Integer> createTestSelectorsMap() {
         LinkedHashMap<String, Integer> map = new LinkedHashMap<>();
 
@@ -145,4 +216,61 @@ public class SelectorMatcherTest {
         }
     }
 
+    /**
+     * A node wrapper without equality by the underlying node, created anew on every navigation.
+     */
+    private static class IdentityNode implements DOMNode<IdentityNode, Node> {
+
+        private final Node node;
+
+        IdentityNode(Node node) {
+            this.node = node;
+        }
+
+        @Override
+        public Node getUnderlying() {
+            return node;
+        }
+
+        @Override
+        public Type getType() {
+            return new W3CNode(node).getType();
+        }
+
+        @Override
+        public String getData() {
+            return new W3CNode(node).getData();
+        }
+
+        @Override
+        public Map<String, String> getAttributes() {
+            return new W3CNode(node).getAttributes();
+        }
+
+        @Override
+        public IdentityNode getFirstChild() {
+            return wrap(node.getFirstChild());
+        }
+
+        @Override
+        public IdentityNode getPreviousSibling() {
+            return wrap(node.getPreviousSibling());
+        }
+
+        @Override
+        public IdentityNode getNextSibling() {
+            return wrap(node.getNextSibling());
+        }
+
+        @Override
+        public IdentityNode getParentNode() {
+            return wrap(node.getParentNode());
+        }
+
+        private static IdentityNode wrap(Node n) {
+            return n == null ? null : new IdentityNode(n);
+        }
+
+    }
+
 }
@@ -8,6 +8,7 @@ import java.util.List;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Test;
+import se.fishtank.css.selectors.tokenizer.TokenType;
 import se.fishtank.css.selectors.tokenizer.Tokenizer;
 import se.fishtank.css.selectors.util.Pair;
 
@@ -57,4 +58,24 @@ public class NthParserTest {
         }
     }
 
+    @Test
+    public void testOf() {
+        String[] args = {"2n+1 of", "odd of", "-n+3 OF", "n of", "5 of", "2n- 1 of"};
+        int[][] expected = {{2, 1}, {2, 1}, {-1, 3}, {1, 0}, {0, 5}, {2, -1}};
+        for (int i = 0; i < args.length; ++i) {
+            Tokenizer tokenizer = new Tokenizer(args[i] + " .x)");
+            Pair<Integer, Integer> nth = NthParser.parse(tokenizer, true);
+            assertEquals(args[i], expected[i][0], (int) nth.first);
+            assertEquals(args[i], expected[i][1], (int) nth.second);
+            assertEquals(TokenType.IDENT, tokenizer.getTokenType());
+        }
+
+        try {
+            NthParser.parse(new Tokenizer("2n+1 of .x)"));
+            fail("Expected error for nth argument with of");
+        } catch (ParserException e) {
+            // Expected
+        }
+    }
+
 }
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.parser;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.parser.ParserLimits}
+ *
+ * @author Christer Sandberg
+ */
+public class ParserLimitsTest {
+
+    @Test
+    public void testWithinLimits() {
+        ParserLimits limits = new ParserLimits(32, 2, 3, 4, 1, 100);
+        assertEquals(2, SelectorParser.parse("div > p.a, ul li", limits).size());
+    }
+
+    @Test
+    public void testLimits() {
+        assertRejected("div p", ParserLimits.UNLIMITED.withMaxLength(4));
+        assertRejected("a, b, c", ParserLimits.UNLIMITED.withMaxSelectors(2));
+        assertRejected("a > b > c", ParserLimits.UNLIMITED.withMaxCompounds(2));
+        assertRejected("a.b.c#d", ParserLimits.UNLIMITED.withMaxSimpleSelectors(3));
+        assertRejected("a b ~ c", ParserLimits.UNLIMITED.withMaxCombinators(1));
+        assertRejected("a b c d e", ParserLimits.UNLIMITED.withMaxCost(10));
+    }
+
+    @Test
+    public void testCombinatorsCounted() {
+        ParserLimits limits = ParserLimits.UNLIMITED.withMaxCombinators(0);
+        assertEquals(1, SelectorParser.parse("a > b + c", limits).size());
+    }
+
+    private static void assertRejected(String selectors, ParserLimits limits) {
+        try {
+            SelectorParser.parse(selectors, limits);
+            fail("Expected " + selectors + " to be rejected");
+        } catch (ParserLimitException e) {
+            // Expected
+        }
+    }
+
+}
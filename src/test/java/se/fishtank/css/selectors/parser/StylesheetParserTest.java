@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.parser;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+import se.fishtank.css.selectors.selector.Selector;
+import se.fishtank.css.selectors.util.Pair;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.parser.StylesheetParser}
+ *
+ * @author Christer Sandberg
+ */
+public class StylesheetParserTest {
+
+    private static final String STYLESHEET =
+            "@charset \"utf-8\";\n" +
+            "<!-- div.a, p > span { color: red; content: \"}\" }\n" +
+            "/* { ignored } */ a[href$='{'] { background: url(x.png) } -->\n" +
+            "@font-face { font-family: x; src: url(x.woff) }\n" +
+            "@media screen and (min-width: 10px) {\n" +
+            "  #b { margin: 0 }\n" +
+            "  @supports (display: grid) { .c:first-child { display: grid } }\n" +
+            "}\n" +
+            "div >> p { } ul li { }\n" +
+            "h1 /* x */ + h2 { }";
+
+    @Test
+    public void testSelectorsAndOffsets() throws IOException {
+        List<Pair<List<Selector>, Integer>> rules = parseAll(new StringReader(STYLESHEET));
+        assertEquals(6, rules.size());
+
+        assertRule(rules.get(0), "div.a, p > span", 2);
+        assertRule(rules.get(1), "a[href$='{']", 1);
+        assertRule(rules.get(2), "#b", 1);
+        assertRule(rules.get(3), ".c:first-child", 1);
+        assertRule(rules.get(4), "ul li", 1);
+        assertRule(rules.get(5), "h1 /* x */ + h2", 1);
+    }
+
+    @Test
+    public void testDroppedRules() throws IOException {
+        StylesheetParser parser = new StylesheetParser(new StringReader(
+                "div >> p { } a { } p:nth-child(x) { } @media print { p > > a { } } b { }"));
+        assertEquals(SelectorParser.parse("a"), parser.next().first);
+        assertEquals(1, parser.getDroppedRuleCount());
+        assertEquals(SelectorParser.parse("b"), parser.next().first);
+        assertEquals(3, parser.getDroppedRuleCount());
+        assertNull(parser.next());
+        assertEquals(3, parser.getDroppedRuleCount());
+    }
+
+    @Test
+    public void testSmallReads() throws IOException {
+        Reader reader = new FilterReader(new StringReader(STYLESHEET)) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 1));
+            }
+        };
+
+        List<Pair<List<Selector>, Integer>> expected = parseAll(new StringReader(STYLESHEET));
+        List<Pair<List<Selector>, Integer>> actual = parseAll(reader);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testUnterminatedRule() throws IOException {
+        StylesheetParser parser = new StylesheetParser(new StringReader("a { color: red } b"));
+        assertEquals(SelectorParser.parse("a"), parser.next().first);
+        assertNull(parser.next());
+    }
+
+    private static void assertRule(Pair<List<Selector>, Integer> rule, String selectors, int count) {
+        assertEquals(selectors, STYLESHEET.indexOf(selectors), (int) rule.second);
+        assertEquals(selectors, count, rule.first.size());
+        assertEquals(selectors, SelectorParser.parse(selectors), rule.first);
+    }
+
+    private static List<Pair<List<Selector>, Integer>> parseAll(Reader reader) throws IOException {
+        LinkedList<Pair<List<Selector>, Integer>> rules = new LinkedList<>();
+        try (StylesheetParser parser = new StylesheetParser(reader)) {
+            Pair<List<Selector>, Integer> rule;
+            while ((rule = parser.next()) != null) {
+                rules.add(rule);
+            }
+        }
+
+        return rules;
+    }
+
+}
@@ -0,0 +1,174 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.selector;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import se.fishtank.css.selectors.parser.SelectorParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.selector.SelectorBundle}
+ *
+ * @author Christer Sandberg
+ */
+public class SelectorBundleTest {
+
+    private static final String[] SELECTORS = {
+            "*",
+            "div#foo.bar, p > span",
+            "a[href], a[href='x'], a[rel~=\"åäö\"], [a^=b] + [c$=d] ~ [e*=f], [lang|=en]",
+            "li:nth-child(-2n+3):nth-last-of-type(odd)::first-line",
+            "p:not(.a):not(:first-child):lang(sv)",
+            "html body div p span em",
+            "li:has(> a.active), div:has(img, + p ~ span.x)",
+            ":is(article, aside) a:where(.x, :is(#y > b))",
+            "li:nth-child(even of .x, p):nth-last-child(1)"
+    };
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<List<Selector>> selectorLists = new ArrayList<>();
+        for (String selectors : SELECTORS) {
+            selectorLists.add(SelectorParser.parse(selectors));
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SelectorBundle.write(selectorLists, out);
+        assertEquals(selectorLists, SelectorBundle.read(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test
+    public void testUnsupportedVersion() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SelectorBundle.write(new ArrayList<List<Selector>>(), out);
+        byte[] bytes = out.toByteArray();
+        bytes[4] = SelectorBundle.VERSION + 1;
+        try {
+            SelectorBundle.read(new ByteArrayInputStream(bytes));
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals("Unsupported selector bundle version " + (SelectorBundle.VERSION + 1), e.getMessage());
+        }
+    }
+
+    @Test
+    public void testNegativeCounts() throws IOException {
+        // A negative number of strings.
+        assertMalformed(header().varInt(-1));
+        // A negative string length.
+        assertMalformed(header().varInt(1).varInt(-1));
+        // A negative number of selector lists.
+        assertMalformed(header().varInt(0).varInt(-1));
+        // A negative number of compound selectors.
+        assertMalformed(header().varInt(0).varInt(1).varInt(1).varInt(-1));
+    }
+
+    @Test
+    public void testHugeCounts() throws IOException {
+        // The counts aren't trusted, so the stream ends before anything that large is allocated.
+        assertMalformed(header().varInt(Integer.MAX_VALUE));
+        assertMalformed(header().varInt(1).varInt(Integer.MAX_VALUE).bytes(1, 2, 3));
+        assertMalformed(header().varInt(0).varInt(Integer.MAX_VALUE));
+        assertMalformed(header().varInt(0).varInt(1).varInt(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testInvalidStringIndex() throws IOException {
+        assertMalformed(localName().varInt(-1));
+        assertMalformed(localName().varInt(1));
+    }
+
+    @Test
+    public void testMaxDepth() throws IOException {
+        Bytes bytes = header().varInt(0).varInt(1).varInt(1).varInt(1).varInt(1);
+        for (int i = 0; i < 100000; ++i) {
+            bytes.bytes(SimpleSelectorType.PSEUDO_NEGATION.ordinal());
+        }
+
+        assertMalformed(bytes);
+
+        SimpleSelector simpleSelector = new LocalNameSelector("a");
+        for (int i = 1; i < SelectorBundle.MAX_DEPTH; ++i) {
+            simpleSelector = new PseudoNegationSelector(simpleSelector);
+        }
+
+        List<Selector> selectors = Collections.singletonList(new Selector(
+                CompoundSelector.of(Collections.singletonList(simpleSelector)), null));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SelectorBundle.write(Collections.singletonList(selectors), out);
+        assertEquals(selectors, SelectorBundle.read(new ByteArrayInputStream(out.toByteArray())).get(0));
+
+        List<Selector> deeper = Collections.singletonList(new Selector(CompoundSelector.of(
+                Collections.<SimpleSelector>singletonList(new PseudoNegationSelector(simpleSelector))), null));
+        try {
+            SelectorBundle.write(Collections.singletonList(deeper), new ByteArrayOutputStream());
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static void assertMalformed(Bytes bytes) {
+        try {
+            SelectorBundle.read(new ByteArrayInputStream(bytes.out.toByteArray()));
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * A bundle with the string table {@code ["a"]} up to the string index of a single local name selector.
+     */
+    private static Bytes localName() throws IOException {
+        return header().varInt(1).varInt(1).bytes('a').varInt(1).varInt(1).varInt(1).varInt(1)
+                .bytes(SimpleSelectorType.LOCAL_NAME.ordinal());
+    }
+
+    private static Bytes header() throws IOException {
+        Bytes bytes = new Bytes();
+        bytes.data.writeInt(SelectorBundle.MAGIC);
+        return bytes.varInt(SelectorBundle.VERSION);
+    }
+
+    /**
+     * Bundle bytes written by hand.
+     */
+    private static class Bytes {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        final DataOutputStream data = new DataOutputStream(out);
+
+        Bytes varInt(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                data.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+
+            data.writeByte(value);
+            return this;
+        }
+
+        Bytes bytes(int... values) throws IOException {
+            for (int value : values) {
+                data.writeByte(value);
+            }
+
+            return this;
+        }
+
+    }
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.selector;
+
+import java.util.List;
+
+import org.junit.Test;
+import se.fishtank.css.selectors.parser.SelectorParser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the {@linkplain se.fishtank.css.selectors.selector.SelectorInterner}
+ *
+ * @author Christer Sandberg
+ */
+public class SelectorInternerTest {
+
+    @Test
+    public void testSharedInstances() {
+        SelectorInterner interner = new SelectorInterner();
+        List<Selector> first = SelectorParser.parse("div.a > p:not([x=y]), span:nth-child(2n+1)");
+        List<Selector> second = SelectorParser.parse("div.a > p:not([x=y]), span:nth-child(2n+1)");
+
+        List<Selector> interned = interner.intern(first);
+        assertEquals(first, interned);
+        assertSame(interned, interner.intern(second));
+
+        Selector selector = interner.intern(SelectorParser.parse("div.a > p:not([x=y]) ~ em").get(0));
+        CompoundSelector previous = selector.compoundSelector.previous.second;
+        assertSame(interned.get(0).compoundSelector, previous);
+
+        Selector other = interner.intern(SelectorParser.parse(".a").get(0));
+        assertSame(other.compoundSelector.simpleSelectors.get(0),
+                previous.previous.second.simpleSelectors.get(1));
+    }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) 2009-2015, Christer Sandberg
+ */
+package se.fishtank.css.selectors.selector;
+
+import java.util.List;
+
+import org.junit.Test;
+import se.fishtank.css.selectors.parser.SelectorParser;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the serialization of {@linkplain se.fishtank.css.selectors.selector.Selector selectors}
+ *
+ * @author Christer Sandberg
+ */
+public class SelectorTest {
+
+    @Test
+    public void testToString() {
+        assertSerialized("*", "*");
+        assertSerialized("div#a.b[c='d e']", "div#a.b[c=\"d e\"]");
+        assertSerialized("a > b  +  c ~ d   e", "a > b + c ~ d e");
+        assertSerialized("li:nth-child(odd):nth-last-child(-n+3):nth-of-type(2)",
+                "li:nth-child(2n+1):nth-last-child(-n+3):nth-of-type(2)");
+        assertSerialized("p:not(.x)::first-line", "p:not(.x)::first-line");
+        assertSerialized("a[href^=\"x\\\"y\"], :contains(')')", "a[href^=\"x\\\"y\"]", ":contains(\")\")");
+        assertSerialized(".\\31 a", ".\\31 a");
+        assertSerialized("li:has( >a.x ,img,~  p  span)", "li:has(> a.x, img, ~ p span)");
+    }
+
+    @Test
+    public void testRoundTrip() {
+        String[] selectors = {
+                "div:nth-child(-2n-3)", "[lang|=en]:lang(sv)", "#\\-", "*::before", "a\\:b ~ *:not([x])",
+                "div:has(+ p, > *:not(.a) b)", "p:not(:has(a))", ":is(nav, aside) a:where(.x, #y > *)",
+                "li:nth-child(2n+1 of .a, p > b):nth-last-child(-n+3 of *)"
+        };
+
+        for (String str : selectors) {
+            List<Selector> parsed = SelectorParser.parse(str);
+            assertEquals(str, parsed, SelectorParser.parse(parsed.get(0).toString()));
+        }
+    }
+
+    private static void assertSerialized(String selectors, String... expected) {
+        List<Selector> parsed = SelectorParser.parse(selectors);
+        assertEquals(expected.length, parsed.size());
+        for (int i = 0; i < expected.length; ++i) {
+            assertEquals(expected[i], parsed.get(i).toString());
+        }
+    }
+
+}
@@ -13,6 +13,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests the {@linkplain se.fishtank.css.selectors.tokenizer.Tokenizer}
@@ -50,9 +51,94 @@ public class TokenizerTest {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testPullApiMatchesTokens() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        TypeReference<List<Object>> typeRef = new TypeReference<List<Object>>() {};
+        List<Object> list = objectMapper.readValue(getClass().getResource("/component_value_list.json"), typeRef);
+
+        for (int i = 0; i < list.size(); i += 2) {
+            String input = (String) list.get(i);
+            Tokenizer expected = new Tokenizer(input);
+            Tokenizer actual = new Tokenizer(input);
+            while (true) {
+                Token token = expected.nextToken();
+                TokenType type = actual.advance();
+                assertEquals(input, token.type, type);
+                if (type == TokenType.EOF) {
+                    break;
+                }
+
+                assertEquals(input, token.position, actual.getTokenStart());
+                assertEquals(input, expected.getPosition(), actual.getTokenEnd());
+                assertEquals(input, token.value, actual.getTokenValue());
+                assertTrue(input, actual.tokenValueEqualsIgnoreCase(token.value.toUpperCase()));
+                if (token instanceof Token.Hash) {
+                    assertEquals(input, ((Token.Hash) token).id, actual.isTokenId());
+                }
+
+                if (token instanceof Token.Number) {
+                    assertEquals(input, ((Token.Number) token).integer, actual.isTokenInteger());
+                }
+
+                if (token instanceof Token.Dimension) {
+                    assertEquals(input, ((Token.Dimension) token).unit, actual.getTokenUnit());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPushBack() {
+        Tokenizer tokenizer = new Tokenizer("a b");
+        assertEquals(TokenType.IDENT, tokenizer.advance());
+        tokenizer.pushBack();
+        assertEquals("a", tokenizer.nextToken().value);
+        assertEquals(TokenType.WHITESPACE, tokenizer.advance());
+        tokenizer.pushBack();
+        assertEquals(TokenType.WHITESPACE, tokenizer.advance());
+        assertEquals(TokenType.IDENT, tokenizer.advance());
+        assertEquals("b", tokenizer.getTokenValue());
+        assertEquals(TokenType.EOF, tokenizer.advance());
+    }
+
+    @Test
+    public void testTokenizeRegion() {
+        String input = "xx foo.bar(baz) yy";
+        Tokenizer tokenizer = new Tokenizer(new StringBuilder(input), 3, 15);
+
+        Token token = tokenizer.nextToken();
+        assertEquals(TokenType.IDENT, token.type);
+        assertEquals("foo", token.value);
+        assertEquals(3, token.position);
+
+        assertEquals(TokenType.DELIM, tokenizer.nextToken().type);
+        assertEquals("bar", tokenizer.nextToken().value);
+        assertEquals("baz", tokenizer.nextToken().value);
+        assertEquals(TokenType.RIGHT_PAREN, tokenizer.nextToken().type);
+        assertEquals(TokenType.EOF, tokenizer.nextToken().type);
+        assertEquals(15, tokenizer.getPosition());
+
+        tokenizer.reset();
+        assertEquals(3, tokenizer.getPosition());
+        assertEquals(tokenize("foo.bar(baz)"), tokenize(new Tokenizer(input, 3, 15)));
+    }
+
+    @Test
+    public void testLazyPreprocessing() {
+        assertEquals(tokenize("'a\\\nb' c\n\nd"), tokenize("'a\\\r\nb' c\r\fd"));
+        assertEquals(tokenize("'a\uFFFDb'"), tokenize("'a\u0000b'"));
+        assertEquals(tokenize("\uD83D\uDE00x"), tokenize(new Tokenizer(new StringBuilder("\uD83D\uDE00x"))));
+    }
+
     public LinkedList<Object> tokenize(String input) {
+        return tokenize(new Tokenizer(input));
+    }
+
+    public LinkedList<Object> tokenize(Tokenizer tokenizer) {
         LinkedList<Object> result = new LinkedList<Object>();
-        Tokenizer tokenizer = new Tokenizer(input);
         while (true) {
             Object value;
             Token token = tokenizer.nextToken();